@@ -18,6 +18,9 @@ import com.google.common.collect.ImmutableList;
 import com.techshroom.hendrix.byteio.BytecodeSupplier;
 import com.techshroom.hendrix.byteio.EntryBytecode;
 import com.techshroom.hendrix.byteio.FileBytecode;
+import com.techshroom.hendrix.byteio.MappedEntryBytecode;
+import com.techshroom.hendrix.jar.MappedJar;
+import com.techshroom.hendrix.jar.ZipDirectory;
 
 import fj.data.Array;
 
@@ -100,6 +103,30 @@ public abstract class BytecodeSupplierFactory {
         }
     }
 
+    /**
+     * An implementation that reads jars through a {@link MappedJar} instead of
+     * a {@link JarFile}. Register it as a {@link BytecodeSupplierFactory}
+     * service to use it.
+     * 
+     * @author Kenzie Togami
+     */
+    public static class MappedImplementation extends DefaultImplementation {
+        @Override
+        protected void expandJarToParts(Path path, List<BytecodeSupplier> data,
+                        boolean process) {
+            try {
+                MappedJar jar = MappedJar.open(path);
+                for (ZipDirectory.Entry e : jar.getDirectory().getEntries()) {
+                    if (e.getName().endsWith(".class")) {
+                        data.add(new MappedEntryBytecode(jar, e, process));
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private static final BytecodeSupplierFactory impl;
     static {
         ServiceLoader<BytecodeSupplierFactory> loader =
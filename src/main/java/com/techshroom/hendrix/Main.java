@@ -3,27 +3,43 @@ package com.techshroom.hendrix;
 import static com.google.common.base.Preconditions.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.ServiceLoader;
 
 import joptsimple.ArgumentAcceptingOptionSpec;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import joptsimple.ValueConversionException;
 import joptsimple.ValueConverter;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
 import com.techshroom.hendrix.byteio.BytecodeSupplier;
+import com.techshroom.hendrix.classpath.ClasspathIndex;
+import com.techshroom.hendrix.mapping.load.MappingConflict;
+import com.techshroom.hendrix.mapping.load.MappingLoader;
+import com.techshroom.hendrix.mapping.load.MappingProvider;
+import com.techshroom.hendrix.mapping.load.annotation.AnnotationMappingProvider;
+import com.techshroom.hendrix.mapping.load.compiled.CompiledMappingProvider;
+import com.techshroom.hendrix.mapping.load.compiled.CompiledMappings;
 import com.techshroom.hendrix.mapping.load.manual.ManualMappingProvider;
+import com.techshroom.hendrix.mapping.load.srg.SrgMappingProvider;
+import com.techshroom.hendrix.mapping.load.tiny.TinyMappingProvider;
+import com.techshroom.hendrix.mapping.load.transplant.TransplantMappingProvider;
 import com.techshroom.hendrix.process.ProcessEntry;
+import com.techshroom.hendrix.process.ProcessSettings;
+import com.techshroom.hendrix.process.TransformEngine;
 
-import fj.F;
 import fj.data.Array;
 
 /**
@@ -49,11 +65,28 @@ public final class Main {
                             return null;
                         }
                     };
-    private static final F<Path, ManualMappingProvider> TO_MANUAL_MAPPING =
-                    new F<Path, ManualMappingProvider>() {
+    private static final ValueConverter<TransformEngine> TO_ENGINE =
+                    new ValueConverter<TransformEngine>() {
                         @Override
-                        public ManualMappingProvider f(Path a) {
-                            return new ManualMappingProvider(a);
+                        public TransformEngine convert(String value) {
+                            try {
+                                return TransformEngine.valueOf(value
+                                                .toUpperCase(Locale.ENGLISH));
+                            } catch (IllegalArgumentException e) {
+                                throw new ValueConversionException(
+                                                "unknown engine '" + value
+                                                                + "'", e);
+                            }
+                        }
+
+                        @Override
+                        public Class<? extends TransformEngine> valueType() {
+                            return TransformEngine.class;
+                        }
+
+                        @Override
+                        public String valuePattern() {
+                            return "asm|patch";
                         }
                     };
     private static final OptionParser PARSER = new OptionParser();
@@ -88,11 +121,68 @@ public final class Main {
                     PARSER.acceptsAll(
                                     Arrays.asList("m", "manual"),
                                     "The manual mapping(s)."
-                                                    + " Used to add manual mappings to the mappings graph.")
+                                                    + " Used to add manual mappings to the mappings graph."
+                                                    + " May be text, compiled, Tiny v2 or .srg mapping files."
+                                                    + " Later files take precedence over earlier ones.")
+                                    .withRequiredArg()
+                                    .withValuesConvertedBy(TO_PATH)
+                                    .withValuesSeparatedBy(
+                                                    File.pathSeparatorChar);
+    private static final ArgumentAcceptingOptionSpec<Integer> THREADS =
+                    PARSER.acceptsAll(
+                                    Arrays.asList("t", "threads"),
+                                    "The number of threads to transform classes on."
+                                                    + " Defaults to 1.")
+                                    .withRequiredArg().ofType(Integer.class)
+                                    .defaultsTo(1);
+    private static final OptionSpec<Void> STREAMING =
+                    PARSER.accepts("streaming",
+                                    "Write each class out as soon as it is transformed,"
+                                                    + " instead of all at the end."
+                                                    + " Keeps memory use low for large inputs.");
+    private static final ArgumentAcceptingOptionSpec<TransformEngine> ENGINE =
+                    PARSER.accepts("engine",
+                                    "How to rewrite classes. 'asm' rebuilds each class with ASM,"
+                                                    + " 'patch' patches the signatures into the class file directly."
+                                                    + " Defaults to asm.")
+                                    .withRequiredArg()
+                                    .withValuesConvertedBy(TO_ENGINE)
+                                    .defaultsTo(TransformEngine.ASM);
+    private static final ArgumentAcceptingOptionSpec<Path> CACHE =
+                    PARSER.accepts("cache",
+                                    "A directory to keep classpath jar indexes and compiled manual mappings in."
+                                                    + " Unchanged jars and mapping files are not read again on later runs.")
+                                    .withRequiredArg()
+                                    .withValuesConvertedBy(TO_PATH);
+    private static final OptionSpec<Void> COMPILE_MAPPINGS =
+                    PARSER.accepts("compile-mappings",
+                                    "Compile the manual mappings into one binary mapping file at the output path,"
+                                                    + " instead of processing any classes.");
+    private static final ArgumentAcceptingOptionSpec<String> TINY_NAMESPACE =
+                    PARSER.accepts("tiny-namespace",
+                                    "The namespace of Tiny v2 mappings to take names from."
+                                                    + " Defaults to named.")
+                                    .withRequiredArg().defaultsTo("named");
+    private static final ArgumentAcceptingOptionSpec<String> TINY_GENERIC_NAMESPACE =
+                    PARSER.accepts("tiny-generic-namespace",
+                                    "The namespace of Tiny v2 mappings holding the generics."
+                                                    + " Defaults to generic.")
+                                    .withRequiredArg().defaultsTo("generic");
+    private static final ArgumentAcceptingOptionSpec<Path> REFERENCE =
+                    PARSER.accepts("reference",
+                                    "Jar(s) of the input that still have their generic signatures."
+                                                    + " Signatures are copied onto the matching classes, fields and methods of the input."
+                                                    + " Manual mappings take precedence over them.")
                                     .withRequiredArg()
                                     .withValuesConvertedBy(TO_PATH)
                                     .withValuesSeparatedBy(
                                                     File.pathSeparatorChar);
+    private static final ArgumentAcceptingOptionSpec<String> ANNOTATION =
+                    PARSER.accepts("annotation",
+                                    "An annotation on input fields and methods holding their generic,"
+                                                    + " such as @Generic(\"java.util.List<java.lang.String>\")."
+                                                    + " Manual mappings take precedence over it.")
+                                    .withRequiredArg();
     private static final List<ExitHandler> exitHandlers;
     static {
         ServiceLoader<ExitHandler> handlerLoader =
@@ -115,9 +205,15 @@ public final class Main {
             System.err.println(error.getMessage());
             throw exit(1);
         }
+        if (opts.has(COMPILE_MAPPINGS)) {
+            compileMappings(checkMappingProviders(opts), checkOutput(opts));
+            System.err.println("Complete.");
+            return;
+        }
         Array<Path> inputSources = checkInput(opts);
         Array<Path> classpath = checkClasspath(opts);
         Path output = checkOutput(opts);
+        ProcessSettings settings = checkSettings(opts);
         for (Path check : FluentIterable.from(inputSources).append(classpath)) {
             if (Files.isDirectory(check)) {
                 // output may not share directory
@@ -134,18 +230,25 @@ public final class Main {
         }
         Array<BytecodeSupplier> transformBytecode =
                         BytecodeSupplierFactory.supplyBytecode(inputSources);
-        Array<BytecodeSupplier> classpathBytecode =
-                        BytecodeSupplierFactory.supplyBytecode(classpath);
         if (transformBytecode.isEmpty()) {
             System.err.println("Nothing to do.");
             throw exit(0);
         }
-        ProcessEntry entry =
-                        new ProcessEntry(Iterables.concat(transformBytecode,
-                                        classpathBytecode),
-                                        checkManualMappings(opts).map(
-                                                        TO_MANUAL_MAPPING));
-        entry.process();
+        // the classpath is only read from, and only when needed
+        try (ClasspathIndex classpathIndex = checkCache(opts, classpath)) {
+            List<MappingProvider> providers =
+                            ImmutableList.<MappingProvider> builder()
+                                            .addAll(checkReferences(opts,
+                                                            transformBytecode))
+                                            .addAll(checkAnnotations(opts,
+                                                            transformBytecode))
+                                            .addAll(checkMappingProviders(opts))
+                                            .build();
+            ProcessEntry entry =
+                            new ProcessEntry(transformBytecode, providers,
+                                            settings, classpathIndex);
+            entry.process();
+        }
         System.err.println("Complete.");
     }
 
@@ -180,6 +283,24 @@ public final class Main {
         }
     }
 
+    private static ProcessSettings checkSettings(OptionSet opts) {
+        int threads = opts.valueOf(THREADS).intValue();
+        checkArgument(threads > 0, "%s threads is not enough", threads);
+        return ProcessSettings.create(threads, opts.has(STREAMING),
+                        opts.valueOf(ENGINE));
+    }
+
+    private static ClasspathIndex checkCache(OptionSet opts,
+                    Array<Path> classpath) {
+        if (!opts.has(CACHE)) {
+            return ClasspathIndex.create(classpath);
+        }
+        Path cache = opts.valueOf(CACHE);
+        checkArgument(!Files.exists(cache) || Files.isDirectory(cache),
+                        "%s is not a directory", cache.toAbsolutePath());
+        return ClasspathIndex.create(classpath, cache);
+    }
+
     private static Array<Path> checkManualMappings(OptionSet opts) {
         List<Path> mappings = opts.valuesOf(MANUAL_MAPPINGS);
         for (Path path : mappings) {
@@ -189,6 +310,88 @@ public final class Main {
         return Array.iterableArray(mappings);
     }
 
+    private static List<MappingProvider> checkReferences(OptionSet opts,
+                    Array<BytecodeSupplier> input) {
+        ImmutableList.Builder<MappingProvider> providers =
+                        ImmutableList.builder();
+        for (Path path : opts.valuesOf(REFERENCE)) {
+            checkArgument(Files.isRegularFile(path), "%s isn't a jar",
+                            path.toAbsolutePath());
+            providers.add(new TransplantMappingProvider(path, input));
+        }
+        return providers.build();
+    }
+
+    private static List<MappingProvider> checkAnnotations(OptionSet opts,
+                    Array<BytecodeSupplier> input) {
+        ImmutableList.Builder<MappingProvider> providers =
+                        ImmutableList.builder();
+        for (String annotation : opts.valuesOf(ANNOTATION)) {
+            providers.add(new AnnotationMappingProvider(annotation, input));
+        }
+        return providers.build();
+    }
+
+    private static List<MappingProvider> checkMappingProviders(OptionSet opts) {
+        Path cache = opts.has(CACHE) ? opts.valueOf(CACHE) : null;
+        ImmutableList.Builder<MappingProvider> providers =
+                        ImmutableList.builder();
+        for (Path path : checkManualMappings(opts)) {
+            providers.add(mappingProvider(path, cache, opts));
+        }
+        return providers.build();
+    }
+
+    private static MappingProvider mappingProvider(Path path, Path cache,
+                    OptionSet opts) {
+        try {
+            if (CompiledMappingProvider.isCompiled(path)) {
+                return CompiledMappingProvider.open(path);
+            }
+            if (TinyMappingProvider.isTiny(path)) {
+                return new TinyMappingProvider(path,
+                                opts.valueOf(TINY_NAMESPACE),
+                                opts.valueOf(TINY_GENERIC_NAMESPACE));
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading mappings '"
+                            + path.toAbsolutePath() + "'");
+            e.printStackTrace();
+            throw exit(1);
+        }
+        if (SrgMappingProvider.isSrg(path)) {
+            return new SrgMappingProvider(path);
+        }
+        if (cache != null) {
+            try {
+                return CompiledMappings.cached(path, cache);
+            } catch (IOException e) {
+                System.err.println("Error compiling mappings '"
+                                + path.toAbsolutePath()
+                                + "', reading them directly");
+                e.printStackTrace();
+            }
+        }
+        return new ManualMappingProvider(path);
+    }
+
+    private static void compileMappings(List<MappingProvider> providers,
+                    Path output) {
+        MappingLoader.Result loaded = MappingLoader.loadAll(providers);
+        for (MappingConflict conflict : loaded.getConflicts()) {
+            System.err.println("Warning: " + conflict);
+        }
+        try {
+            CompiledMappings.write(loaded.getIndex(),
+                            Optional.<HashCode> absent(), output);
+        } catch (IOException e) {
+            System.err.println("Error writing '" + output.toAbsolutePath()
+                            + "'");
+            e.printStackTrace();
+            throw exit(1);
+        }
+    }
+
     /**
      * Normally calls System.exit, but gets replaced by tests to return a known
      * Error.
@@ -24,6 +24,13 @@ public final class SharedData {
      */
     public static boolean debug;
 
+    /**
+     * Parse descriptors with the old regex parsers instead of the hand-written
+     * one. Much slower, only useful for checking the parsers against each
+     * other.
+     */
+    public static boolean regexDescriptors;
+
     private SharedData() {
         throw new AssertionError("Unshared usage.");
     }
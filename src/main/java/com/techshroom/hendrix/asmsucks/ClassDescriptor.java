@@ -7,7 +7,6 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.google.auto.value.AutoValue;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
@@ -15,13 +14,19 @@ import com.techshroom.hendrix.SharedData;
 
 /**
  * A class descriptor describes a reference to a class. This bridges the gap
- * between bytecode and sourcecode names. <b>Note:</b> The {@code from*} methods
- * are not very strict, and may accept invalid inputs.
+ * between bytecode and sourcecode names. Parsing the same string again returns
+ * the same instance while it is still cached. <b>Note:</b> The {@code from*}
+ * methods are not very strict, and may accept invalid inputs.
+ * 
+ * <p>
+ * Only the internal name, array depth, type and generic are stored. The
+ * string forms, the path and the hash code are worked out the first time they
+ * are needed and kept after that.
+ * </p>
  * 
  * @author Kenzie Togami
  */
-@AutoValue
-public abstract class ClassDescriptor {
+public final class ClassDescriptor {
     private static final Pattern DESC_PATTERN = Pattern.compile("^"
                     + group(noneOrMore(literal("["))) // array parts
                     + oneOf(group("[^L]"), group("L") // type char
@@ -36,10 +41,7 @@ public abstract class ClassDescriptor {
                     + group(noneOrMore(nonGroup(literal("[]")))) + "$"); // array
     private static final Pattern SLASH = Pattern.compile("/", Pattern.LITERAL),
                     DOT = Pattern.compile(".", Pattern.LITERAL);
-    private static final Joiner DESC_PATH_CHAR = Joiner.on('/'),
-                    SRC_PATH_CHAR = Joiner.on('.'), DESC_ARRAY_CHAR = Joiner
-                                    .on('[').useForNull(""),
-                    SRC_ARRAY_CHARS = Joiner.on("[]").useForNull("");
+    private static final Joiner DESC_PATH_CHAR = Joiner.on('/');
 
     /**
      * Creates a class descriptor from a descriptor string.
@@ -48,6 +50,10 @@ public abstract class ClassDescriptor {
      * @return A new descriptor object
      */
     public static final ClassDescriptor fromDescriptorString(String desc) {
+        checkNotNull(desc, "descriptor string cannot be null");
+        if (!SharedData.regexDescriptors) {
+            return DescriptorCache.descriptor(desc);
+        }
         Matcher match =
                         DESC_PATTERN.matcher(checkNotNull(desc,
                                         "descriptor string cannot be null"));
@@ -65,8 +71,7 @@ public abstract class ClassDescriptor {
         char type = descStringType(match);
         List<String> path = descStringPath(match);
         ClassDescriptor generic = descGeneric(match);
-        return new AutoValue_ClassDescriptor(arrayDepth, type, path,
-                        Optional.fromNullable(generic));
+        return create(arrayDepth, type, DESC_PATH_CHAR.join(path), generic);
     }
 
     /**
@@ -76,6 +81,10 @@ public abstract class ClassDescriptor {
      * @return A new descriptor object
      */
     public static final ClassDescriptor fromSourcecodeReference(String sourceRef) {
+        checkNotNull(sourceRef, "source reference string cannot be null");
+        if (!SharedData.regexDescriptors) {
+            return DescriptorCache.sourcecodeReference(sourceRef);
+        }
         Matcher match =
                         SRC_PATTERN.matcher(checkNotNull(sourceRef,
                                         "source reference string cannot be null"));
@@ -93,8 +102,7 @@ public abstract class ClassDescriptor {
         char type = srcStringType(match);
         List<String> path = srcStringPath(match);
         ClassDescriptor generic = srcGeneric(match);
-        return new AutoValue_ClassDescriptor(arrayDepth, type, path,
-                        Optional.fromNullable(generic));
+        return create(arrayDepth, type, DESC_PATH_CHAR.join(path), generic);
     }
 
     /**
@@ -184,7 +192,50 @@ public abstract class ClassDescriptor {
         return null;
     }
 
-    ClassDescriptor() {}
+    /**
+     * Creates a class descriptor from an internal name, as ASM gives for
+     * owners and class names, such as {@code java/lang/Object}. Nothing is
+     * parsed, and the same name gives the same instance.
+     * 
+     * @param internalName - The internal name
+     * @return A new descriptor object
+     */
+    public static final ClassDescriptor fromInternalName(String internalName) {
+        checkNotNull(internalName, "internal name cannot be null");
+        return DescriptorCache.internalName(internalName);
+    }
+
+    /**
+     * Creates a class descriptor from its parts.
+     * 
+     * @param arrayDepth - The depth of the array, {@code 0} if not an array
+     * @param type - The descriptor type character
+     * @param internalName - The internal name, empty for primitives
+     * @param generic - The generic descriptor, may be {@code null}
+     * @return A new descriptor object
+     */
+    public static ClassDescriptor create(int arrayDepth, char type,
+                    String internalName, ClassDescriptor generic) {
+        return new ClassDescriptor(arrayDepth, type, internalName, generic);
+    }
+
+    private final int arrayDepth;
+    private final char type;
+    private final String internalName;
+    private final Optional<ClassDescriptor> generic;
+    // lazily computed, racy but every thread computes the same values
+    private List<String> path;
+    private String descriptorString;
+    private String sourcecodeRef;
+    private int hash;
+
+    private ClassDescriptor(int arrayDepth, char type, String internalName,
+                    ClassDescriptor generic) {
+        this.arrayDepth = arrayDepth;
+        this.type = type;
+        this.internalName = checkNotNull(internalName, "internal name");
+        this.generic = Optional.fromNullable(generic);
+    }
 
     /**
      * Gets the depth of the array. If this is not an array, {@code 0} will be
@@ -192,7 +243,9 @@ public abstract class ClassDescriptor {
      * 
      * @return The depth of the array
      */
-    public abstract int getArrayDepth();
+    public int getArrayDepth() {
+        return this.arrayDepth;
+    }
 
     /**
      * Gets the type. This is in correspondence with the descriptor type
@@ -200,7 +253,19 @@ public abstract class ClassDescriptor {
      * 
      * @return The type
      */
-    public abstract char getType();
+    public char getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the internal name, e.g. {@code java/lang/Object}. If the type is
+     * primitive then this is empty.
+     * 
+     * @return The internal name
+     */
+    public String getInternalName() {
+        return this.internalName;
+    }
 
     /**
      * Gets the parts of the fully qualified name. If the type is primitive then
@@ -208,21 +273,33 @@ public abstract class ClassDescriptor {
      * 
      * @return The parts of the fully qualified name
      */
-    public abstract List<String> getPath();
+    public List<String> getPath() {
+        List<String> result = this.path;
+        if (result == null) {
+            result =
+                            this.internalName.isEmpty() ? ImmutableList
+                                            .<String> of() : ImmutableList
+                                            .copyOf(SLASH.split(this.internalName));
+            this.path = result;
+        }
+        return result;
+    }
 
     /**
      * Gets the generic descriptor.
      * 
      * @return The generic descriptor
      */
-    public abstract Optional<ClassDescriptor> getGeneric();
+    public Optional<ClassDescriptor> getGeneric() {
+        return this.generic;
+    }
 
     /**
      * Returns {@code true} if this descriptor is for a primitive class.
      * 
      * @return {@code true} if this descriptor is for a primitive class
      */
-    public final boolean isPrimitive() {
+    public boolean isPrimitive() {
         return getType() != 'L';
     }
 
@@ -231,21 +308,32 @@ public abstract class ClassDescriptor {
      * 
      * @return The generated descriptor string
      */
-    public final String toDescriptorString() {
-        StringBuilder build = new StringBuilder();
+    public String toDescriptorString() {
+        String result = this.descriptorString;
+        if (result == null) {
+            result = buildDescriptorString();
+            this.descriptorString = result;
+        }
+        return result;
+    }
+
+    private String buildDescriptorString() {
+        StringBuilder build =
+                        new StringBuilder(this.arrayDepth
+                                        + this.internalName.length() + 2);
         // Add the array bits.
-        if (getArrayDepth() > 0) {
-            DESC_ARRAY_CHAR.appendTo(build, new Object[getArrayDepth() + 1]);
+        for (int i = 0; i < this.arrayDepth; i++) {
+            build.append('[');
         }
         // Add the type.
         build.append(getType());
         if (getType() == 'L') {
             // Add path for Object types.
-            DESC_PATH_CHAR.appendTo(build, getPath());
+            build.append(this.internalName);
         }
         // Add the generic.
-        if (getGeneric().isPresent()) {
-            build.append('<').append(getGeneric().get().toDescriptorString())
+        if (this.generic.isPresent()) {
+            build.append('<').append(this.generic.get().toDescriptorString())
                             .append('>');
         }
         // Add the semicolon.
@@ -260,7 +348,16 @@ public abstract class ClassDescriptor {
      * 
      * @return The generated sourcecode reference string
      */
-    public final String toSourcecodeRef() {
+    public String toSourcecodeRef() {
+        String result = this.sourcecodeRef;
+        if (result == null) {
+            result = buildSourcecodeRef();
+            this.sourcecodeRef = result;
+        }
+        return result;
+    }
+
+    private String buildSourcecodeRef() {
         StringBuilder build = new StringBuilder();
         // Add the type.
         char t = getType();
@@ -284,17 +381,50 @@ public abstract class ClassDescriptor {
             build.append("long");
         } else {
             // Add path for Object types.
-            SRC_PATH_CHAR.appendTo(build, getPath());
+            build.append(this.internalName.replace('/', '.'));
         }
         // Add the generic.
-        if (getGeneric().isPresent()) {
-            build.append('<').append(getGeneric().get().toSourcecodeRef())
+        if (this.generic.isPresent()) {
+            build.append('<').append(this.generic.get().toSourcecodeRef())
                             .append('>');
         }
         // Add the array bits.
-        if (getArrayDepth() > 0) {
-            SRC_ARRAY_CHARS.appendTo(build, new Object[getArrayDepth() + 1]);
+        for (int i = 0; i < this.arrayDepth; i++) {
+            build.append("[]");
         }
         return build.toString();
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof ClassDescriptor)) {
+            return false;
+        }
+        ClassDescriptor other = (ClassDescriptor) obj;
+        return this.arrayDepth == other.arrayDepth && this.type == other.type
+                        && hashCode() == other.hashCode()
+                        && this.internalName.equals(other.internalName)
+                        && this.generic.equals(other.generic);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = this.hash;
+        if (result == 0) {
+            result = this.arrayDepth;
+            result = 31 * result + this.type;
+            result = 31 * result + this.internalName.hashCode();
+            result = 31 * result + this.generic.hashCode();
+            this.hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassDescriptor{" + toDescriptorString() + "}";
+    }
 }
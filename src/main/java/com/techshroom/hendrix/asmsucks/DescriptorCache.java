@@ -0,0 +1,86 @@
+package com.techshroom.hendrix.asmsucks;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Canonical {@link ClassDescriptor} instances, keyed by the string they were
+ * parsed from, or by the internal name they were made from. Parsing the same
+ * string twice gives the same instance, so equality checks between them stop
+ * at the identity check. The caches are bounded, so a huge input can't hold on
+ * to every descriptor it has seen.
+ * 
+ * @author Kenzie Togami
+ */
+final class DescriptorCache {
+    private static final int MAXIMUM_SIZE = 1 << 14;
+    private static final LoadingCache<String, ClassDescriptor> DESCRIPTORS =
+                    CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE)
+                                    .build(new CacheLoader<String, ClassDescriptor>() {
+                                        @Override
+                                        public ClassDescriptor load(String key) {
+                                            return DescriptorParser
+                                                            .parseDescriptor(key);
+                                        }
+                                    });
+    private static final LoadingCache<String, ClassDescriptor> SOURCE_REFS =
+                    CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE)
+                                    .build(new CacheLoader<String, ClassDescriptor>() {
+                                        @Override
+                                        public ClassDescriptor load(String key) {
+                                            return DescriptorParser
+                                                            .parseSourcecodeReference(key);
+                                        }
+                                    });
+
+    private static final LoadingCache<String, ClassDescriptor> INTERNAL_NAMES =
+                    CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE)
+                                    .build(new CacheLoader<String, ClassDescriptor>() {
+                                        @Override
+                                        public ClassDescriptor load(String key) {
+                                            return fromInternalName(key);
+                                        }
+                                    });
+
+    private static ClassDescriptor fromInternalName(String internalName) {
+        if (internalName.startsWith("[")) {
+            // array owners are given as descriptors
+            return descriptor(internalName);
+        }
+        if (internalName.isEmpty() || internalName.indexOf(';') >= 0
+                        || internalName.indexOf('<') >= 0) {
+            throw new IllegalArgumentException("Invalid internal name '"
+                            + internalName + "'");
+        }
+        return ClassDescriptor.create(0, 'L', internalName, null);
+    }
+
+    static ClassDescriptor descriptor(String desc) {
+        return get(DESCRIPTORS, desc);
+    }
+
+    static ClassDescriptor internalName(String internalName) {
+        return get(INTERNAL_NAMES, internalName);
+    }
+
+    static ClassDescriptor sourcecodeReference(String sourceRef) {
+        return get(SOURCE_REFS, sourceRef);
+    }
+
+    private static ClassDescriptor get(
+                    LoadingCache<String, ClassDescriptor> cache, String key) {
+        try {
+            return cache.getUnchecked(key);
+        } catch (UncheckedExecutionException e) {
+            // the parser's IllegalArgumentException
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private DescriptorCache() {
+        throw new AssertionError();
+    }
+}
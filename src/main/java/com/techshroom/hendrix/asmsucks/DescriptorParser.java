@@ -0,0 +1,215 @@
+package com.techshroom.hendrix.asmsucks;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Single pass parser for class descriptors, sourcecode references and method
+ * descriptors. Walks the string by index, so apart from the cursor the only
+ * allocations are the parts of the result. Accepts the same inputs as the
+ * regex based parsers, and also method descriptors with reference arguments
+ * or more than one argument, which the regex parser splits wrongly.
+ * 
+ * @author Kenzie Togami
+ */
+final class DescriptorParser {
+    static ClassDescriptor parseDescriptor(String desc) {
+        DescriptorParser parser =
+                        new DescriptorParser(desc, "class descriptor");
+        ClassDescriptor result = parser.classDescriptor();
+        parser.expectEnd();
+        return result;
+    }
+
+    static ClassDescriptor parseSourcecodeReference(String sourceRef) {
+        DescriptorParser parser =
+                        new DescriptorParser(sourceRef,
+                                        "class source reference");
+        ClassDescriptor result = parser.sourcecodeReference();
+        parser.expectEnd();
+        return result;
+    }
+
+    static MethodDescriptor parseMethodDescriptor(String desc) {
+        DescriptorParser parser =
+                        new DescriptorParser(desc, "method descriptor");
+        return parser.methodDescriptor();
+    }
+
+    static MethodDescriptor parseMethodType(ClassDescriptor containingClass,
+                    String name, String desc) {
+        DescriptorParser parser = new DescriptorParser(desc, "method type");
+        parser.expect('(');
+        return parser.methodType(containingClass, name);
+    }
+
+    private final String input;
+    private final String kind;
+    private int pos;
+
+    private DescriptorParser(String input, String kind) {
+        this.input = input;
+        this.kind = kind;
+    }
+
+    private ClassDescriptor classDescriptor() {
+        int arrayDepth = 0;
+        while (peek() == '[') {
+            arrayDepth++;
+            this.pos++;
+        }
+        char type = next();
+        if (type != 'L') {
+            return ClassDescriptor.create(arrayDepth, type, "", null);
+        }
+        int start = this.pos;
+        for (; this.pos < this.input.length(); this.pos++) {
+            char c = this.input.charAt(this.pos);
+            if (c == '<' || c == ';') {
+                break;
+            }
+        }
+        if (this.pos == start) {
+            throw invalid();
+        }
+        String internalName = this.input.substring(start, this.pos);
+        ClassDescriptor generic = null;
+        if (peek() == '<') {
+            this.pos++;
+            generic = classDescriptor();
+            expect('>');
+        }
+        expect(';');
+        return ClassDescriptor.create(arrayDepth, type, internalName, generic);
+    }
+
+    private ClassDescriptor sourcecodeReference() {
+        int start = this.pos;
+        identifier();
+        while (peek() == '.') {
+            this.pos++;
+            identifier();
+        }
+        char type = primitiveType(start, this.pos);
+        String internalName =
+                        type == 'L' ? this.input.substring(start, this.pos)
+                                        .replace('.', '/') : "";
+        ClassDescriptor generic = null;
+        if (peek() == '<') {
+            this.pos++;
+            generic = sourcecodeReference();
+            expect('>');
+        }
+        int arrayDepth = 0;
+        while (peek() == '[') {
+            this.pos++;
+            expect(']');
+            arrayDepth++;
+        }
+        return ClassDescriptor.create(arrayDepth, type, internalName, generic);
+    }
+
+    private MethodDescriptor methodDescriptor() {
+        int paren = this.input.indexOf('(');
+        int lastSlash = this.input.lastIndexOf('/', paren);
+        if (paren < 0 || lastSlash <= 0 || lastSlash == paren - 1) {
+            throw invalid();
+        }
+        ClassDescriptor containingClass =
+                        ClassDescriptor.create(0, 'L',
+                                        this.input.substring(0, lastSlash),
+                                        null);
+        String name = this.input.substring(lastSlash + 1, paren);
+        this.pos = paren + 1;
+        return methodType(containingClass, name);
+    }
+
+    /**
+     * Parses the arguments and return type, just after the {@code (}.
+     */
+    private MethodDescriptor methodType(ClassDescriptor containingClass,
+                    String name) {
+        ImmutableList.Builder<ClassDescriptor> arguments =
+                        ImmutableList.builder();
+        while (peek() != ')') {
+            arguments.add(classDescriptor());
+        }
+        this.pos++;
+        ClassDescriptor returnClass = classDescriptor();
+        expectEnd();
+        return MethodDescriptor.fromRaw(containingClass, name,
+                        arguments.build(), returnClass);
+    }
+
+    private void identifier() {
+        if (this.pos >= this.input.length()
+                        || !Character.isJavaIdentifierStart(this.input
+                                        .charAt(this.pos))) {
+            throw invalid();
+        }
+        this.pos++;
+        while (this.pos < this.input.length()
+                        && Character.isJavaIdentifierPart(this.input
+                                        .charAt(this.pos))) {
+            this.pos++;
+        }
+    }
+
+    private char primitiveType(int start, int end) {
+        char type = 'L';
+        if (isKeyword(start, end, "int")) {
+            type = 'I';
+        } else if (isKeyword(start, end, "void")) {
+            type = 'V';
+        } else if (isKeyword(start, end, "boolean")) {
+            type = 'Z';
+        } else if (isKeyword(start, end, "byte")) {
+            type = 'B';
+        } else if (isKeyword(start, end, "char")) {
+            type = 'C';
+        } else if (isKeyword(start, end, "short")) {
+            type = 'S';
+        } else if (isKeyword(start, end, "double")) {
+            type = 'D';
+        } else if (isKeyword(start, end, "float")) {
+            type = 'F';
+        } else if (isKeyword(start, end, "long")) {
+            type = 'J';
+        }
+        return type;
+    }
+
+    private boolean isKeyword(int start, int end, String keyword) {
+        return end - start == keyword.length()
+                        && this.input.regionMatches(start, keyword, 0,
+                                        keyword.length());
+    }
+
+    private int peek() {
+        return this.pos < this.input.length() ? this.input.charAt(this.pos)
+                        : -1;
+    }
+
+    private char next() {
+        if (this.pos >= this.input.length()) {
+            throw invalid();
+        }
+        return this.input.charAt(this.pos++);
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw invalid();
+        }
+    }
+
+    private void expectEnd() {
+        if (this.pos != this.input.length()) {
+            throw invalid();
+        }
+    }
+
+    private IllegalArgumentException invalid() {
+        return new IllegalArgumentException("Invalid " + this.kind + " '"
+                        + this.input + "'");
+    }
+}
@@ -1,6 +1,7 @@
 package com.techshroom.hendrix.asmsucks;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.techshroom.hendrix.asmsucks.SharedRegexBits.*;
 
 import java.util.List;
@@ -65,8 +66,24 @@ public abstract class MethodDescriptor {
      */
     public static final MethodDescriptor fromClassAndMethodNode(
                     ClassNode clazz, MethodNode method) {
-        return fromDescriptorString(clazz.name + "/" + method.name
-                        + method.desc);
+        return fromInternal(clazz.name, method.name, method.desc);
+    }
+
+    /**
+     * Creates a MethodDescriptor from the parts ASM hands out, without joining
+     * them into a string first.
+     * 
+     * @param owner - The internal name of the class containing the method
+     * @param name - The name of the method
+     * @param desc - The method descriptor, such as {@code (I)V}
+     * @return The new MethodDescriptor
+     */
+    public static final MethodDescriptor fromInternal(String owner,
+                    String name, String desc) {
+        checkNotNull(name, "name cannot be null");
+        checkNotNull(desc, "descriptor string cannot be null");
+        return DescriptorParser.parseMethodType(
+                        ClassDescriptor.fromInternalName(owner), name, desc);
     }
 
     /**
@@ -82,6 +99,10 @@ public abstract class MethodDescriptor {
      * @return The parsed method descriptor
      */
     public static final MethodDescriptor fromDescriptorString(String desc) {
+        checkNotNull(desc, "descriptor string cannot be null");
+        if (!SharedData.regexDescriptors) {
+            return DescriptorParser.parseMethodDescriptor(desc);
+        }
         Matcher match = DESC_METHOD_PAT.matcher(desc);
         try {
             checkArgument(match.matches(), "Invalid method descriptor '%s'",
@@ -151,6 +172,32 @@ public abstract class MethodDescriptor {
      */
     public abstract ClassDescriptor getReturnClass();
 
+    /**
+     * Gets the erased descriptor of this method, in the form ASM gives, such as
+     * {@code (I)V}. Generics are dropped.
+     * 
+     * @return The erased descriptor
+     */
+    public String getErasedDescriptor() {
+        StringBuilder desc = new StringBuilder().append('(');
+        for (ClassDescriptor arg : getArguments()) {
+            appendErased(desc, arg);
+        }
+        return appendErased(desc.append(')'), getReturnClass()).toString();
+    }
+
+    private static StringBuilder appendErased(StringBuilder desc,
+                    ClassDescriptor type) {
+        for (int i = 0; i < type.getArrayDepth(); i++) {
+            desc.append('[');
+        }
+        desc.append(type.getType());
+        if (!type.isPrimitive()) {
+            desc.append(type.getInternalName()).append(';');
+        }
+        return desc;
+    }
+
     @Override
     public String toString() {
         return getContainingClass().toSourcecodeRef().replace('.', '/')
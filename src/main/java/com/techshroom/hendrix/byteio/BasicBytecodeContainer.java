@@ -49,6 +49,25 @@ public class BasicBytecodeContainer implements BytecodeSupplier,
         return this.loadedBytes;
     }
 
+    /**
+     * Gets the bytecode without caching it. If it isn't already cached, it is
+     * loaded again on every call, so nothing stays in memory afterwards.
+     * 
+     * @return The bytecode
+     */
+    public byte[] readBytecode() {
+        byte[] loaded = this.loadedBytes;
+        return loaded != null ? loaded : load();
+    }
+
+    /**
+     * Drops the cached bytecode. It will be loaded again by the next call to
+     * {@link #bytecode()}.
+     */
+    public void release() {
+        this.loadedBytes = null;
+    }
+
     protected void save(byte[] bytes) {}
 
     protected byte[] load() {
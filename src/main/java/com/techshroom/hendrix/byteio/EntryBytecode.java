@@ -14,7 +14,8 @@ import com.techshroom.hendrix.jar.JarData;
  * 
  * @author Kenzie Togami
  */
-public class EntryBytecode extends BasicBytecodeContainer {
+public class EntryBytecode extends BasicBytecodeContainer implements
+                JarEntryConsumer {
     private final JarFile sourceJar;
     private final JarEntry entry;
 
@@ -43,10 +44,38 @@ public class EntryBytecode extends BasicBytecodeContainer {
         this.entry = entry;
     }
 
+    /**
+     * Gets the jar the entry is from.
+     * 
+     * @return The jar the entry is from
+     */
+    public JarFile getSourceJar() {
+        return this.sourceJar;
+    }
+
+    /**
+     * Gets the entry this container is bound to.
+     * 
+     * @return The entry this container is bound to
+     */
+    public JarEntry getEntry() {
+        return this.entry;
+    }
+
+    @Override
+    public File getJarFile() {
+        return new File(this.sourceJar.getName());
+    }
+
+    @Override
+    public String getEntryName() {
+        return this.entry.getName();
+    }
+
     @Override
     protected void save(byte[] bytes) {
         try {
-            JarData.replaceEntry(new File(this.sourceJar.getName()), this.entry, bytes);
+            JarData.replaceEntry(getJarFile(), this.entry, bytes);
         } catch (IOException e) {
             suppress(e);
         }
@@ -0,0 +1,26 @@
+package com.techshroom.hendrix.byteio;
+
+import java.io.File;
+
+/**
+ * A consumer that writes to an entry of a jar. Knowing the jar lets callers
+ * batch every write to the same jar into one
+ * {@link com.techshroom.hendrix.jar.JarRewriteSession JarRewriteSession}.
+ * 
+ * @author Kenzie Togami
+ */
+public interface JarEntryConsumer extends BytecodeConsumer {
+    /**
+     * Gets the jar that holds the entry.
+     * 
+     * @return The jar that holds the entry
+     */
+    File getJarFile();
+
+    /**
+     * Gets the name of the entry.
+     * 
+     * @return The name of the entry
+     */
+    String getEntryName();
+}
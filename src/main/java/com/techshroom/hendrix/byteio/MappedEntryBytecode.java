@@ -0,0 +1,84 @@
+package com.techshroom.hendrix.byteio;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.techshroom.hendrix.jar.JarRewriteSession;
+import com.techshroom.hendrix.jar.MappedJar;
+import com.techshroom.hendrix.jar.ZipDirectory;
+
+/**
+ * {@link MappedJar}-based bytecode container.
+ * 
+ * @author Kenzie Togami
+ */
+public class MappedEntryBytecode extends BasicBytecodeContainer implements
+                JarEntryConsumer {
+    private final MappedJar sourceJar;
+    private final ZipDirectory.Entry entry;
+
+    /**
+     * Creates a new mapped entry bytecode container that should be processed.
+     * 
+     * @param sourceJar - The mapped jar the entry is from
+     * @param entry - The entry to bind to
+     */
+    public MappedEntryBytecode(MappedJar sourceJar, ZipDirectory.Entry entry) {
+        this(sourceJar, entry, true);
+    }
+
+    /**
+     * Creates a new mapped entry bytecode container with a process flag of
+     * {@code process}.
+     * 
+     * @param sourceJar - The mapped jar the entry is from
+     * @param entry - The entry to bind to
+     * @param process - {@code true} if this bytecode should be processed,
+     *        {@code false} otherwise.
+     */
+    public MappedEntryBytecode(MappedJar sourceJar, ZipDirectory.Entry entry,
+                    boolean process) {
+        super(process);
+        this.sourceJar = sourceJar;
+        this.entry = entry;
+    }
+
+    /**
+     * Gets the mapped jar the entry is from.
+     * 
+     * @return The mapped jar the entry is from
+     */
+    public MappedJar getSourceJar() {
+        return this.sourceJar;
+    }
+
+    @Override
+    public File getJarFile() {
+        return this.sourceJar.getPath().toFile();
+    }
+
+    @Override
+    public String getEntryName() {
+        return this.entry.getName();
+    }
+
+    @Override
+    protected void save(byte[] bytes) {
+        try (JarRewriteSession session =
+                        JarRewriteSession.open(getJarFile())) {
+            session.replace(getEntryName(), bytes);
+        } catch (IOException e) {
+            suppress(e);
+        }
+    }
+
+    @Override
+    protected byte[] load() {
+        try {
+            return this.sourceJar.read(this.entry);
+        } catch (IOException e) {
+            suppress(e);
+            return new byte[0];
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.techshroom.hendrix.classfile;
+
+import static com.techshroom.hendrix.classfile.ConstantPool.encodeUtf8;
+import static com.techshroom.hendrix.classfile.ConstantPool.readInt;
+import static com.techshroom.hendrix.classfile.ConstantPool.readUnsignedShort;
+
+import java.util.List;
+
+import org.objectweb.asm.Opcodes;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The header of a class file: its name, access flags, super class, interfaces
+ * and generic signature. Reading a header only touches the constant pool and
+ * the attribute tables, so fields, methods and code are never decoded.
+ * 
+ * @author Kenzie Togami
+ */
+@AutoValue
+public abstract class ClassHeader {
+    private static final byte[] SIGNATURE_UTF8 = encodeUtf8("Signature");
+
+    /**
+     * Reads the header of {@code classFile}.
+     * 
+     * @param classFile - The class file bytes
+     * @return The header
+     * @throws IllegalArgumentException if the class file is invalid
+     */
+    public static final ClassHeader read(byte[] classFile) {
+        ConstantPool pool = ConstantPool.read(classFile);
+        int offset = pool.getEnd();
+        int access = readUnsignedShort(classFile, offset);
+        String name =
+                        pool.getClassName(readUnsignedShort(classFile,
+                                        offset + 2));
+        int superIndex = readUnsignedShort(classFile, offset + 4);
+        String superName =
+                        superIndex == 0 ? null : pool.getClassName(superIndex);
+        int count = readUnsignedShort(classFile, offset + 6);
+        ImmutableList.Builder<String> interfaces = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            interfaces.add(pool.getClassName(readUnsignedShort(classFile,
+                            offset + 8 + 2 * i)));
+        }
+        offset += 8 + 2 * count;
+        return create(name, access, Optional.fromNullable(superName),
+                        interfaces.build(), readSignature(classFile, pool,
+                                        offset));
+    }
+
+    private static Optional<String> readSignature(byte[] classFile,
+                    ConstantPool pool, int offset) {
+        if (pool.indexOfUtf8(SIGNATURE_UTF8) < 0) {
+            // nothing in this class has a signature
+            return Optional.absent();
+        }
+        // skip the fields and methods
+        for (int table = 0; table < 2; table++) {
+            int members = readUnsignedShort(classFile, offset);
+            offset += 2;
+            for (int i = 0; i < members; i++) {
+                offset = skipAttributes(classFile, offset + 6);
+            }
+        }
+        int attributes = readUnsignedShort(classFile, offset);
+        offset += 2;
+        for (int i = 0; i < attributes; i++) {
+            // the pool may hold more than one "Signature", so check each name
+            if (pool.isUtf8(readUnsignedShort(classFile, offset),
+                            SIGNATURE_UTF8)) {
+                return Optional.of(pool.getUtf8(readUnsignedShort(classFile,
+                                offset + 6)));
+            }
+            offset += 6 + readInt(classFile, offset + 2);
+        }
+        return Optional.absent();
+    }
+
+    private static int skipAttributes(byte[] classFile, int offset) {
+        int attributes = readUnsignedShort(classFile, offset);
+        offset += 2;
+        for (int i = 0; i < attributes; i++) {
+            offset += 6 + readInt(classFile, offset + 2);
+        }
+        return offset;
+    }
+
+    /**
+     * Creates a header from the given values.
+     * 
+     * @param name - The internal name of the class
+     * @param access - The access flags of the class
+     * @param superName - The internal name of the super class, absent only
+     *        for {@code java/lang/Object}
+     * @param interfaces - The internal names of the interfaces
+     * @param signature - The generic signature of the class, if it has one
+     * @return The new header
+     */
+    public static final ClassHeader create(String name, int access,
+                    Optional<String> superName, List<String> interfaces,
+                    Optional<String> signature) {
+        return new AutoValue_ClassHeader(name, access, superName,
+                        ImmutableList.copyOf(interfaces), signature);
+    }
+
+    ClassHeader() {}
+
+    /**
+     * Gets the internal name of the class.
+     * 
+     * @return The internal name of the class
+     */
+    public abstract String getName();
+
+    /**
+     * Gets the access flags of the class.
+     * 
+     * @return The access flags of the class
+     */
+    public abstract int getAccess();
+
+    /**
+     * Gets the internal name of the super class.
+     * 
+     * @return The internal name of the super class
+     */
+    public abstract Optional<String> getSuperName();
+
+    /**
+     * Gets the internal names of the interfaces, in declaration order.
+     * 
+     * @return The internal names of the interfaces
+     */
+    public abstract List<String> getInterfaces();
+
+    /**
+     * Gets the generic signature of the class.
+     * 
+     * @return The generic signature of the class
+     */
+    public abstract Optional<String> getSignature();
+
+    /**
+     * Returns {@code true} if this header is for an interface.
+     * 
+     * @return {@code true} if this header is for an interface
+     */
+    public final boolean isInterface() {
+        return (getAccess() & Opcodes.ACC_INTERFACE) != 0;
+    }
+}
@@ -0,0 +1,299 @@
+package com.techshroom.hendrix.classfile;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A view of the constant pool of a class file. Only the entry offsets are
+ * worked out up front, entries are decoded when they are asked for. This is a
+ * lot cheaper than a {@link org.objectweb.asm.ClassReader} when only a few
+ * names are needed.
+ * 
+ * @author Kenzie Togami
+ */
+public final class ConstantPool {
+    /**
+     * The magic number at the start of every class file.
+     */
+    public static final int MAGIC = 0xCAFEBABE;
+    static final int UTF8 = 1, INTEGER = 3, FLOAT = 4, LONG = 5, DOUBLE = 6,
+                    CLASS = 7, STRING = 8, FIELD_REF = 9, METHOD_REF = 10,
+                    INTERFACE_METHOD_REF = 11, NAME_AND_TYPE = 12,
+                    METHOD_HANDLE = 15, METHOD_TYPE = 16, DYNAMIC = 17,
+                    INVOKE_DYNAMIC = 18, MODULE = 19, PACKAGE = 20;
+    /**
+     * Offset of the constant pool count in a class file.
+     */
+    static final int COUNT_OFFSET = 8;
+
+    /**
+     * Reads the constant pool of {@code classFile}.
+     * 
+     * @param classFile - The class file bytes
+     * @return The constant pool
+     * @throws IllegalArgumentException if the class file is invalid, or has a
+     *         constant pool entry type that isn't known
+     */
+    public static ConstantPool read(byte[] classFile) {
+        checkArgument(classFile.length > COUNT_OFFSET + 2
+                        && readInt(classFile, 0) == MAGIC, "not a class file");
+        int count = readUnsignedShort(classFile, COUNT_OFFSET);
+        int[] offsets = new int[count];
+        int offset = COUNT_OFFSET + 2;
+        for (int i = 1; i < count; i++) {
+            checkArgument(offset < classFile.length,
+                            "constant pool runs past the end of the file");
+            offsets[i] = offset;
+            int tag = classFile[offset] & 0xFF;
+            switch (tag) {
+                case UTF8:
+                    offset += 3 + readUnsignedShort(classFile, offset + 1);
+                    break;
+                case CLASS:
+                case STRING:
+                case METHOD_TYPE:
+                case MODULE:
+                case PACKAGE:
+                    offset += 3;
+                    break;
+                case METHOD_HANDLE:
+                    offset += 4;
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case FIELD_REF:
+                case METHOD_REF:
+                case INTERFACE_METHOD_REF:
+                case NAME_AND_TYPE:
+                case DYNAMIC:
+                case INVOKE_DYNAMIC:
+                    offset += 5;
+                    break;
+                case LONG:
+                case DOUBLE:
+                    // takes up two entries
+                    offset += 9;
+                    i++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown constant tag "
+                                    + tag + " at index " + i);
+            }
+        }
+        checkArgument(offset <= classFile.length,
+                        "constant pool runs past the end of the file");
+        return new ConstantPool(classFile, offsets, offset);
+    }
+
+    /**
+     * Reads the internal name of the class in {@code classFile}, without
+     * decoding anything else.
+     * 
+     * @param classFile - The class file bytes
+     * @return The internal name of the class
+     */
+    public static String readClassName(byte[] classFile) {
+        ConstantPool pool = read(classFile);
+        // this_class comes right after the access flags
+        int thisClass = readUnsignedShort(classFile, pool.getEnd() + 2);
+        return pool.getClassName(thisClass);
+    }
+
+    static int readUnsignedShort(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    static int readInt(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16)
+                        | ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+    }
+
+    private final byte[] classFile;
+    private final int[] offsets;
+    private final int end;
+
+    private ConstantPool(byte[] classFile, int[] offsets, int end) {
+        this.classFile = classFile;
+        this.offsets = offsets;
+        this.end = end;
+    }
+
+    /**
+     * Gets the constant pool count. Valid indexes are {@code 1} up to one less
+     * than this.
+     * 
+     * @return The constant pool count
+     */
+    public int getCount() {
+        return this.offsets.length;
+    }
+
+    /**
+     * Gets the offset just after the constant pool, where the access flags
+     * are.
+     * 
+     * @return The offset just after the constant pool
+     */
+    public int getEnd() {
+        return this.end;
+    }
+
+    /**
+     * Gets the offset of the entry at {@code index}. This points at the tag
+     * byte.
+     * 
+     * @param index - The constant pool index
+     * @return The offset of the entry
+     */
+    public int getOffset(int index) {
+        checkArgument(index > 0 && index < this.offsets.length
+                        && this.offsets[index] != 0,
+                        "invalid constant pool index %s", index);
+        return this.offsets[index];
+    }
+
+    /**
+     * Gets the tag of the entry at {@code index}.
+     * 
+     * @param index - The constant pool index
+     * @return The tag of the entry
+     */
+    public int getTag(int index) {
+        return this.classFile[getOffset(index)] & 0xFF;
+    }
+
+    /**
+     * Decodes the UTF8 entry at {@code index}.
+     * 
+     * @param index - The constant pool index
+     * @return The decoded string
+     */
+    public String getUtf8(int index) {
+        int offset = getOffset(index);
+        checkArgument(this.classFile[offset] == UTF8,
+                        "entry %s is not a UTF8 entry", index);
+        return decodeUtf8(this.classFile, offset + 3,
+                        readUnsignedShort(this.classFile, offset + 1));
+    }
+
+    /**
+     * Decodes the internal name of the class entry at {@code index}.
+     * 
+     * @param index - The constant pool index
+     * @return The internal name of the class
+     */
+    public String getClassName(int index) {
+        int offset = getOffset(index);
+        checkArgument(this.classFile[offset] == CLASS,
+                        "entry %s is not a class entry", index);
+        return getUtf8(readUnsignedShort(this.classFile, offset + 1));
+    }
+
+    /**
+     * Finds the UTF8 entry equal to {@code value}. Entries are compared as
+     * bytes, nothing is decoded.
+     * 
+     * @param value - The string to look for
+     * @return The index of the entry, or {@code -1} if there is none
+     */
+    public int indexOfUtf8(String value) {
+        return indexOfUtf8(encodeUtf8(value));
+    }
+
+    /**
+     * Finds the UTF8 entry equal to {@code encoded}, for callers that look
+     * for the same string in many pools.
+     * 
+     * @param encoded - The string to look for, from {@link #encodeUtf8(String)}
+     * @return The index of the entry, or {@code -1} if there is none
+     */
+    public int indexOfUtf8(byte[] encoded) {
+        for (int i = 1; i < this.offsets.length; i++) {
+            if (isUtf8(i, encoded)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the entry at {@code index} is a UTF8 entry equal to
+     * {@code encoded}. A pool may hold the same string more than once, so this
+     * is the way to check a name by its content.
+     * 
+     * @param index - The constant pool index
+     * @param encoded - The string to compare with, from
+     *        {@link #encodeUtf8(String)}
+     * @return {@code true} if the entry is equal to {@code encoded}
+     */
+    public boolean isUtf8(int index, byte[] encoded) {
+        if (index <= 0 || index >= this.offsets.length) {
+            return false;
+        }
+        int offset = this.offsets[index];
+        if (offset == 0 || this.classFile[offset] != UTF8) {
+            return false;
+        }
+        return readUnsignedShort(this.classFile, offset + 1) == encoded.length
+                        && regionMatches(offset + 3, encoded);
+    }
+
+    private boolean regionMatches(int start, byte[] encoded) {
+        for (int j = 0; j < encoded.length; j++) {
+            if (this.classFile[start + j] != encoded[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes modified UTF-8, as used by class files.
+     * 
+     * @param value - The string to encode
+     * @return The encoded string
+     */
+    public static byte[] encodeUtf8(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += (c >= 0x01 && c < 0x80) ? 1 : c < 0x800 ? 2 : 3;
+        }
+        byte[] out = new byte[length];
+        int pos = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x01 && c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decodes modified UTF-8, as used by class files.
+     */
+    static String decodeUtf8(byte[] b, int start, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        for (int i = start, end = start + length; i < end;) {
+            int c = b[i++] & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if (c < 0xE0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (b[i++] & 0x3F));
+            } else {
+                int high = (c & 0x0F) << 12;
+                int middle = (b[i++] & 0x3F) << 6;
+                chars[count++] = (char) (high | middle | (b[i++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
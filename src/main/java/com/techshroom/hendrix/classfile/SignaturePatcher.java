@@ -0,0 +1,283 @@
+package com.techshroom.hendrix.classfile;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.techshroom.hendrix.classfile.ConstantPool.UTF8;
+import static com.techshroom.hendrix.classfile.ConstantPool.encodeUtf8;
+import static com.techshroom.hendrix.classfile.ConstantPool.readInt;
+import static com.techshroom.hendrix.classfile.ConstantPool.readUnsignedShort;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Rewrites the {@code Signature} attributes of a class file in place, without
+ * building a {@link org.objectweb.asm.ClassReader} or
+ * {@link org.objectweb.asm.ClassWriter}. New strings are appended to the end
+ * of the constant pool, so every existing index stays valid, and everything
+ * other than the changed attributes is copied over as opaque byte ranges.
+ * 
+ * @author Kenzie Togami
+ */
+public final class SignaturePatcher {
+    private static final String SIGNATURE = "Signature";
+    private static final byte[] SIGNATURE_UTF8 = encodeUtf8(SIGNATURE);
+    private static final int MAX_POOL_COUNT = 0xFFFF;
+    private static final int MAX_UTF8_LENGTH = 0xFFFF;
+    /**
+     * Size of a Signature attribute: name index, length, and signature index.
+     */
+    private static final int SIGNATURE_ATTRIBUTE_SIZE = 8;
+
+    /**
+     * A class, field or method, and where its attributes are.
+     */
+    private static final class Holder {
+        private final String name;
+        private final String desc;
+        private final int attributeCountOffset;
+        private int attributeCount;
+        private int attributesEnd;
+        private int signatureOffset = -1;
+        private String signature;
+        private boolean changed;
+        private String newSignature;
+
+        Holder(String name, String desc, int attributeCountOffset) {
+            this.name = name;
+            this.desc = desc;
+            this.attributeCountOffset = attributeCountOffset;
+        }
+
+        void update(String newSignature) {
+            if (!Objects.equal(this.signature, newSignature)) {
+                this.changed = true;
+                this.newSignature = newSignature;
+            }
+        }
+    }
+
+    /**
+     * Patches the signatures of {@code classFile} with the ones given by
+     * {@code remapper}.
+     * 
+     * @param classFile - The class file bytes
+     * @param remapper - Decides the new signatures
+     * @return The patched class file, {@code classFile} itself if no
+     *         signature changed, or {@code null} if the class file is
+     *         something this patcher doesn't handle
+     */
+    public static byte[] patch(byte[] classFile, SignatureRemapper remapper) {
+        checkNotNull(remapper, "remapper");
+        SignaturePatcher patcher;
+        try {
+            patcher = new SignaturePatcher(classFile);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+        return patcher.apply(remapper);
+    }
+
+    private final byte[] classFile;
+    private final ConstantPool pool;
+    /**
+     * A "Signature" entry for new attributes, {@code -1} if there is none.
+     */
+    private final int signatureName;
+    private final Holder classHolder;
+    private final String superName;
+    private final String[] interfaceNames;
+    private final List<Holder> fields = new ArrayList<>();
+    private final List<Holder> methods = new ArrayList<>();
+
+    private SignaturePatcher(byte[] classFile) {
+        this.classFile = classFile;
+        this.pool = ConstantPool.read(classFile);
+        this.signatureName = this.pool.indexOfUtf8(SIGNATURE_UTF8);
+        int offset = this.pool.getEnd();
+        String className =
+                        this.pool.getClassName(readUnsignedShort(classFile,
+                                        offset + 2));
+        int superIndex = readUnsignedShort(classFile, offset + 4);
+        this.superName =
+                        superIndex == 0 ? null : this.pool
+                                        .getClassName(superIndex);
+        int interfaces = readUnsignedShort(classFile, offset + 6);
+        this.interfaceNames = new String[interfaces];
+        for (int i = 0; i < interfaces; i++) {
+            this.interfaceNames[i] =
+                            this.pool.getClassName(readUnsignedShort(
+                                            classFile, offset + 8 + 2 * i));
+        }
+        offset += 8 + 2 * interfaces;
+        offset = readMembers(offset, this.fields);
+        offset = readMembers(offset, this.methods);
+        this.classHolder = new Holder(className, null, offset);
+        offset = readAttributes(this.classHolder);
+        checkArgument(offset == classFile.length,
+                        "unexpected data after the class attributes");
+    }
+
+    private int readMembers(int offset, List<Holder> into) {
+        int count = readUnsignedShort(this.classFile, offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            String name =
+                            this.pool.getUtf8(readUnsignedShort(
+                                            this.classFile, offset + 2));
+            String desc =
+                            this.pool.getUtf8(readUnsignedShort(
+                                            this.classFile, offset + 4));
+            Holder member = new Holder(name, desc, offset + 6);
+            offset = readAttributes(member);
+            into.add(member);
+        }
+        return offset;
+    }
+
+    private int readAttributes(Holder holder) {
+        int offset = holder.attributeCountOffset;
+        holder.attributeCount = readUnsignedShort(this.classFile, offset);
+        offset += 2;
+        for (int i = 0; i < holder.attributeCount; i++) {
+            int name = readUnsignedShort(this.classFile, offset);
+            long length = readInt(this.classFile, offset + 2) & 0xFFFFFFFFL;
+            // the pool may hold "Signature" more than once
+            if (this.pool.isUtf8(name, SIGNATURE_UTF8)) {
+                checkArgument(holder.signatureOffset < 0 && length == 2,
+                                "odd Signature attribute on %s", holder.name);
+                holder.signatureOffset = offset;
+                holder.signature =
+                                this.pool.getUtf8(readUnsignedShort(
+                                                this.classFile, offset + 6));
+            }
+            checkArgument(offset + 6 + length <= this.classFile.length,
+                            "attribute runs past the end of the file");
+            offset += 6 + (int) length;
+        }
+        holder.attributesEnd = offset;
+        return offset;
+    }
+
+    private byte[] apply(SignatureRemapper remapper) {
+        this.classHolder.update(remapper.classSignature(this.classHolder.name,
+                        this.superName, this.interfaceNames,
+                        this.classHolder.signature));
+        for (Holder field : this.fields) {
+            field.update(remapper.fieldSignature(field.name, field.desc,
+                            field.signature));
+        }
+        for (Holder method : this.methods) {
+            method.update(remapper.methodSignature(method.name, method.desc,
+                            method.signature));
+        }
+        List<Holder> changed = new ArrayList<>();
+        for (Holder member : this.fields) {
+            if (member.changed) {
+                changed.add(member);
+            }
+        }
+        for (Holder member : this.methods) {
+            if (member.changed) {
+                changed.add(member);
+            }
+        }
+        if (this.classHolder.changed) {
+            changed.add(this.classHolder);
+        }
+        if (changed.isEmpty()) {
+            return this.classFile;
+        }
+        return write(changed);
+    }
+
+    private byte[] write(List<Holder> changed) {
+        // work out the new constant pool entries first
+        Map<String, Integer> added = new LinkedHashMap<>();
+        int nextIndex = this.pool.getCount();
+        int signatureName = this.signatureName;
+        Map<Holder, Integer> signatureIndexes = new LinkedHashMap<>();
+        for (Holder member : changed) {
+            if (member.newSignature == null) {
+                continue;
+            }
+            if (signatureName < 0) {
+                signatureName = nextIndex++;
+                added.put(SIGNATURE, signatureName);
+            }
+            Integer index = added.get(member.newSignature);
+            if (index == null) {
+                int existing = this.pool.indexOfUtf8(member.newSignature);
+                if (existing < 0) {
+                    existing = nextIndex++;
+                    added.put(member.newSignature, existing);
+                }
+                index = existing;
+            }
+            signatureIndexes.put(member, index);
+        }
+        if (nextIndex > MAX_POOL_COUNT) {
+            return null;
+        }
+        int end = this.pool.getEnd();
+        ByteArrayDataOutput out =
+                        ByteStreams.newDataOutput(this.classFile.length
+                                        + SIGNATURE_ATTRIBUTE_SIZE
+                                        * changed.size());
+        out.write(this.classFile, 0, ConstantPool.COUNT_OFFSET);
+        out.writeShort(nextIndex);
+        int copied = ConstantPool.COUNT_OFFSET + 2;
+        out.write(this.classFile, copied, end - copied);
+        for (String value : added.keySet()) {
+            byte[] encoded = encodeUtf8(value);
+            if (encoded.length > MAX_UTF8_LENGTH) {
+                return null;
+            }
+            out.writeByte(UTF8);
+            out.writeShort(encoded.length);
+            out.write(encoded);
+        }
+        copied = end;
+        for (Holder member : changed) {
+            Integer index = signatureIndexes.get(member);
+            int count = member.attributeCount;
+            if (member.signatureOffset < 0) {
+                count++;
+            } else if (index == null) {
+                count--;
+            }
+            out.write(this.classFile, copied, member.attributeCountOffset
+                            - copied);
+            out.writeShort(count);
+            copied = member.attributeCountOffset + 2;
+            if (member.signatureOffset >= 0) {
+                out.write(this.classFile, copied, member.signatureOffset
+                                - copied);
+                if (index != null) {
+                    writeSignature(out, signatureName, index);
+                }
+                copied = member.signatureOffset + SIGNATURE_ATTRIBUTE_SIZE;
+            }
+            out.write(this.classFile, copied, member.attributesEnd - copied);
+            copied = member.attributesEnd;
+            if (member.signatureOffset < 0) {
+                writeSignature(out, signatureName, index);
+            }
+        }
+        out.write(this.classFile, copied, this.classFile.length - copied);
+        return out.toByteArray();
+    }
+
+    private static void writeSignature(ByteArrayDataOutput out,
+                    int signatureName, int index) {
+        out.writeShort(signatureName);
+        out.writeInt(2);
+        out.writeShort(index);
+    }
+}
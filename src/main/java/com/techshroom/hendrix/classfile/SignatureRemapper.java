@@ -0,0 +1,43 @@
+package com.techshroom.hendrix.classfile;
+
+/**
+ * Decides the {@code Signature} attributes of a single class. The class
+ * signature is always asked for first, then the fields and methods in class
+ * file order.
+ * 
+ * @author Kenzie Togami
+ */
+public interface SignatureRemapper {
+    /**
+     * Gets the signature for the class.
+     * 
+     * @param name - The internal name of the class
+     * @param superName - The internal name of the superclass, {@code null}
+     *        only for {@code java/lang/Object}
+     * @param interfaces - The internal names of the interfaces
+     * @param signature - The current signature, may be {@code null}
+     * @return The signature to use, or {@code null} for none
+     */
+    String classSignature(String name, String superName, String[] interfaces,
+                    String signature);
+
+    /**
+     * Gets the signature for a field.
+     * 
+     * @param name - The name of the field
+     * @param desc - The descriptor of the field
+     * @param signature - The current signature, may be {@code null}
+     * @return The signature to use, or {@code null} for none
+     */
+    String fieldSignature(String name, String desc, String signature);
+
+    /**
+     * Gets the signature for a method.
+     * 
+     * @param name - The name of the method
+     * @param desc - The descriptor of the method
+     * @param signature - The current signature, may be {@code null}
+     * @return The signature to use, or {@code null} for none
+     */
+    String methodSignature(String name, String desc, String signature);
+}
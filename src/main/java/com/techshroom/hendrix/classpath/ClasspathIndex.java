@@ -0,0 +1,430 @@
+package com.techshroom.hendrix.classpath;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.techshroom.hendrix.classfile.ClassHeader;
+import com.techshroom.hendrix.classfile.ConstantPool;
+import com.techshroom.hendrix.jar.MappedJar;
+import com.techshroom.hendrix.jar.ZipDirectory;
+
+/**
+ * A read-only index of the classes on the classpath. Only the names and
+ * locations of classes are indexed, and nothing is scanned until the first
+ * query. Class bytes are read when they are asked for, and never written
+ * back. Earlier classpath entries win when a class is in more than one.
+ * 
+ * <p>
+ * If a cache directory is given, the class headers of each jar are kept there
+ * between runs, see {@link #create(Iterable, Path)}.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class ClasspathIndex implements Closeable {
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * Where the bytes of a class are.
+     */
+    private interface Location {
+        byte[] read() throws IOException;
+
+        ClassHeader header() throws IOException;
+    }
+
+    /**
+     * A location that has to read the class to get its header.
+     */
+    private abstract static class BytesLocation implements Location {
+        @Override
+        public ClassHeader header() throws IOException {
+            return ClassHeader.read(read());
+        }
+    }
+
+    private static final class FileLocation extends BytesLocation {
+        private final Path file;
+
+        FileLocation(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            return Files.readAllBytes(this.file);
+        }
+    }
+
+    private static final class JarLocation extends BytesLocation {
+        private final MappedJar jar;
+        private final ZipDirectory.Entry entry;
+
+        JarLocation(MappedJar jar, ZipDirectory.Entry entry) {
+            this.jar = jar;
+            this.entry = entry;
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            return this.jar.read(this.entry);
+        }
+    }
+
+    /**
+     * A class from a cached jar. The header comes from the cache, and the jar
+     * is only opened if the class bytes are needed.
+     */
+    private static final class CachedLocation implements Location {
+        private final JarIndexCache cache;
+        private final LazyJar jar;
+        private final String name;
+
+        CachedLocation(JarIndexCache cache, LazyJar jar, String name) {
+            this.cache = cache;
+            this.jar = jar;
+            this.name = name;
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            return this.jar.read(this.name + CLASS_SUFFIX);
+        }
+
+        @Override
+        public ClassHeader header() {
+            return this.cache.getHeader(this.name);
+        }
+    }
+
+    /**
+     * A jar that is opened the first time an entry is read from it.
+     */
+    private final class LazyJar {
+        private final Path path;
+        private MappedJar jar;
+        private Map<String, ZipDirectory.Entry> entries;
+
+        LazyJar(Path path) {
+            this.path = path;
+        }
+
+        synchronized byte[] read(String entryName) throws IOException {
+            if (this.jar == null) {
+                this.jar = open(this.path);
+                Map<String, ZipDirectory.Entry> byName = new HashMap<>();
+                for (ZipDirectory.Entry entry : this.jar.getDirectory()
+                                .getEntries()) {
+                    byName.put(entry.getName(), entry);
+                }
+                this.entries = byName;
+            }
+            ZipDirectory.Entry entry = this.entries.get(entryName);
+            if (entry == null) {
+                throw new FileNotFoundException(entryName + " is missing from "
+                                + this.path + ", the index cache is stale");
+            }
+            return this.jar.read(entry);
+        }
+    }
+
+    /**
+     * Creates an index of the given classpath entries. Each may be a
+     * directory, a jar, or a single class file.
+     * 
+     * @param classpath - The classpath entries, in lookup order
+     * @return The index, not scanned yet
+     */
+    public static ClasspathIndex create(Iterable<Path> classpath) {
+        return new ClasspathIndex(ImmutableList.copyOf(classpath),
+                        Optional.<Path> absent());
+    }
+
+    /**
+     * Creates an index of the given classpath entries, keeping an index file
+     * for each jar in {@code cacheDirectory}. Later runs read the class names
+     * and headers of unchanged jars from there, instead of from the jars.
+     * 
+     * @param classpath - The classpath entries, in lookup order
+     * @param cacheDirectory - The directory to keep jar indexes in
+     * @return The index, not scanned yet
+     */
+    public static ClasspathIndex create(Iterable<Path> classpath,
+                    Path cacheDirectory) {
+        return new ClasspathIndex(ImmutableList.copyOf(classpath),
+                        Optional.of(cacheDirectory));
+    }
+
+    /**
+     * Creates an index with nothing in it.
+     * 
+     * @return An empty index
+     */
+    public static ClasspathIndex empty() {
+        return create(ImmutableList.<Path> of());
+    }
+
+    private final List<Path> classpath;
+    private final Optional<Path> cacheDirectory;
+    private final List<MappedJar> openJars = new ArrayList<>();
+    private volatile Map<String, Location> locations;
+
+    private ClasspathIndex(List<Path> classpath,
+                    Optional<Path> cacheDirectory) {
+        this.classpath = classpath;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Gets the classpath entries this index covers.
+     * 
+     * @return The classpath entries
+     */
+    public List<Path> getClasspath() {
+        return this.classpath;
+    }
+
+    /**
+     * Checks if the class is on the classpath.
+     * 
+     * @param internalName - The internal name of the class, e.g.
+     *        {@code java/lang/Object}
+     * @return {@code true} if the class is on the classpath
+     */
+    public boolean contains(String internalName) {
+        return locations().containsKey(internalName);
+    }
+
+    /**
+     * Gets the internal names of all the classes on the classpath.
+     * 
+     * @return The internal names of all the classes
+     */
+    public Set<String> getClassNames() {
+        return locations().keySet();
+    }
+
+    /**
+     * Reads the bytes of a class. Nothing is cached, each call reads the class
+     * again.
+     * 
+     * @param internalName - The internal name of the class, e.g.
+     *        {@code java/lang/Object}
+     * @return The class bytes, or {@code null} if the class isn't on the
+     *         classpath
+     * @throws IOException if the class can't be read
+     */
+    public byte[] getBytecode(String internalName) throws IOException {
+        Location location = locations().get(internalName);
+        return location == null ? null : location.read();
+    }
+
+    /**
+     * Gets the header of a class. For cached jars this doesn't read the
+     * class at all.
+     * 
+     * @param internalName - The internal name of the class, e.g.
+     *        {@code java/lang/Object}
+     * @return The header, or absent if the class isn't on the classpath
+     * @throws IOException if the class can't be read
+     */
+    public Optional<ClassHeader> getHeader(String internalName)
+                    throws IOException {
+        Location location = locations().get(internalName);
+        return location == null ? Optional.<ClassHeader> absent() : Optional
+                        .of(location.header());
+    }
+
+    private Map<String, Location> locations() {
+        Map<String, Location> result = this.locations;
+        if (result == null) {
+            synchronized (this) {
+                result = this.locations;
+                if (result == null) {
+                    try {
+                        result = scan();
+                    } catch (IOException e) {
+                        throw Throwables.propagate(e);
+                    }
+                    this.locations = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Location> scan() throws IOException {
+        final Map<String, Location> found = new HashMap<>();
+        for (Path path : this.classpath) {
+            if (Files.isDirectory(path)) {
+                scanDirectory(path, found);
+            } else if (path.toString().endsWith(".jar")) {
+                scanJar(path, found);
+            } else if (path.toString().endsWith(CLASS_SUFFIX)) {
+                String name =
+                                ConstantPool.readClassName(Files
+                                                .readAllBytes(path));
+                putIfAbsent(found, name, new FileLocation(path));
+            } else {
+                System.err.println("ignoring " + path);
+            }
+        }
+        return ImmutableMap.copyOf(found);
+    }
+
+    private static void scanDirectory(final Path root,
+                    final Map<String, Location> found) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                            BasicFileAttributes attrs) throws IOException {
+                String relative = root.relativize(file).toString();
+                if (relative.endsWith(CLASS_SUFFIX)) {
+                    String separator = file.getFileSystem().getSeparator();
+                    String name =
+                                    relative.substring(0, relative.length()
+                                                    - CLASS_SUFFIX.length())
+                                                    .replace(separator, "/");
+                    putIfAbsent(found, name, new FileLocation(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void scanJar(Path path, Map<String, Location> found)
+                    throws IOException {
+        if (this.cacheDirectory.isPresent()) {
+            try {
+                scanCachedJar(path, found);
+                return;
+            } catch (IOException e) {
+                System.err.println("Error using the index cache for '" + path
+                                + "', reading it directly");
+                e.printStackTrace();
+            }
+        }
+        MappedJar jar = open(path);
+        for (ZipDirectory.Entry entry : jar.getDirectory().getEntries()) {
+            String name = classNameOf(entry.getName());
+            if (name != null) {
+                putIfAbsent(found, name, new JarLocation(jar, entry));
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the class a jar entry holds, or {@code null} if it
+     * isn't a visible class. Both the direct and the cached scans go through
+     * this, so they see the same classes.
+     */
+    private static String classNameOf(String entryName) {
+        if (!entryName.endsWith(CLASS_SUFFIX)
+                        || entryName.startsWith("META-INF/")) {
+            // versioned classes aren't read on Java 7
+            return null;
+        }
+        String name =
+                        entryName.substring(0, entryName.length()
+                                        - CLASS_SUFFIX.length());
+        return name.equals("module-info") ? null : name;
+    }
+
+    private void scanCachedJar(Path path, Map<String, Location> found)
+                    throws IOException {
+        JarIndexCache.Key key = JarIndexCache.Key.of(path);
+        Path file =
+                        JarIndexCache.cacheFileFor(this.cacheDirectory.get(),
+                                        path);
+        JarIndexCache cache = JarIndexCache.load(file, key);
+        if (cache == null) {
+            JarIndexCache.write(file, key, readHeaders(path));
+            cache = JarIndexCache.load(file, key);
+            if (cache == null) {
+                throw new IOException("index cache " + file
+                                + " changed while it was written");
+            }
+        }
+        LazyJar jar = new LazyJar(path);
+        for (String name : cache.getClassNames()) {
+            putIfAbsent(found, name, new CachedLocation(cache, jar, name));
+        }
+    }
+
+    private static List<ClassHeader> readHeaders(Path path) throws IOException {
+        List<ClassHeader> headers = new ArrayList<>();
+        try (MappedJar jar = MappedJar.open(path)) {
+            for (ZipDirectory.Entry entry : jar.getDirectory().getEntries()) {
+                String entryName = entry.getName();
+                String name = classNameOf(entryName);
+                if (name == null) {
+                    continue;
+                }
+                ClassHeader header;
+                try {
+                    header = ClassHeader.read(jar.read(entry));
+                } catch (IllegalArgumentException
+                                | IndexOutOfBoundsException e) {
+                    System.err.println("ignoring " + entryName + " in "
+                                    + path);
+                    continue;
+                }
+                if (!header.getName().equals(name)) {
+                    // found by its entry name, like the direct scan does
+                    header =
+                                    ClassHeader.create(name,
+                                                    header.getAccess(),
+                                                    header.getSuperName(),
+                                                    header.getInterfaces(),
+                                                    header.getSignature());
+                }
+                headers.add(header);
+            }
+        }
+        return headers;
+    }
+
+    private synchronized MappedJar open(Path path) throws IOException {
+        MappedJar jar = MappedJar.open(path);
+        this.openJars.add(jar);
+        return jar;
+    }
+
+    private static void putIfAbsent(Map<String, Location> found, String name,
+                    Location location) {
+        if (!found.containsKey(name)) {
+            found.put(name, location);
+        }
+    }
+
+    /**
+     * Releases the jars opened by the index.
+     */
+    @Override
+    public synchronized void close() {
+        for (MappedJar jar : this.openJars) {
+            jar.close();
+        }
+        this.openJars.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ClasspathIndex" + this.classpath;
+    }
+}
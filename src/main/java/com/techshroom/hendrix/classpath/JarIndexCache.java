@@ -0,0 +1,216 @@
+package com.techshroom.hendrix.classpath;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.techshroom.hendrix.classfile.ClassHeader;
+import com.techshroom.hendrix.jar.ZipDirectory;
+
+/**
+ * The on-disk index of a single classpath jar. It holds the header of every
+ * class in the jar, and is only used while the jar's size, modification time
+ * and central directory checksum still match. The file is memory-mapped, and
+ * headers are decoded from it when they are asked for.
+ * 
+ * @author Kenzie Togami
+ */
+final class JarIndexCache {
+    private static final int MAGIC = 0x48445849;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".idx";
+
+    /**
+     * What a cache file must match to be used for a jar.
+     */
+    static final class Key {
+        static Key of(Path jar) throws IOException {
+            try (FileChannel channel =
+                            FileChannel.open(jar, StandardOpenOption.READ)) {
+                return new Key(channel.size(), Files
+                                .getLastModifiedTime(jar).toMillis(),
+                                ZipDirectory.checksum(channel));
+            }
+        }
+
+        private final long size;
+        private final long modified;
+        private final long checksum;
+
+        private Key(long size, long modified, long checksum) {
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+
+        boolean matches(ByteBuffer buffer) {
+            return buffer.getLong() == this.size
+                            && buffer.getLong() == this.modified
+                            && buffer.getLong() == this.checksum;
+        }
+
+        void write(ByteArrayDataOutput out) {
+            out.writeLong(this.size);
+            out.writeLong(this.modified);
+            out.writeLong(this.checksum);
+        }
+    }
+
+    /**
+     * Gets the cache file for {@code jar} in {@code cacheDirectory}.
+     */
+    static Path cacheFileFor(Path cacheDirectory, Path jar) {
+        String id =
+                        Hashing.sha1()
+                                        .hashString(jar.toAbsolutePath()
+                                                        .normalize().toString(),
+                                                        StandardCharsets.UTF_8)
+                                        .toString();
+        return cacheDirectory.resolve(id + SUFFIX);
+    }
+
+    /**
+     * Loads the cache file, if it exists and matches {@code key}.
+     * 
+     * @return The cache, or {@code null} if it is missing or out of date
+     */
+    static JarIndexCache load(Path file, Key key) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        MappedByteBuffer map;
+        try (FileChannel channel =
+                        FileChannel.open(file, StandardOpenOption.READ)) {
+            map =
+                            channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            channel.size());
+        }
+        ByteBuffer buffer = map.asReadOnlyBuffer();
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                            || !key.matches(buffer)) {
+                return null;
+            }
+            int count = buffer.getInt();
+            Map<String, Integer> offsets = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = readString(buffer);
+                int length = buffer.getInt();
+                offsets.put(name, buffer.position());
+                buffer.position(buffer.position() + length);
+            }
+            return new JarIndexCache(buffer, ImmutableMap.copyOf(offsets));
+        } catch (RuntimeException corrupt) {
+            // BufferUnderflowException and friends, treat it as stale
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache file holding {@code headers}.
+     */
+    static void write(Path file, Key key, Iterable<ClassHeader> headers)
+                    throws IOException {
+        ByteArrayDataOutput records = ByteStreams.newDataOutput();
+        int count = 0;
+        for (ClassHeader header : headers) {
+            ByteArrayDataOutput body = ByteStreams.newDataOutput();
+            body.writeInt(header.getAccess());
+            writeString(body, header.getSuperName().or(""));
+            body.writeShort(header.getInterfaces().size());
+            for (String iface : header.getInterfaces()) {
+                writeString(body, iface);
+            }
+            writeString(body, header.getSignature().or(""));
+            byte[] bodyBytes = body.toByteArray();
+            writeString(records, header.getName());
+            records.writeInt(bodyBytes.length);
+            records.write(bodyBytes);
+            count++;
+        }
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        key.write(out);
+        out.writeInt(count);
+        out.write(records.toByteArray());
+        Files.createDirectories(file.getParent());
+        Path tmp =
+                        Files.createTempFile(file.getParent(), "hendrix-index",
+                                        SUFFIX);
+        try {
+            Files.write(tmp, out.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeString(ByteArrayDataOutput out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Optional<String> emptyToAbsent(String value) {
+        return value.isEmpty() ? Optional.<String> absent() : Optional
+                        .of(value);
+    }
+
+    private final ByteBuffer buffer;
+    private final Map<String, Integer> offsets;
+
+    private JarIndexCache(ByteBuffer buffer, Map<String, Integer> offsets) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+    }
+
+    Set<String> getClassNames() {
+        return this.offsets.keySet();
+    }
+
+    /**
+     * Decodes the header of {@code name}.
+     * 
+     * @return The header, or {@code null} if the class isn't in the jar
+     */
+    ClassHeader getHeader(String name) {
+        Integer offset = this.offsets.get(name);
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer record = this.buffer.duplicate();
+        record.position(offset);
+        int access = record.getInt();
+        Optional<String> superName = emptyToAbsent(readString(record));
+        int count = record.getShort() & 0xFFFF;
+        ImmutableList.Builder<String> interfaces = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            interfaces.add(readString(record));
+        }
+        Optional<String> signature = emptyToAbsent(readString(record));
+        return ClassHeader.create(name, access, superName, interfaces.build(),
+                        signature);
+    }
+}
@@ -0,0 +1,224 @@
+package com.techshroom.hendrix.jar;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects replacement bytes for the entries of one jar, and rewrites the jar
+ * in a single pass when closed. Entries without a replacement are copied
+ * as-is, compressed data included, by a {@link RawZipWriter}. Streaming
+ * sessions write each replacement as soon as it is given instead.
+ * 
+ * @author Kenzie Togami
+ */
+public final class JarRewriteSession implements Closeable {
+    /**
+     * Opens a new session for the given jar. Nothing is written until the
+     * session is closed.
+     * 
+     * @param jarFile - The jar to rewrite
+     * @return The new session
+     */
+    public static JarRewriteSession open(File jarFile) {
+        return new JarRewriteSession(checkNotNull(jarFile, "jar file"), false);
+    }
+
+    /**
+     * Opens a new streaming session for the given jar. Each replacement is
+     * compressed on the calling thread and written out as soon as it is
+     * given, so no replacement bytes are held in memory. The leading
+     * {@code META-INF/} and directory entries, the manifest among them, stay
+     * first in the rewritten jar. Replaced entries come next, then the
+     * untouched ones. Each entry may only be replaced once.
+     * 
+     * @param jarFile - The jar to rewrite
+     * @return The new session
+     */
+    public static JarRewriteSession openStreaming(File jarFile) {
+        return new JarRewriteSession(checkNotNull(jarFile, "jar file"), true);
+    }
+
+    private final File jarFile;
+    private final boolean streaming;
+    private final Map<String, byte[]> replacements = new HashMap<>();
+    private final Set<String> written = new HashSet<>();
+    /**
+     * Leading entries copied as soon as a streaming writer is opened.
+     */
+    private final Set<String> copied = new HashSet<>();
+    private final Set<String> removals = new HashSet<>();
+    private File tmp;
+    private FileChannel target;
+    private RawZipWriter writer;
+    private boolean closed;
+
+    private JarRewriteSession(File jarFile, boolean streaming) {
+        this.jarFile = jarFile;
+        this.streaming = streaming;
+    }
+
+    /**
+     * Gets the jar that this session rewrites.
+     * 
+     * @return The jar that this session rewrites
+     */
+    public File getJarFile() {
+        return this.jarFile;
+    }
+
+    /**
+     * Replace the data for the entry {@code entryName} with {@code bytes}. A
+     * later replacement for the same entry wins, unless this is a streaming
+     * session, where the entry is written immediately.
+     * 
+     * @param entryName - The name of the entry to replace
+     * @param bytes - The new data for the entry
+     * @throws IOException if the entry can't be written in a streaming
+     *         session
+     */
+    public void replace(String entryName, byte[] bytes) throws IOException {
+        checkNotNull(entryName, "entry name");
+        checkNotNull(bytes, "bytes");
+        if (!this.streaming) {
+            synchronized (this) {
+                checkState(!this.closed, "session already closed");
+                this.replacements.put(entryName, bytes);
+            }
+            return;
+        }
+        // compress outside the lock, so workers don't queue on it
+        RawZipWriter.PreparedEntry entry =
+                        RawZipWriter.prepare(entryName, bytes,
+                                        System.currentTimeMillis());
+        synchronized (this) {
+            checkState(!this.closed, "session already closed");
+            if (this.writer == null) {
+                openWriter();
+            }
+            checkState(!this.copied.contains(entryName),
+                            "%s was already copied", entryName);
+            checkState(this.written.add(entryName), "%s was already written",
+                            entryName);
+            this.writer.write(entry);
+        }
+    }
+
+    /**
+     * Remove the entry {@code entryName} from the jar.
+     * 
+     * @param entryName - The name of the entry to remove
+     */
+    public synchronized void remove(String entryName) {
+        checkState(!this.closed, "session already closed");
+        this.removals.add(checkNotNull(entryName, "entry name"));
+    }
+
+    private void openWriter() throws IOException {
+        this.tmp = File.createTempFile("hendrix-jar-copy", ".jar",
+                        this.jarFile.getAbsoluteFile().getParentFile());
+        this.target = FileChannel.open(this.tmp.toPath(),
+                        StandardOpenOption.WRITE);
+        this.writer = new RawZipWriter(this.target);
+        if (this.streaming) {
+            copyLeadingEntries();
+        }
+    }
+
+    /**
+     * Copies the {@code META-INF/} and directory entries at the start of the
+     * jar, so tools that expect the manifest first still find it. Classes
+     * among them, such as versioned classes, may still be replaced, so they
+     * are left for {@link #close()}.
+     */
+    private void copyLeadingEntries() throws IOException {
+        try (FileChannel source =
+                        FileChannel.open(this.jarFile.toPath(),
+                                        StandardOpenOption.READ)) {
+            for (ZipDirectory.Entry entry : ZipDirectory.read(source)
+                            .getEntries()) {
+                String name = entry.getName();
+                if (!name.startsWith("META-INF/") && !entry.isDirectory()) {
+                    break;
+                }
+                if (name.endsWith(".class")) {
+                    continue;
+                }
+                if (!this.removals.contains(name)) {
+                    this.writer.copyRaw(source, entry);
+                }
+                this.copied.add(name);
+            }
+        }
+    }
+
+    /**
+     * Writes the jar with all replacements and removals applied. Does nothing
+     * if there are none.
+     * 
+     * @throws IOException All IOExceptions propagate
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.replacements.isEmpty() && this.written.isEmpty()
+                        && this.removals.isEmpty()) {
+            return;
+        }
+        try {
+            if (this.writer == null) {
+                openWriter();
+            }
+            try (FileChannel source =
+                            FileChannel.open(this.jarFile.toPath(),
+                                            StandardOpenOption.READ)) {
+                ZipDirectory directory = ZipDirectory.read(source);
+                long now = System.currentTimeMillis();
+                this.writer.setComment(directory.getComment());
+                for (ZipDirectory.Entry entry : directory.getEntries()) {
+                    String name = entry.getName();
+                    if (this.removals.contains(name)
+                                    || this.written.contains(name)
+                                    || this.copied.contains(name)) {
+                        continue;
+                    }
+                    byte[] bytes = this.replacements.get(name);
+                    if (bytes == null) {
+                        this.writer.copyRaw(source, entry);
+                    } else {
+                        this.writer.write(name, bytes, now);
+                    }
+                }
+            }
+            this.writer.close();
+            this.target.close();
+            Files.move(this.tmp.toPath(), this.jarFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (this.target != null) {
+                this.target.close();
+            }
+            if (this.tmp != null && this.tmp.exists() && !this.tmp.delete()) {
+                this.tmp.deleteOnExit();
+            }
+        }
+        this.replacements.clear();
+        this.written.clear();
+        this.copied.clear();
+        this.removals.clear();
+    }
+}
@@ -0,0 +1,192 @@
+package com.techshroom.hendrix.jar;
+
+import static com.techshroom.hendrix.jar.ZipDirectory.LOCAL_HEADER_SIG;
+import static com.techshroom.hendrix.jar.ZipDirectory.LOCAL_HEADER_SIZE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A jar that is read through a {@link MappedByteBuffer} instead of
+ * {@link java.util.jar.JarFile}. The central directory is parsed once when the
+ * jar is opened, and entries are read straight out of the mapped region.
+ * Reading is thread-safe and does not lock.
+ * 
+ * @author Kenzie Togami
+ */
+public final class MappedJar implements Closeable {
+    /**
+     * Maps the jar at {@code path} and reads its central directory.
+     * 
+     * @param path - The jar to open
+     * @return The mapped jar
+     * @throws IOException All IOExceptions propagate
+     */
+    public static MappedJar open(Path path) throws IOException {
+        try (FileChannel channel =
+                        FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException(path + " is too large to map");
+            }
+            MappedByteBuffer map =
+                            channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            channel.size());
+            return new MappedJar(path, map);
+        }
+    }
+
+    private final Path path;
+    /**
+     * The mapped jar, {@code null} once closed.
+     */
+    private volatile ByteBuffer map;
+    private final ZipDirectory directory;
+    private final Queue<Inflater> inflaters =
+                    new ConcurrentLinkedQueue<Inflater>();
+
+    private MappedJar(Path path, MappedByteBuffer map) throws IOException {
+        this.path = path;
+        this.map = map.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        this.directory = ZipDirectory.read(this.map);
+    }
+
+    /**
+     * Gets the path of the jar.
+     * 
+     * @return The path of the jar
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * Gets the central directory of the jar.
+     * 
+     * @return The central directory of the jar
+     */
+    public ZipDirectory getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Gets the compressed data of {@code entry} as a read-only slice of the
+     * mapped jar. For {@link ZipEntry#STORED} entries this is the entry data
+     * itself, without any copying.
+     * 
+     * @param entry - The entry to get the data of
+     * @return The raw data of the entry
+     * @throws IOException if the local header is invalid, or the jar is
+     *         closed
+     */
+    public ByteBuffer slice(ZipDirectory.Entry entry) throws IOException {
+        ByteBuffer map = this.map;
+        if (map == null) {
+            throw new IOException(this.path + " is closed");
+        }
+        long headerOffset = entry.getLocalHeaderOffset();
+        if (headerOffset + LOCAL_HEADER_SIZE > map.limit()) {
+            throw new ZipException("bad local header for " + entry.getName());
+        }
+        int header = (int) headerOffset;
+        if (map.getInt(header) != LOCAL_HEADER_SIG) {
+            throw new ZipException("bad local header for " + entry.getName());
+        }
+        int nameLength = map.getShort(header + 26) & 0xFFFF;
+        int extraLength = map.getShort(header + 28) & 0xFFFF;
+        int start = header + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        long end = start + entry.getCompressedSize();
+        if (end > map.limit()) {
+            throw new ZipException("data out of bounds for " + entry.getName());
+        }
+        ByteBuffer data = map.duplicate();
+        data.position(start).limit((int) end);
+        return data.slice();
+    }
+
+    /**
+     * Reads the uncompressed data of {@code entry}.
+     * 
+     * @param entry - The entry to read
+     * @return The uncompressed data
+     * @throws IOException if the entry is invalid or uses an unknown method
+     */
+    public byte[] read(ZipDirectory.Entry entry) throws IOException {
+        ByteBuffer raw = slice(entry);
+        if (entry.getMethod() == ZipEntry.STORED) {
+            byte[] data = new byte[raw.remaining()];
+            raw.get(data);
+            return data;
+        } else if (entry.getMethod() != ZipEntry.DEFLATED) {
+            throw new ZipException("unsupported compression method "
+                            + entry.getMethod() + " for " + entry.getName());
+        }
+        // Inflater only takes arrays on Java 7, so copy the compressed bytes.
+        // nowrap inflaters may want an extra dummy byte at the end.
+        byte[] compressed = new byte[raw.remaining() + 1];
+        raw.get(compressed, 0, compressed.length - 1);
+        byte[] data = new byte[(int) entry.getSize()];
+        Inflater inflater = this.inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < data.length) {
+                int len = inflater.inflate(data, read, data.length - read);
+                if (len == 0
+                                && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += len;
+            }
+            if (read != data.length) {
+                throw new ZipException("wrong size for " + entry.getName());
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("invalid data for " + entry.getName()
+                            + ": " + e.getMessage());
+        } finally {
+            inflater.reset();
+            this.inflaters.offer(inflater);
+            if (this.map == null) {
+                // closed while reading, maybe after close() drained the pool
+                endInflaters();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Releases the pooled inflaters and drops the mapping, which is unmapped
+     * once it is garbage collected. Entries can't be read after this.
+     */
+    @Override
+    public void close() {
+        this.map = null;
+        endInflaters();
+    }
+
+    private void endInflaters() {
+        for (Inflater inflater; (inflater = this.inflaters.poll()) != null;) {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedJar[" + this.path + "]";
+    }
+}
@@ -0,0 +1,268 @@
+package com.techshroom.hendrix.jar;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.techshroom.hendrix.jar.ZipDirectory.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A minimal zip writer. Entries from another zip can be copied verbatim,
+ * header and compressed data included, with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)
+ * transferTo}, and new entries are deflated with a correct CRC and sizes. The
+ * central directory is written on {@link #close()}.
+ * 
+ * <p>
+ * New entries can be {@linkplain #prepare(String, byte[], long) prepared} on
+ * any thread, so only appending them has to be serialized.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class RawZipWriter implements Closeable {
+    private static final int VERSION = 20;
+
+    /**
+     * A new entry that is compressed and ready to be written.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class PreparedEntry {
+        private final byte[] name;
+        private final byte[] compressed;
+        private final int size;
+        private final int crc;
+        private final int dosTime;
+
+        PreparedEntry(byte[] name, byte[] compressed, int size, int crc,
+                        int dosTime) {
+            this.name = name;
+            this.compressed = compressed;
+            this.size = size;
+            this.crc = crc;
+            this.dosTime = dosTime;
+        }
+    }
+
+    /**
+     * Deflates {@code data} and computes its CRC, without touching any
+     * writer. Safe to call from many threads at once.
+     * 
+     * @param name - The entry name
+     * @param data - The uncompressed data
+     * @param time - The modification time, in milliseconds since the epoch
+     * @return The prepared entry
+     */
+    public static PreparedEntry prepare(String name, byte[] data, long time) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteArrayOutputStream compressed =
+                        new ByteArrayOutputStream(data.length / 2 + 16);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int len = deflater.deflate(buffer);
+                compressed.write(buffer, 0, len);
+            }
+        } finally {
+            deflater.end();
+        }
+        return new PreparedEntry(name.getBytes(StandardCharsets.UTF_8),
+                        compressed.toByteArray(), data.length,
+                        (int) crc.getValue(), dosTime(time));
+    }
+
+    private final FileChannel out;
+    private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+    private byte[] comment = new byte[0];
+    private long position;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Creates a new writer that writes to {@code out}, starting at its current
+     * position.
+     * 
+     * @param out - The channel to write to
+     * @throws IOException if the channel position can't be read
+     */
+    public RawZipWriter(FileChannel out) throws IOException {
+        this.out = out;
+        this.position = out.position();
+    }
+
+    /**
+     * Sets the archive comment.
+     * 
+     * @param comment - The raw comment bytes
+     */
+    public void setComment(byte[] comment) {
+        checkState(comment.length <= 0xFFFF, "comment too long");
+        this.comment = comment.clone();
+    }
+
+    /**
+     * Copies {@code entry} from {@code source} without decompressing it.
+     * 
+     * @param source - The zip the entry is from
+     * @param entry - The entry to copy
+     * @throws IOException All IOExceptions propagate
+     */
+    public void copyRaw(FileChannel source, ZipDirectory.Entry entry)
+                    throws IOException {
+        checkState(!this.closed, "writer closed");
+        long start = entry.getLocalHeaderOffset();
+        ByteBuffer header = readFully(source, start, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIG) {
+            throw new ZipException("bad local header for " + entry.getName());
+        }
+        long length =
+                        LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF)
+                                        + (header.getShort(28) & 0xFFFF)
+                                        + entry.getCompressedSize();
+        if (entry.hasDataDescriptor()) {
+            // the signature is optional, so check for it
+            ByteBuffer sig = readFully(source, start + length, 4);
+            length += sig.getInt(0) == DATA_DESCRIPTOR_SIG ? 16 : 12;
+        }
+        long newOffset = this.position;
+        for (long done = 0; done < length;) {
+            long moved =
+                            source.transferTo(start + done, length - done,
+                                            this.out);
+            if (moved <= 0) {
+                throw new ZipException("unexpected end of file copying "
+                                + entry.getName());
+            }
+            done += moved;
+        }
+        this.position += length;
+        byte[] record = entry.copyCentralRecord();
+        ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN)
+                        .putInt(42, (int) newOffset);
+        addCentralRecord(record);
+    }
+
+    /**
+     * Writes a new deflated entry.
+     * 
+     * @param name - The entry name
+     * @param data - The uncompressed data
+     * @param time - The modification time, in milliseconds since the epoch
+     * @throws IOException All IOExceptions propagate
+     */
+    public void write(String name, byte[] data, long time) throws IOException {
+        write(prepare(name, data, time));
+    }
+
+    /**
+     * Writes an entry made by {@link #prepare(String, byte[], long)}.
+     * 
+     * @param entry - The prepared entry
+     * @throws IOException All IOExceptions propagate
+     */
+    public void write(PreparedEntry entry) throws IOException {
+        checkState(!this.closed, "writer closed");
+        byte[] nameBytes = entry.name;
+        int dosTime = entry.dosTime;
+        int crcValue = entry.crc;
+        ByteBuffer local =
+                        ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length)
+                                        .order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(LOCAL_HEADER_SIG).putShort((short) VERSION)
+                        .putShort((short) FLAG_UTF8)
+                        .putShort((short) ZipEntry.DEFLATED).putInt(dosTime)
+                        .putInt(crcValue).putInt(entry.compressed.length)
+                        .putInt(entry.size)
+                        .putShort((short) nameBytes.length).putShort((short) 0)
+                        .put(nameBytes);
+        long offset = this.position;
+        local.flip();
+        writeFully(local);
+        writeFully(ByteBuffer.wrap(entry.compressed));
+        ByteBuffer record =
+                        ByteBuffer.allocate(
+                                        CENTRAL_HEADER_SIZE + nameBytes.length)
+                                        .order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(CENTRAL_HEADER_SIG).putShort((short) VERSION)
+                        .putShort((short) VERSION).putShort((short) FLAG_UTF8)
+                        .putShort((short) ZipEntry.DEFLATED).putInt(dosTime)
+                        .putInt(crcValue).putInt(entry.compressed.length)
+                        .putInt(entry.size)
+                        .putShort((short) nameBytes.length)
+                        // extra, comment, disk, internal and external attrs
+                        .putShort((short) 0).putShort((short) 0)
+                        .putShort((short) 0).putShort((short) 0).putInt(0)
+                        .putInt((int) offset).put(nameBytes);
+        addCentralRecord(record.array());
+    }
+
+    private void addCentralRecord(byte[] record) throws ZipException {
+        if (this.count == 0xFFFF || this.position >= 0xFFFFFFFFL) {
+            throw new ZipException("zip64 archives are not supported");
+        }
+        this.central.write(record, 0, record.length);
+        this.count++;
+    }
+
+    /**
+     * Writes the central directory. Does not close the underlying channel.
+     * 
+     * @throws IOException All IOExceptions propagate
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        long cdOffset = this.position;
+        writeFully(ByteBuffer.wrap(this.central.toByteArray()));
+        ByteBuffer end =
+                        ByteBuffer.allocate(END_SIZE + this.comment.length)
+                                        .order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_SIG).putShort((short) 0).putShort((short) 0)
+                        .putShort((short) this.count)
+                        .putShort((short) this.count)
+                        .putInt(this.central.size()).putInt((int) cdOffset)
+                        .putShort((short) this.comment.length)
+                        .put(this.comment);
+        end.flip();
+        writeFully(end);
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            this.position += this.out.write(buf);
+        }
+    }
+
+    private static int dosTime(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        int year = cal.get(Calendar.YEAR);
+        if (year < 1980) {
+            // earliest representable date
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (cal.get(Calendar.MONTH) + 1) << 21
+                        | cal.get(Calendar.DAY_OF_MONTH) << 16
+                        | cal.get(Calendar.HOUR_OF_DAY) << 11
+                        | cal.get(Calendar.MINUTE) << 5
+                        | cal.get(Calendar.SECOND) >> 1;
+    }
+}
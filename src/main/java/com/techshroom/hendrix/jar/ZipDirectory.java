@@ -0,0 +1,322 @@
+package com.techshroom.hendrix.jar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The central directory of a zip file, read without going through
+ * {@link java.util.zip.ZipFile}. Only the parts that Hendrix needs to copy
+ * entries around are parsed. Zip64 archives are not supported.
+ * 
+ * @author Kenzie Togami
+ */
+public final class ZipDirectory {
+    static final int LOCAL_HEADER_SIG = 0x04034b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+    static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIG = 0x06054b50;
+    static final int END_SIZE = 22;
+    static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    static final int FLAG_UTF8 = 1 << 11;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * A single entry of the central directory.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class Entry {
+        private final String name;
+        private final byte[] centralRecord;
+        private final int flags;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(String name, byte[] centralRecord, int flags, int method,
+                        long crc, long compressedSize, long size,
+                        long localHeaderOffset) {
+            this.name = name;
+            this.centralRecord = centralRecord;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        /**
+         * Gets the entry name.
+         * 
+         * @return The entry name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Gets the compression method, one of the
+         * {@link java.util.zip.ZipEntry} method constants.
+         * 
+         * @return The compression method
+         */
+        public int getMethod() {
+            return this.method;
+        }
+
+        /**
+         * Gets the CRC-32 of the uncompressed data.
+         * 
+         * @return The CRC-32 of the uncompressed data
+         */
+        public long getCrc() {
+            return this.crc;
+        }
+
+        /**
+         * Gets the size of the compressed data.
+         * 
+         * @return The size of the compressed data
+         */
+        public long getCompressedSize() {
+            return this.compressedSize;
+        }
+
+        /**
+         * Gets the size of the uncompressed data.
+         * 
+         * @return The size of the uncompressed data
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * Gets the offset of the local header in the zip file.
+         * 
+         * @return The offset of the local header
+         */
+        public long getLocalHeaderOffset() {
+            return this.localHeaderOffset;
+        }
+
+        /**
+         * Checks if this entry is a directory.
+         * 
+         * @return {@code true} if this entry is a directory
+         */
+        public boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+
+        boolean hasDataDescriptor() {
+            return (this.flags & FLAG_DATA_DESCRIPTOR) != 0;
+        }
+
+        /**
+         * Gets a copy of the raw central directory record, so it can be
+         * rewritten with a different local header offset.
+         */
+        byte[] copyCentralRecord() {
+            return this.centralRecord.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "ZipDirectory.Entry[" + this.name + "]";
+        }
+    }
+
+    /**
+     * Reads the central directory of the zip file open in {@code channel}.
+     * 
+     * @param channel - The channel to read from
+     * @return The central directory
+     * @throws IOException if the directory can't be read or is invalid
+     */
+    public static ZipDirectory read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT);
+        ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+        return read(tail, fileSize - tailSize, channel, null);
+    }
+
+    /**
+     * Computes a CRC-32 of the raw central directory of the zip file open in
+     * {@code channel}. The central directory holds the name, size and CRC of
+     * every entry, so this changes whenever any entry does, without reading
+     * any entry data.
+     * 
+     * @param channel - The channel to read from
+     * @return The checksum of the central directory
+     * @throws IOException if the directory can't be read or is invalid
+     */
+    public static long checksum(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT);
+        ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+        int end = findEnd(tail);
+        if (end < 0) {
+            throw new ZipException("no end of central directory record");
+        }
+        long cdSize = tail.getInt(end + 12) & ZIP64_MAGIC;
+        long cdOffset = tail.getInt(end + 16) & ZIP64_MAGIC;
+        if (cdSize == ZIP64_MAGIC || cdOffset == ZIP64_MAGIC) {
+            throw new ZipException("zip64 archives are not supported");
+        }
+        ByteBuffer cd = readFully(channel, cdOffset, (int) cdSize);
+        CRC32 crc = new CRC32();
+        crc.update(cd.array(), 0, cd.limit());
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the central directory of the zip file held in {@code zip}, which is
+     * usually a {@link java.nio.MappedByteBuffer} of the whole file. The
+     * directory is parsed in place, without reading it into a separate
+     * buffer.
+     * 
+     * @param zip - The buffer holding the whole zip file
+     * @return The central directory
+     * @throws IOException if the directory is invalid
+     */
+    public static ZipDirectory read(ByteBuffer zip) throws IOException {
+        ByteBuffer whole = zip.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int tailSize = Math.min(whole.limit(), END_SIZE + MAX_COMMENT);
+        whole.position(whole.limit() - tailSize);
+        return read(whole.slice(), whole.limit() - tailSize, null, whole);
+    }
+
+    private static ZipDirectory read(ByteBuffer tail, long tailStart,
+                    FileChannel channel, ByteBuffer whole) throws IOException {
+        int end = findEnd(tail);
+        if (end < 0) {
+            throw new ZipException("no end of central directory record");
+        }
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long cdSize = tail.getInt(end + 12) & ZIP64_MAGIC;
+        long cdOffset = tail.getInt(end + 16) & ZIP64_MAGIC;
+        int commentLength = tail.getShort(end + 20) & 0xFFFF;
+        if (count == 0xFFFF || cdSize == ZIP64_MAGIC
+                        || cdOffset == ZIP64_MAGIC) {
+            throw new ZipException("zip64 archives are not supported");
+        }
+        byte[] comment = new byte[commentLength];
+        tail.position(end + END_SIZE);
+        tail.get(comment);
+        ByteBuffer cd;
+        if (whole == null) {
+            cd = readFully(channel, cdOffset, (int) cdSize);
+        } else {
+            if (cdOffset + cdSize > tailStart + end) {
+                throw new ZipException("central directory out of bounds");
+            }
+            cd = whole.duplicate();
+            cd.position((int) cdOffset).limit((int) (cdOffset + cdSize));
+        }
+        return new ZipDirectory(parseEntries(cd, count), comment);
+    }
+
+    /**
+     * Parses {@code count} central directory records from {@code cd},
+     * starting at its current position.
+     */
+    static List<Entry> parseEntries(ByteBuffer cd, int count)
+                    throws IOException {
+        cd.order(ByteOrder.LITTLE_ENDIAN);
+        ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            int start = cd.position();
+            if (cd.remaining() < CENTRAL_HEADER_SIZE
+                            || cd.getInt(start) != CENTRAL_HEADER_SIG) {
+                throw new ZipException("bad central directory record " + i);
+            }
+            int flags = cd.getShort(start + 8) & 0xFFFF;
+            int method = cd.getShort(start + 10) & 0xFFFF;
+            long crc = cd.getInt(start + 16) & ZIP64_MAGIC;
+            long compressedSize = cd.getInt(start + 20) & ZIP64_MAGIC;
+            long size = cd.getInt(start + 24) & ZIP64_MAGIC;
+            int nameLength = cd.getShort(start + 28) & 0xFFFF;
+            int extraLength = cd.getShort(start + 30) & 0xFFFF;
+            int commentLength = cd.getShort(start + 32) & 0xFFFF;
+            long offset = cd.getInt(start + 42) & ZIP64_MAGIC;
+            if (compressedSize == ZIP64_MAGIC || size == ZIP64_MAGIC
+                            || offset == ZIP64_MAGIC) {
+                throw new ZipException("zip64 entries are not supported");
+            }
+            byte[] record =
+                            new byte[CENTRAL_HEADER_SIZE + nameLength
+                                            + extraLength + commentLength];
+            cd.get(record);
+            String name =
+                            new String(record, CENTRAL_HEADER_SIZE,
+                                            nameLength, StandardCharsets.UTF_8);
+            entries.add(new Entry(name, record, flags, method, crc,
+                            compressedSize, size, offset));
+        }
+        return entries.build();
+    }
+
+    static int findEnd(ByteBuffer tail) {
+        tail.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = tail.limit() - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int size)
+                    throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new ZipException("unexpected end of file");
+            }
+        }
+        buf.flip();
+        return buf.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private final List<Entry> entries;
+    private final byte[] comment;
+
+    ZipDirectory(List<Entry> entries, byte[] comment) {
+        this.entries = entries;
+        this.comment = comment;
+    }
+
+    /**
+     * Gets the entries, in central directory order.
+     * 
+     * @return The entries
+     */
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Gets the raw archive comment.
+     * 
+     * @return The raw archive comment
+     */
+    public byte[] getComment() {
+        return Arrays.copyOf(this.comment, this.comment.length);
+    }
+}
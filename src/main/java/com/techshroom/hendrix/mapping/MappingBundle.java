@@ -0,0 +1,211 @@
+package com.techshroom.hendrix.mapping;
+
+import java.util.List;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.mapping.rule.MappingRule;
+import com.techshroom.hendrix.symbol.LongMap;
+import com.techshroom.hendrix.symbol.SymbolTable;
+
+/**
+ * Every mapping for a single class. Fields are looked up by name, methods by
+ * name and erased descriptor, both through {@link SymbolTable} IDs, so a
+ * lookup only hashes the strings ASM hands out. Members without a mapping of
+ * their own fall back to the {@linkplain MappingRule rules} that matched the
+ * class, where the last matching rule wins.
+ * 
+ * @author Kenzie Togami
+ */
+public final class MappingBundle {
+    private final String className;
+    private ClassMapping classMapping;
+    private final LongMap<FieldMapping> fields;
+    private final LongMap<MethodMapping> methods;
+    private List<GenericMapping> mappings;
+    private final List<MappingRule> rules;
+
+    MappingBundle(String className) {
+        this.className = className;
+        this.fields = LongMap.create();
+        this.methods = LongMap.create();
+        this.rules = ImmutableList.of();
+    }
+
+    private MappingBundle(MappingBundle bundle, List<MappingRule> rules) {
+        this.className = bundle.className;
+        this.classMapping = bundle.classMapping;
+        this.fields = bundle.fields;
+        this.methods = bundle.methods;
+        this.mappings = bundle.mappings;
+        this.rules = ImmutableList.copyOf(rules);
+    }
+
+    /**
+     * Copies a built bundle, adding the rules that matched its class.
+     */
+    MappingBundle withRules(List<MappingRule> rules) {
+        return new MappingBundle(this, rules);
+    }
+
+    /**
+     * Sets the class mapping, returning the one it replaced.
+     */
+    ClassMapping put(ClassMapping mapping) {
+        ClassMapping old = this.classMapping;
+        this.classMapping = mapping;
+        return old;
+    }
+
+    /**
+     * Adds a field mapping, returning the one it replaced.
+     */
+    FieldMapping put(FieldMapping mapping) {
+        return this.fields.put(SymbolTable.global().intern(
+                        mapping.getFieldName()), mapping);
+    }
+
+    /**
+     * Adds a method mapping, returning the one it replaced.
+     */
+    MethodMapping put(MethodMapping mapping) {
+        SymbolTable symbols = SymbolTable.global();
+        return this.methods.put(SymbolTable.pair(symbols.intern(mapping
+                        .getMethod().getName()), symbols.intern(mapping
+                        .getMethod().getErasedDescriptor())), mapping);
+    }
+
+    /**
+     * Freezes the bundle once everything is added.
+     */
+    MappingBundle build() {
+        ImmutableList.Builder<GenericMapping> all = ImmutableList.builder();
+        if (this.classMapping != null) {
+            all.add(this.classMapping);
+        }
+        for (int i = 0; i < this.fields.capacity(); i++) {
+            if (this.fields.valueAt(i) != null) {
+                all.add(this.fields.valueAt(i));
+            }
+        }
+        for (int i = 0; i < this.methods.capacity(); i++) {
+            if (this.methods.valueAt(i) != null) {
+                all.add(this.methods.valueAt(i));
+            }
+        }
+        this.mappings = all.build();
+        return this;
+    }
+
+    /**
+     * Gets the internal name of the class.
+     * 
+     * @return The internal name of the class
+     */
+    public String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * Gets the mapping for the class itself.
+     * 
+     * @return The mapping for the class itself, if there is one
+     */
+    public Optional<ClassMapping> getClassMapping() {
+        return Optional.fromNullable(this.classMapping);
+    }
+
+    /**
+     * Gets the mapping for a field.
+     * 
+     * @param name - The name of the field
+     * @return The mapping for the field, or {@code null} if there is none
+     */
+    public FieldMapping getField(String name) {
+        int id = SymbolTable.global().lookup(name);
+        return id == SymbolTable.NO_SYMBOL ? null : this.fields.get(id);
+    }
+
+    /**
+     * Gets the mapping for a field, falling back to the rules if it has no
+     * mapping of its own.
+     * 
+     * @param name - The name of the field
+     * @param desc - The descriptor of the field
+     * @return The mapping for the field, or {@code null} if there is none
+     */
+    public FieldMapping getField(String name, String desc) {
+        FieldMapping mapping = getField(name);
+        if (mapping != null) {
+            return mapping;
+        }
+        MappingRule rule = findRule(MappingRule.Kind.FIELD, name, desc);
+        return rule == null ? null : FieldMapping.Impl.of(rule.getGeneric(),
+                        ClassDescriptor.fromInternalName(this.className), name);
+    }
+
+    /**
+     * Gets the mapping for a method, falling back to the rules if it has no
+     * mapping of its own.
+     * 
+     * @param name - The name of the method
+     * @param desc - The erased descriptor of the method
+     * @return The mapping for the method, or {@code null} if there is none
+     */
+    public MethodMapping getMethod(String name, String desc) {
+        SymbolTable symbols = SymbolTable.global();
+        int nameId = symbols.lookup(name);
+        int descId = symbols.lookup(desc);
+        if (nameId != SymbolTable.NO_SYMBOL
+                        && descId != SymbolTable.NO_SYMBOL) {
+            MethodMapping mapping =
+                            this.methods.get(SymbolTable.pair(nameId, descId));
+            if (mapping != null) {
+                return mapping;
+            }
+        }
+        MappingRule rule = findRule(MappingRule.Kind.METHOD, name, desc);
+        return rule == null ? null : MethodMapping.Impl.of(
+                        rule.getGeneric(), MethodDescriptor.fromInternal(
+                                        this.className, name, desc));
+    }
+
+    private MappingRule findRule(MappingRule.Kind kind, String name,
+                    String desc) {
+        for (int i = this.rules.size() - 1; i >= 0; i--) {
+            MappingRule rule = this.rules.get(i);
+            if (rule.matchesMember(kind, name, desc)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets every mapping in this bundle, the class mapping first. Rules are
+     * not included.
+     * 
+     * @return Every mapping in this bundle
+     */
+    public List<GenericMapping> getMappings() {
+        return this.mappings;
+    }
+
+    /**
+     * Gets the rules that matched the class, lowest precedence first.
+     * 
+     * @return The rules that matched the class
+     */
+    public List<MappingRule> getRules() {
+        return this.rules;
+    }
+
+    @Override
+    public String toString() {
+        return "MappingBundle[" + this.className + ", "
+                        + this.mappings.size() + " mappings, "
+                        + this.rules.size() + " rules]";
+    }
+}
@@ -0,0 +1,245 @@
+package com.techshroom.hendrix.mapping;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.mapping.rule.MappingRule;
+import com.techshroom.hendrix.mapping.rule.RuleMatcher;
+import com.techshroom.hendrix.symbol.LongMap;
+import com.techshroom.hendrix.symbol.SymbolTable;
+
+/**
+ * Every mapping of a run, grouped into one {@link MappingBundle} per class.
+ * Bundles are keyed by the {@link SymbolTable} ID of the class name, so
+ * finding the bundle of a class is one hash lookup. {@link MappingRule
+ * MappingRules} are compiled into a {@link RuleMatcher}, and the rules that
+ * match a class are added to its bundle when it is looked up.
+ * 
+ * @author Kenzie Togami
+ */
+public final class MappingIndex {
+    private static final MappingIndex EMPTY = builder().build();
+
+    /**
+     * Gets an index without any mappings.
+     * 
+     * @return An empty index
+     */
+    public static MappingIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a new builder.
+     * 
+     * @return The new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks if a mapping can be indexed, that is if it is a class, field or
+     * method mapping, or a mapping rule.
+     * 
+     * @param mapping - The mapping to check
+     * @return {@code true} if the mapping can be indexed
+     */
+    public static boolean isIndexed(GenericMapping mapping) {
+        return mapping instanceof ClassMapping
+                        || mapping instanceof FieldMapping
+                        || mapping instanceof MethodMapping
+                        || mapping instanceof MappingRule;
+    }
+
+    /**
+     * Builds a {@link MappingIndex}. A later mapping for the same class, field
+     * or method replaces the earlier one.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class Builder {
+        private final LongMap<MappingBundle> bundles = LongMap.create();
+        private final ImmutableList.Builder<MappingBundle> order =
+                        ImmutableList.builder();
+        private final List<MappingRule> rules = new ArrayList<>();
+        private int size;
+        private boolean built;
+
+        Builder() {}
+
+        /**
+         * Adds a mapping.
+         * 
+         * @param mapping - The mapping to add
+         * @return {@code true} if the mapping was added, {@code false} if it
+         *         is not a class, field or method mapping, or a rule
+         */
+        public boolean add(GenericMapping mapping) {
+            if (!isIndexed(checkNotNull(mapping, "mapping"))) {
+                return false;
+            }
+            put(mapping);
+            return true;
+        }
+
+        /**
+         * Adds a mapping, replacing the one for the same class, field or
+         * method. Rules never replace anything, they are kept in order.
+         * 
+         * @param mapping - The mapping to add
+         * @return The mapping that was replaced, or {@code null} if there was
+         *         none
+         * @throws IllegalArgumentException if the mapping is not a class,
+         *         field or method mapping, or a rule
+         */
+        public GenericMapping put(GenericMapping mapping) {
+            checkState(!this.built, "already built");
+            checkNotNull(mapping, "mapping");
+            GenericMapping replaced;
+            if (mapping instanceof ClassMapping) {
+                ClassMapping c = (ClassMapping) mapping;
+                replaced = bundle(c.getClassName()).put(c);
+            } else if (mapping instanceof FieldMapping) {
+                FieldMapping f = (FieldMapping) mapping;
+                replaced = bundle(f.getContainingClass()).put(f);
+            } else if (mapping instanceof MethodMapping) {
+                MethodMapping m = (MethodMapping) mapping;
+                replaced = bundle(m.getContainingClass()).put(m);
+            } else if (mapping instanceof MappingRule) {
+                this.rules.add((MappingRule) mapping);
+                replaced = null;
+            } else {
+                throw new IllegalArgumentException("not a class, field or "
+                                + "method mapping or rule: " + mapping);
+            }
+            if (replaced == null) {
+                this.size++;
+            }
+            return replaced;
+        }
+
+        /**
+         * Adds every mapping in {@code mappings}.
+         * 
+         * @param mappings - The mappings to add
+         * @return The mappings that were not added, as they are not class,
+         *         field or method mappings, or rules
+         */
+        public List<GenericMapping> addAll(
+                        Iterable<? extends GenericMapping> mappings) {
+            ImmutableList.Builder<GenericMapping> unhandled =
+                            ImmutableList.builder();
+            for (GenericMapping mapping : mappings) {
+                if (!add(mapping)) {
+                    unhandled.add(mapping);
+                }
+            }
+            return unhandled.build();
+        }
+
+        private MappingBundle bundle(ClassDescriptor clazz) {
+            String name = clazz.getInternalName();
+            int id = SymbolTable.global().intern(name);
+            MappingBundle bundle = this.bundles.get(id);
+            if (bundle == null) {
+                this.bundles.put(id, bundle = new MappingBundle(name));
+                this.order.add(bundle);
+            }
+            return bundle;
+        }
+
+        /**
+         * Builds the index. The builder can't be used afterwards.
+         * 
+         * @return The index
+         */
+        public MappingIndex build() {
+            checkState(!this.built, "already built");
+            this.built = true;
+            List<MappingBundle> bundles = this.order.build();
+            for (MappingBundle bundle : bundles) {
+                bundle.build();
+            }
+            return new MappingIndex(this.bundles, bundles,
+                            RuleMatcher.compile(this.rules), this.size);
+        }
+    }
+
+    private final LongMap<MappingBundle> bundles;
+    private final List<MappingBundle> order;
+    private final RuleMatcher rules;
+    private final int size;
+
+    private MappingIndex(LongMap<MappingBundle> bundles,
+                    List<MappingBundle> order, RuleMatcher rules, int size) {
+        this.bundles = bundles;
+        this.order = order;
+        this.rules = rules;
+        this.size = size;
+    }
+
+    /**
+     * Gets the bundle of a class.
+     * 
+     * @param internalName - The internal name of the class
+     * @return The bundle, or {@code null} if the class has no mappings
+     */
+    public MappingBundle bundleFor(String internalName) {
+        int id = SymbolTable.global().lookup(internalName);
+        MappingBundle bundle =
+                        id == SymbolTable.NO_SYMBOL ? null : this.bundles
+                                        .get(id);
+        List<MappingRule> matched = this.rules.match(internalName);
+        if (matched.isEmpty()) {
+            return bundle;
+        }
+        if (bundle == null) {
+            bundle = new MappingBundle(internalName).build();
+        }
+        return bundle.withRules(matched);
+    }
+
+    /**
+     * Gets the bundle of a class.
+     * 
+     * @param clazz - The class
+     * @return The bundle, or {@code null} if the class has no mappings
+     */
+    public MappingBundle bundleFor(ClassDescriptor clazz) {
+        return bundleFor(clazz.getInternalName());
+    }
+
+    /**
+     * Gets every bundle, in the order their classes were first seen.
+     * 
+     * @return Every bundle
+     */
+    public Collection<MappingBundle> getBundles() {
+        return this.order;
+    }
+
+    /**
+     * Gets every rule, lowest precedence first.
+     * 
+     * @return Every rule
+     */
+    public List<MappingRule> getRules() {
+        return this.rules.getRules();
+    }
+
+    /**
+     * Gets the number of mappings, rules included.
+     * 
+     * @return The number of mappings
+     */
+    public int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,83 @@
+package com.techshroom.hendrix.mapping.load;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MappingBundle;
+import com.techshroom.hendrix.mapping.MappingIndex;
+
+/**
+ * Answers queries from a {@link MappingIndex} held in memory. This is how
+ * plain {@link MappingProvider MappingProviders} are queried: they are loaded
+ * into an index first.
+ * 
+ * @author Kenzie Togami
+ */
+public final class IndexedMappingProvider implements QueryMappingProvider {
+
+    /**
+     * Creates a provider for the mappings in {@code index}.
+     * 
+     * @param index - The index to query
+     * @return The provider
+     */
+    public static IndexedMappingProvider of(MappingIndex index) {
+        return new IndexedMappingProvider(checkNotNull(index, "index"));
+    }
+
+    /**
+     * Loads {@code providers} with {@link MappingLoader#loadAll(List)},
+     * warning about conflicts, and creates a provider for the result.
+     * 
+     * @param providers - The providers to load, lowest precedence first
+     * @return The provider
+     */
+    public static IndexedMappingProvider load(
+                    List<? extends MappingProvider> providers) {
+        MappingLoader.Result loaded = MappingLoader.loadAll(providers);
+        for (MappingConflict conflict : loaded.getConflicts()) {
+            System.err.println("Warning: " + conflict);
+        }
+        return of(loaded.getIndex());
+    }
+
+    private final MappingIndex index;
+
+    private IndexedMappingProvider(MappingIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Gets the index this provider queries.
+     * 
+     * @return The index
+     */
+    public MappingIndex getIndex() {
+        return this.index;
+    }
+
+    @Override
+    public MappingBundle bundleFor(ClassDescriptor clazz) {
+        return this.index.bundleFor(clazz);
+    }
+
+    @Override
+    public Iterator<GenericMapping> iterator() {
+        ImmutableList.Builder<GenericMapping> all = ImmutableList.builder();
+        for (MappingBundle bundle : this.index.getBundles()) {
+            all.addAll(bundle.getMappings());
+        }
+        all.addAll(this.index.getRules());
+        return all.build().iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedMappingProvider[" + this.index.size() + " mappings]";
+    }
+}
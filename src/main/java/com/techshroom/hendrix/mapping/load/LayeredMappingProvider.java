@@ -0,0 +1,114 @@
+package com.techshroom.hendrix.mapping.load;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MappingBundle;
+import com.techshroom.hendrix.mapping.MappingIndex;
+
+/**
+ * Queries several providers, in order of precedence. Each run of plain
+ * {@link MappingProvider MappingProviders} is loaded up front into an
+ * {@link IndexedMappingProvider}, while {@link QueryMappingProvider
+ * QueryMappingProviders} are only asked about the classes that are looked up.
+ * The answer for each class is kept, so every provider is asked at most once
+ * per class.
+ * 
+ * @author Kenzie Togami
+ */
+public final class LayeredMappingProvider implements QueryMappingProvider {
+
+    /**
+     * Creates a provider for {@code providers}. Later providers take
+     * precedence over earlier ones.
+     * 
+     * @param providers - The providers, lowest precedence first
+     * @return The provider
+     */
+    public static LayeredMappingProvider of(
+                    List<? extends MappingProvider> providers) {
+        ImmutableList.Builder<QueryMappingProvider> layers =
+                        ImmutableList.builder();
+        List<MappingProvider> plain = new ArrayList<>();
+        for (MappingProvider provider : providers) {
+            if (provider instanceof QueryMappingProvider) {
+                if (!plain.isEmpty()) {
+                    layers.add(IndexedMappingProvider.load(plain));
+                    plain.clear();
+                }
+                layers.add((QueryMappingProvider) provider);
+            } else {
+                plain.add(provider);
+            }
+        }
+        if (!plain.isEmpty()) {
+            layers.add(IndexedMappingProvider.load(plain));
+        }
+        return new LayeredMappingProvider(layers.build());
+    }
+
+    private final List<QueryMappingProvider> layers;
+    private final ConcurrentMap<String, Optional<MappingBundle>> answers =
+                    new ConcurrentHashMap<>();
+
+    private LayeredMappingProvider(List<QueryMappingProvider> layers) {
+        this.layers = layers;
+    }
+
+    @Override
+    public MappingBundle bundleFor(ClassDescriptor clazz) {
+        String name = clazz.getInternalName();
+        Optional<MappingBundle> answer = this.answers.get(name);
+        if (answer == null) {
+            answer = Optional.fromNullable(query(clazz));
+            Optional<MappingBundle> raced =
+                            this.answers.putIfAbsent(name, answer);
+            if (raced != null) {
+                answer = raced;
+            }
+        }
+        return answer.orNull();
+    }
+
+    private MappingBundle query(ClassDescriptor clazz) {
+        MappingBundle found = null;
+        MappingIndex.Builder merged = null;
+        for (QueryMappingProvider layer : this.layers) {
+            MappingBundle bundle = layer.bundleFor(clazz);
+            if (bundle == null) {
+                continue;
+            }
+            if (found == null) {
+                found = bundle;
+                continue;
+            }
+            // more than one layer maps the class, later ones win
+            if (merged == null) {
+                merged = MappingIndex.builder();
+                merged.addAll(found.getMappings());
+                merged.addAll(found.getRules());
+            }
+            merged.addAll(bundle.getMappings());
+            merged.addAll(bundle.getRules());
+        }
+        return merged == null ? found : merged.build().bundleFor(clazz);
+    }
+
+    @Override
+    public Iterator<GenericMapping> iterator() {
+        return Iterables.concat(this.layers).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "LayeredMappingProvider" + this.layers;
+    }
+}
@@ -0,0 +1,290 @@
+package com.techshroom.hendrix.mapping.load;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a text file line by line by memory-mapping it and scanning the bytes,
+ * for the mapping file readers. Each line is handed out as a {@link Line},
+ * which is split into columns on a separator without decoding anything, so
+ * only the columns that are used become {@link String Strings}. Both
+ * {@code \n} and {@code \r\n} line endings work. Text is UTF-8.
+ * 
+ * @author Kenzie Togami
+ */
+public final class MappedLineReader {
+    /**
+     * The most bytes mapped at once, a line can't be longer than this.
+     */
+    private static final long WINDOW = 1 << 30;
+
+    /**
+     * Receives the lines of a file.
+     * 
+     * @author Kenzie Togami
+     */
+    public interface LineHandler {
+
+        /**
+         * Called for every line, blank ones included. The line is only valid
+         * until this returns.
+         * 
+         * @param line - The line
+         */
+        void line(Line line);
+
+    }
+
+    /**
+     * One line of a file, reused for every line.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class Line {
+        private final String source;
+        private byte[] bytes = new byte[256];
+        private int length;
+        private long number;
+        private long offset;
+        private int[] columns = new int[16];
+        private int columnCount;
+
+        Line(String source) {
+            this.source = source;
+        }
+
+        void set(MappedByteBuffer buffer, int start, int end, long number,
+                        long offset) {
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            int length = end - start;
+            if (length > this.bytes.length) {
+                this.bytes =
+                                Arrays.copyOf(this.bytes, Math.max(length,
+                                                this.bytes.length * 2));
+            }
+            buffer.position(start);
+            buffer.get(this.bytes, 0, length);
+            this.length = length;
+            this.number = number;
+            this.offset = offset;
+            this.columnCount = 0;
+        }
+
+        /**
+         * Gets the line number, starting at {@code 1}.
+         * 
+         * @return The line number
+         */
+        public long getNumber() {
+            return this.number;
+        }
+
+        /**
+         * Gets the byte offset of the start of the line in the file.
+         * 
+         * @return The byte offset of the line
+         */
+        public long getOffset() {
+            return this.offset;
+        }
+
+        /**
+         * Gets the length of the line in bytes, without the line ending.
+         * 
+         * @return The length of the line
+         */
+        public int length() {
+            return this.length;
+        }
+
+        /**
+         * Gets a byte of the line.
+         * 
+         * @param index - The index of the byte
+         * @return The byte
+         */
+        public byte byteAt(int index) {
+            return this.bytes[index];
+        }
+
+        /**
+         * Gets the last index of {@code b} in the line.
+         * 
+         * @param b - The byte to find
+         * @return The last index, or {@code -1} if it isn't in the line
+         */
+        public int lastIndexOf(char b) {
+            for (int i = this.length - 1; i >= 0; i--) {
+                if (this.bytes[i] == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Decodes part of the line.
+         * 
+         * @param start - The start of the part, inclusive
+         * @param end - The end of the part, exclusive
+         * @return The decoded part
+         */
+        public String substring(int start, int end) {
+            return new String(this.bytes, start, end - start,
+                            StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Decodes the whole line.
+         * 
+         * @return The line
+         */
+        public String text() {
+            return substring(0, this.length);
+        }
+
+        /**
+         * Splits the line into columns on {@code separator}. Empty columns
+         * are kept, so leading separators give leading empty columns.
+         * 
+         * @param separator - The column separator
+         * @return The number of columns
+         */
+        public int split(char separator) {
+            int count = 0;
+            int start = 0;
+            for (int i = 0; i <= this.length; i++) {
+                if (i == this.length || this.bytes[i] == separator) {
+                    if (2 * count + 2 > this.columns.length) {
+                        this.columns =
+                                        Arrays.copyOf(this.columns,
+                                                        this.columns.length * 2);
+                    }
+                    this.columns[2 * count] = start;
+                    this.columns[2 * count + 1] = i;
+                    count++;
+                    start = i + 1;
+                }
+            }
+            this.columnCount = count;
+            return count;
+        }
+
+        /**
+         * Gets the number of columns from the last {@link #split(char)}.
+         * 
+         * @return The number of columns
+         */
+        public int columnCount() {
+            return this.columnCount;
+        }
+
+        /**
+         * Checks if a column is empty.
+         * 
+         * @param column - The column
+         * @return {@code true} if the column is empty
+         */
+        public boolean isColumnEmpty(int column) {
+            return this.columns[2 * column] == this.columns[2 * column + 1];
+        }
+
+        /**
+         * Checks if a column is exactly {@code value}, without decoding it.
+         * 
+         * @param column - The column
+         * @param value - The ASCII value to check for
+         * @return {@code true} if the column is {@code value}
+         */
+        public boolean columnIs(int column, String value) {
+            int start = this.columns[2 * column];
+            if (this.columns[2 * column + 1] - start != value.length()) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (this.bytes[start + i] != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Decodes a column.
+         * 
+         * @param column - The column
+         * @return The column
+         */
+        public String column(int column) {
+            return substring(this.columns[2 * column],
+                            this.columns[2 * column + 1]);
+        }
+
+        /**
+         * Creates an error for this line.
+         * 
+         * @param message - What went wrong
+         * @return The error
+         */
+        public MappingError error(String message) {
+            return MappingError.of(this.source, this.number, this.offset,
+                            message);
+        }
+    }
+
+    /**
+     * Reads every line of {@code file} into {@code handler}.
+     * 
+     * @param file - The file to read
+     * @param handler - The handler for the lines
+     * @throws IOException if the file can't be read
+     */
+    public static void read(Path file, LineHandler handler)
+                    throws IOException {
+        Line line = new Line(file.toString());
+        long number = 1;
+        try (FileChannel channel =
+                        FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long base = 0;
+            while (base < size) {
+                int length = (int) Math.min(WINDOW, size - base);
+                MappedByteBuffer buffer =
+                                channel.map(FileChannel.MapMode.READ_ONLY,
+                                                base, length);
+                int start = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buffer.get(i) == '\n') {
+                        line.set(buffer, start, i, number++, base + start);
+                        handler.line(line);
+                        start = i + 1;
+                    }
+                }
+                if (base + length == size) {
+                    if (start < length) {
+                        line.set(buffer, start, length, number, base + start);
+                        handler.line(line);
+                    }
+                    return;
+                }
+                if (start == 0) {
+                    throw new IOException(file + ":" + number
+                                    + " is longer than " + WINDOW + " bytes");
+                }
+                // map again from the start of the unfinished line
+                base += start;
+            }
+        }
+    }
+
+    private MappedLineReader() {
+        throw new AssertionError();
+    }
+}
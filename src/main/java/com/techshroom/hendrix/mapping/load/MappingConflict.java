@@ -0,0 +1,115 @@
+package com.techshroom.hendrix.mapping.load;
+
+import com.google.auto.value.AutoValue;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MethodMapping;
+
+/**
+ * Two mappings for the same class, field or method. The mapping from the
+ * provider with higher precedence is kept.
+ * 
+ * @author Kenzie Togami
+ */
+@AutoValue
+public abstract class MappingConflict {
+
+    /**
+     * Creates a new MappingConflict.
+     * 
+     * @param kept - The mapping that is used
+     * @param keptSource - Where the used mapping came from
+     * @param dropped - The mapping that is ignored
+     * @param droppedSource - Where the ignored mapping came from
+     * @return The conflict
+     */
+    public static final MappingConflict of(GenericMapping kept,
+                    String keptSource, GenericMapping dropped,
+                    String droppedSource) {
+        return new AutoValue_MappingConflict(kept, keptSource, dropped,
+                        droppedSource);
+    }
+
+    /**
+     * Describes what a mapping applies to, such as {@code field a/B.c}.
+     * 
+     * @param mapping - The mapping
+     * @return What the mapping applies to
+     */
+    public static String describeTarget(GenericMapping mapping) {
+        if (mapping instanceof ClassMapping) {
+            return "class "
+                            + ((ClassMapping) mapping).getClassName()
+                                            .getInternalName();
+        } else if (mapping instanceof FieldMapping) {
+            FieldMapping field = (FieldMapping) mapping;
+            return "field "
+                            + field.getContainingClass().getInternalName()
+                            + "." + field.getFieldName();
+        } else if (mapping instanceof MethodMapping) {
+            MethodMapping method = (MethodMapping) mapping;
+            return "method "
+                            + method.getContainingClass().getInternalName()
+                            + "." + method.getMethod().getName()
+                            + method.getMethod().getErasedDescriptor();
+        }
+        return String.valueOf(mapping);
+    }
+
+    MappingConflict() {}
+
+    /**
+     * Gets the mapping that is used.
+     * 
+     * @return The mapping that is used
+     */
+    public abstract GenericMapping getKept();
+
+    /**
+     * Gets where the used mapping came from.
+     * 
+     * @return Where the used mapping came from
+     */
+    public abstract String getKeptSource();
+
+    /**
+     * Gets the mapping that is ignored.
+     * 
+     * @return The mapping that is ignored
+     */
+    public abstract GenericMapping getDropped();
+
+    /**
+     * Gets where the ignored mapping came from.
+     * 
+     * @return Where the ignored mapping came from
+     */
+    public abstract String getDroppedSource();
+
+    /**
+     * Checks if both mappings give the same generic, so dropping one changes
+     * nothing.
+     * 
+     * @return {@code true} if the mappings are duplicates, {@code false} if
+     *         they contradict each other
+     */
+    public boolean isDuplicate() {
+        return getKept().getGeneric().equals(getDropped().getGeneric());
+    }
+
+    @Override
+    public String toString() {
+        String target = describeTarget(getKept());
+        if (isDuplicate()) {
+            return "Duplicate mapping for " + target + " in "
+                            + getDroppedSource() + " and " + getKeptSource();
+        }
+        return "Contradictory mappings for " + target + ": '"
+                        + getDropped().getGeneric().toSourcecodeRef()
+                        + "' in " + getDroppedSource() + ", '"
+                        + getKept().getGeneric().toSourcecodeRef() + "' in "
+                        + getKeptSource() + " is used";
+    }
+
+}
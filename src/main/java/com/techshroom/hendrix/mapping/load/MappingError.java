@@ -0,0 +1,63 @@
+package com.techshroom.hendrix.mapping.load;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * An entry of a mapping source that couldn't be read.
+ * 
+ * @author Kenzie Togami
+ */
+@AutoValue
+public abstract class MappingError {
+
+    /**
+     * Creates a new MappingError.
+     * 
+     * @param source - The source of the entry, usually a file name
+     * @param line - The line of the entry, starting at {@code 1}
+     * @param offset - The byte offset of the start of the line
+     * @param message - What went wrong
+     * @return The error
+     */
+    public static final MappingError of(String source, long line,
+                    long offset, String message) {
+        return new AutoValue_MappingError(source, line, offset, message);
+    }
+
+    MappingError() {}
+
+    /**
+     * Gets the source of the entry.
+     * 
+     * @return The source of the entry
+     */
+    public abstract String getSource();
+
+    /**
+     * Gets the line of the entry, starting at {@code 1}.
+     * 
+     * @return The line of the entry
+     */
+    public abstract long getLine();
+
+    /**
+     * Gets the byte offset of the start of the line.
+     * 
+     * @return The byte offset of the line
+     */
+    public abstract long getOffset();
+
+    /**
+     * Gets what went wrong.
+     * 
+     * @return The error message
+     */
+    public abstract String getMessage();
+
+    @Override
+    public String toString() {
+        return getSource() + ":" + getLine() + " (byte " + getOffset()
+                        + "): " + getMessage();
+    }
+
+}
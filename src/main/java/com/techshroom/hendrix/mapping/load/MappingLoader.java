@@ -0,0 +1,304 @@
+package com.techshroom.hendrix.mapping.load;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.InClassMapping;
+import com.techshroom.hendrix.mapping.MappingBundle;
+import com.techshroom.hendrix.mapping.MappingIndex;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.rule.MappingRule;
+
+/**
+ * Loads {@link MappingProvider MappingProviders} into a {@link MappingIndex}.
+ * 
+ * @author Kenzie Togami
+ */
+public final class MappingLoader {
+    private static final ThreadFactory LOAD_THREADS =
+                    new ThreadFactoryBuilder()
+                                    .setNameFormat("hendrix-mappings-%d")
+                                    .setDaemon(true).build();
+
+    /**
+     * The merged mappings of several providers.
+     * 
+     * @author Kenzie Togami
+     */
+    @AutoValue
+    public abstract static class Result {
+
+        static Result of(MappingIndex index, List<MappingConflict> conflicts) {
+            return new AutoValue_MappingLoader_Result(index,
+                            ImmutableList.copyOf(conflicts));
+        }
+
+        Result() {}
+
+        /**
+         * Gets the merged mappings.
+         * 
+         * @return The merged mappings
+         */
+        public abstract MappingIndex getIndex();
+
+        /**
+         * Gets every mapping that was given more than once, in the order they
+         * were found.
+         * 
+         * @return The conflicts between the mappings
+         */
+        public abstract List<MappingConflict> getConflicts();
+
+    }
+
+    /**
+     * Loads every provider, each on its own worker thread, and merges them
+     * into one index. Later providers take precedence: their mappings replace
+     * those of earlier providers for the same class, field or method, and
+     * every replaced mapping is reported as a conflict. So are mappings given
+     * twice by the same provider, where the later one is kept.
+     * 
+     * @param providers - The providers to load, lowest precedence first
+     * @return The merged mappings and the conflicts between them
+     */
+    public static Result loadAll(List<? extends MappingProvider> providers) {
+        int count = providers.size();
+        List<List<MappingConflict>> conflicts = new ArrayList<>(count);
+        List<MappingIndex> indexes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            conflicts.add(Collections
+                            .synchronizedList(new ArrayList<MappingConflict>()));
+        }
+        if (count == 1) {
+            indexes.add(loadOne(providers.get(0), conflicts.get(0)));
+        } else if (count > 1) {
+            // each provider is loaded into its own index, so the slowest one
+            // bounds the load
+            ExecutorService pool =
+                            Executors.newFixedThreadPool(Math.min(count,
+                                            Runtime.getRuntime()
+                                                            .availableProcessors()),
+                                            LOAD_THREADS);
+            try {
+                List<Future<MappingIndex>> tasks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final MappingProvider provider = providers.get(i);
+                    final List<MappingConflict> found = conflicts.get(i);
+                    tasks.add(pool.submit(new Callable<MappingIndex>() {
+                        @Override
+                        public MappingIndex call() {
+                            return loadOne(provider, found);
+                        }
+                    }));
+                }
+                for (Future<MappingIndex> task : tasks) {
+                    try {
+                        indexes.add(Uninterruptibles.getUninterruptibly(task));
+                    } catch (ExecutionException e) {
+                        throw Throwables.propagate(e.getCause());
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        List<MappingConflict> allConflicts = new ArrayList<>();
+        for (List<MappingConflict> found : conflicts) {
+            allConflicts.addAll(found);
+        }
+        if (indexes.size() <= 1) {
+            return Result.of(indexes.isEmpty() ? MappingIndex.empty()
+                            : indexes.get(0), allConflicts);
+        }
+        return Result.of(merge(providers, indexes, allConflicts),
+                        allConflicts);
+    }
+
+    private static MappingIndex loadOne(MappingProvider provider,
+                    final List<MappingConflict> conflicts) {
+        final MappingIndex.Builder index = MappingIndex.builder();
+        final String source = provider.toString();
+        final MappingSink warnings = sinkFor(index);
+        load(provider, new MappingSink() {
+
+            @Override
+            public void mapping(GenericMapping mapping) {
+                if (!MappingIndex.isIndexed(mapping)) {
+                    warnings.mapping(mapping);
+                    return;
+                }
+                GenericMapping replaced = index.put(mapping);
+                if (replaced != null) {
+                    conflicts.add(MappingConflict.of(mapping, source,
+                                    replaced, source));
+                }
+            }
+
+            @Override
+            public void error(MappingError error) {
+                warnings.error(error);
+            }
+
+        });
+        return index.build();
+    }
+
+    private static MappingIndex merge(List<? extends MappingProvider> providers,
+                    List<MappingIndex> indexes, List<MappingConflict> conflicts) {
+        MappingIndex.Builder merged = MappingIndex.builder();
+        for (int i = 0; i < indexes.size(); i++) {
+            for (MappingBundle bundle : indexes.get(i).getBundles()) {
+                for (GenericMapping mapping : bundle.getMappings()) {
+                    GenericMapping replaced = merged.put(mapping);
+                    if (replaced != null) {
+                        conflicts.add(MappingConflict.of(mapping, providers
+                                        .get(i).toString(), replaced,
+                                        sourceOf(replaced, providers,
+                                                        indexes, i)));
+                    }
+                }
+            }
+            for (MappingRule rule : indexes.get(i).getRules()) {
+                merged.put(rule);
+            }
+        }
+        return merged.build();
+    }
+
+    /**
+     * Finds the provider before {@code before} that gave {@code mapping}.
+     * Only used for conflicts, so it may be slow.
+     */
+    private static String sourceOf(GenericMapping mapping,
+                    List<? extends MappingProvider> providers,
+                    List<MappingIndex> indexes, int before) {
+        for (int i = before - 1; i >= 0; i--) {
+            if (find(indexes.get(i), mapping) == mapping) {
+                return providers.get(i).toString();
+            }
+        }
+        return "an unknown provider";
+    }
+
+    /**
+     * Finds the mapping in {@code index} for the same class, field or method
+     * as {@code mapping}.
+     */
+    private static GenericMapping find(MappingIndex index,
+                    GenericMapping mapping) {
+        if (mapping instanceof ClassMapping) {
+            MappingBundle bundle =
+                            index.bundleFor(((ClassMapping) mapping)
+                                            .getClassName());
+            return bundle == null ? null : bundle.getClassMapping().orNull();
+        }
+        InClassMapping member = (InClassMapping) mapping;
+        MappingBundle bundle = index.bundleFor(member.getContainingClass());
+        if (bundle == null) {
+            return null;
+        } else if (mapping instanceof FieldMapping) {
+            return bundle.getField(((FieldMapping) mapping).getFieldName());
+        }
+        MethodDescriptor method = ((MethodMapping) mapping).getMethod();
+        return bundle.getMethod(method.getName(),
+                        method.getErasedDescriptor());
+    }
+
+    /**
+     * Creates a sink that adds to {@code index}, warning about unhandled
+     * mappings and errors.
+     * 
+     * @param index - The index to add to
+     * @return The sink
+     */
+    public static MappingSink sinkFor(final MappingIndex.Builder index) {
+        return new MappingSink() {
+
+            @Override
+            public void mapping(GenericMapping mapping) {
+                if (!index.add(mapping)) {
+                    System.err.println("Unhandled mapping type '"
+                                    + mapping.getClass().getName() + "'");
+                }
+            }
+
+            @Override
+            public void error(MappingError error) {
+                System.err.println("Error in mappings: " + error);
+            }
+
+        };
+    }
+
+    /**
+     * Loads every mapping of {@code provider} into {@code sink}. Streaming
+     * providers are read straight into the sink.
+     * 
+     * @param provider - The provider to load
+     * @param sink - The sink to load into
+     */
+    public static void load(MappingProvider provider, MappingSink sink) {
+        if (provider instanceof StreamingMappingProvider) {
+            try {
+                ((StreamingMappingProvider) provider).load(sink);
+            } catch (IOException e) {
+                System.err.println("Error loading mappings from " + provider);
+                e.printStackTrace();
+            }
+            return;
+        }
+        for (GenericMapping mapping : provider) {
+            sink.mapping(mapping);
+        }
+    }
+
+    /**
+     * Reads every mapping of a streaming provider into a list, warning about
+     * errors. For providers that don't keep their mappings in memory.
+     * 
+     * @param provider - The provider to read
+     * @return The mappings of the provider
+     */
+    public static List<GenericMapping> collect(
+                    StreamingMappingProvider provider) {
+        final ImmutableList.Builder<GenericMapping> mappings =
+                        ImmutableList.builder();
+        load(provider, new MappingSink() {
+
+            @Override
+            public void mapping(GenericMapping mapping) {
+                mappings.add(mapping);
+            }
+
+            @Override
+            public void error(MappingError error) {
+                System.err.println("Error in mappings: " + error);
+            }
+
+        });
+        return mappings.build();
+    }
+
+    private MappingLoader() {
+        throw new AssertionError();
+    }
+
+}
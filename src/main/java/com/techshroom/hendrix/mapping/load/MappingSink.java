@@ -0,0 +1,28 @@
+package com.techshroom.hendrix.mapping.load;
+
+import com.techshroom.hendrix.mapping.GenericMapping;
+
+/**
+ * Receives mappings as a {@link StreamingMappingProvider} reads them, so they
+ * never have to be collected first.
+ * 
+ * @author Kenzie Togami
+ */
+public interface MappingSink {
+
+    /**
+     * Called for every mapping read.
+     * 
+     * @param mapping - The mapping
+     */
+    void mapping(GenericMapping mapping);
+
+    /**
+     * Called for every entry that couldn't be read. Reading continues with the
+     * next entry.
+     * 
+     * @param error - The error
+     */
+    void error(MappingError error);
+
+}
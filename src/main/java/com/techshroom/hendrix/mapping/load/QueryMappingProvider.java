@@ -0,0 +1,28 @@
+package com.techshroom.hendrix.mapping.load;
+
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.mapping.MappingBundle;
+
+/**
+ * A {@link MappingProvider} that is asked for the mappings of one class at a
+ * time, instead of handing out every mapping up front. Providers backed by an
+ * index on disk only have to read the classes that are processed.
+ * 
+ * <p>
+ * {@link #iterator()} still gives every mapping, but may be expensive.
+ * Queries may come from several threads at once.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public interface QueryMappingProvider extends MappingProvider {
+
+    /**
+     * Gets the mappings of a class.
+     * 
+     * @param clazz - The class
+     * @return The mappings of the class, or {@code null} if it has none
+     */
+    MappingBundle bundleFor(ClassDescriptor clazz);
+
+}
@@ -0,0 +1,23 @@
+package com.techshroom.hendrix.mapping.load;
+
+import java.io.IOException;
+
+/**
+ * A {@link MappingProvider} that can hand its mappings to a
+ * {@link MappingSink} while reading them, instead of holding all of them for
+ * {@link #iterator()}.
+ * 
+ * @author Kenzie Togami
+ */
+public interface StreamingMappingProvider extends MappingProvider {
+
+    /**
+     * Reads every mapping into {@code sink}. Bad entries are passed to
+     * {@link MappingSink#error(MappingError)} and skipped.
+     * 
+     * @param sink - The sink to read into
+     * @throws IOException if the mappings can't be read at all
+     */
+    void load(MappingSink sink) throws IOException;
+
+}
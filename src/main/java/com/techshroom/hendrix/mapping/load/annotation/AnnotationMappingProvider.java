@@ -0,0 +1,307 @@
+package com.techshroom.hendrix.mapping.load.annotation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.SharedData;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.byteio.BasicBytecodeContainer;
+import com.techshroom.hendrix.byteio.BytecodeSupplier;
+import com.techshroom.hendrix.byteio.JarEntryConsumer;
+import com.techshroom.hendrix.classfile.ConstantPool;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MappingBundle;
+import com.techshroom.hendrix.mapping.MappingIndex;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.MappingError;
+import com.techshroom.hendrix.mapping.load.MappingLoader;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+import com.techshroom.hendrix.mapping.load.QueryMappingProvider;
+import com.techshroom.hendrix.mapping.load.StreamingMappingProvider;
+
+/**
+ * Provides mappings from an annotation on the fields and methods of the
+ * input. The annotation's {@code value} is the generic, in the same source
+ * form as manual mappings, such as
+ * {@code @Generic("java.util.List<java.lang.String>")}. It gives the type of
+ * a field or the return type of a method, and may be retained in the class
+ * file either visibly or invisibly.
+ * 
+ * <p>
+ * Classes are scanned as they are processed: each query reads only the class
+ * asked about, on the thread that asks. A class can only use the annotation
+ * if its descriptor is in the constant pool, so that's checked first. Classes
+ * without it are never read past the constant pool.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class AnnotationMappingProvider implements
+                StreamingMappingProvider, QueryMappingProvider {
+    private static final int SKIP = ClassReader.SKIP_CODE
+                    | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final String descriptor;
+    private final byte[] descriptorUtf8;
+    private final List<BytecodeSupplier> input;
+    private volatile Map<String, BytecodeSupplier> byName;
+
+    /**
+     * Creates a new provider that reads {@code annotation} from
+     * {@code input}.
+     * 
+     * @param annotation - The name of the annotation, with dots or slashes
+     * @param input - The classes being processed, only those that
+     *        {@linkplain BytecodeSupplier#shouldBeProcessed() should be
+     *        processed} are read
+     */
+    public AnnotationMappingProvider(String annotation,
+                    Iterable<? extends BytecodeSupplier> input) {
+        this.descriptor = "L" + annotation.replace('.', '/') + ";";
+        this.descriptorUtf8 = ConstantPool.encodeUtf8(this.descriptor);
+        ImmutableList.Builder<BytecodeSupplier> processed =
+                        ImmutableList.builder();
+        for (BytecodeSupplier supplier : input) {
+            if (supplier.shouldBeProcessed()) {
+                processed.add(supplier);
+            }
+        }
+        this.input = processed.build();
+    }
+
+    @Override
+    public MappingBundle bundleFor(ClassDescriptor clazz) {
+        BytecodeSupplier supplier = byName().get(clazz.getInternalName());
+        if (supplier == null) {
+            return null;
+        }
+        // being processed, so the pipeline loads it anyway
+        byte[] bytecode = supplier.bytecode();
+        if (!mentionsAnnotation(bytecode)) {
+            return null;
+        }
+        final List<GenericMapping> found = new ArrayList<>();
+        new ClassReader(bytecode).accept(new AnnotationReader(
+                        new MappingSink() {
+
+                            @Override
+                            public void mapping(GenericMapping mapping) {
+                                found.add(mapping);
+                            }
+
+                            @Override
+                            public void error(MappingError error) {
+                                System.err.println("Warning: " + error);
+                            }
+
+                        }), SKIP);
+        if (found.isEmpty()) {
+            return null;
+        }
+        MappingIndex.Builder index = MappingIndex.builder();
+        index.addAll(found);
+        return index.build().bundleFor(clazz);
+    }
+
+    @Override
+    public void load(MappingSink sink) {
+        for (BytecodeSupplier supplier : this.input) {
+            byte[] bytecode = read(supplier);
+            if (mentionsAnnotation(bytecode)) {
+                new ClassReader(bytecode).accept(new AnnotationReader(sink),
+                                SKIP);
+            }
+        }
+    }
+
+    private boolean mentionsAnnotation(byte[] bytecode) {
+        ConstantPool pool = ConstantPool.read(bytecode);
+        return pool.indexOfUtf8(this.descriptorUtf8) >= 0;
+    }
+
+    /**
+     * Gets the input classes by internal name. Classes from jars are named
+     * after their entries, so only other classes are read for their name.
+     */
+    private Map<String, BytecodeSupplier> byName() {
+        Map<String, BytecodeSupplier> result = this.byName;
+        if (result == null) {
+            synchronized (this) {
+                result = this.byName;
+                if (result == null) {
+                    result = new HashMap<>();
+                    for (BytecodeSupplier supplier : this.input) {
+                        result.put(name(supplier), supplier);
+                    }
+                    this.byName = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String name(BytecodeSupplier supplier) {
+        if (supplier instanceof JarEntryConsumer) {
+            String entry = ((JarEntryConsumer) supplier).getEntryName();
+            if (entry.endsWith(CLASS_SUFFIX)) {
+                return entry.substring(0, entry.length()
+                                - CLASS_SUFFIX.length());
+            }
+        }
+        return ConstantPool.readClassName(read(supplier));
+    }
+
+    /**
+     * Reads a class without keeping it cached.
+     */
+    private static byte[] read(BytecodeSupplier supplier) {
+        if (supplier instanceof BasicBytecodeContainer) {
+            return ((BasicBytecodeContainer) supplier).readBytecode();
+        }
+        return supplier.bytecode();
+    }
+
+    /**
+     * Reads the annotation from the members of one class.
+     */
+    private final class AnnotationReader extends ClassVisitor {
+        private final MappingSink sink;
+        private String owner;
+
+        AnnotationReader(MappingSink sink) {
+            super(SharedData.ASM_VERSION);
+            this.sink = sink;
+        }
+
+        @Override
+        public void visit(int version, int access, String name,
+                        String signature, String superName,
+                        String[] interfaces) {
+            this.owner = name;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, final String name,
+                        String desc, String signature, Object value) {
+            return new FieldVisitor(SharedData.ASM_VERSION) {
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotation,
+                                boolean visible) {
+                    if (!annotation.equals(AnnotationMappingProvider.this.descriptor)) {
+                        return null;
+                    }
+                    return new GenericReader(name) {
+
+                        @Override
+                        GenericMapping mapping(ClassDescriptor generic) {
+                            return FieldMapping.Impl.of(generic,
+                                            ClassDescriptor
+                                                            .fromInternalName(AnnotationReader.this.owner),
+                                            name);
+                        }
+
+                    };
+                }
+
+            };
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, final String name,
+                        final String desc, String signature,
+                        String[] exceptions) {
+            return new MethodVisitor(SharedData.ASM_VERSION) {
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotation,
+                                boolean visible) {
+                    if (!annotation.equals(AnnotationMappingProvider.this.descriptor)) {
+                        return null;
+                    }
+                    return new GenericReader(name + desc) {
+
+                        @Override
+                        GenericMapping mapping(ClassDescriptor generic) {
+                            return MethodMapping.Impl.of(generic,
+                                            MethodDescriptor.fromInternal(
+                                                            AnnotationReader.this.owner,
+                                                            name, desc));
+                        }
+
+                    };
+                }
+
+            };
+        }
+
+        /**
+         * Reads the value of one annotation into a mapping.
+         */
+        private abstract class GenericReader extends AnnotationVisitor {
+            private final String member;
+            private String generic;
+
+            GenericReader(String member) {
+                super(SharedData.ASM_VERSION);
+                this.member = member;
+            }
+
+            abstract GenericMapping mapping(ClassDescriptor generic);
+
+            @Override
+            public void visit(String name, Object value) {
+                if ("value".equals(name) && value instanceof String) {
+                    this.generic = (String) value;
+                }
+            }
+
+            @Override
+            public void visitEnd() {
+                String where = AnnotationReader.this.owner + "." + this.member;
+                if (this.generic == null) {
+                    System.err.println("Warning: no generic in "
+                                    + AnnotationMappingProvider.this.descriptor
+                                    + " on " + where);
+                    return;
+                }
+                GenericMapping mapping;
+                try {
+                    mapping =
+                                    mapping(ClassDescriptor
+                                                    .fromSourcecodeReference(this.generic));
+                } catch (RuntimeException e) {
+                    // descriptor parsing fails with a few different exceptions
+                    System.err.println("Warning: ignoring invalid generic '"
+                                    + this.generic + "' on " + where + ": "
+                                    + e);
+                    return;
+                }
+                AnnotationReader.this.sink.mapping(mapping);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<GenericMapping> iterator() {
+        return MappingLoader.collect(this).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "AnnotationMappingProvider[" + this.descriptor + "]";
+    }
+}
@@ -0,0 +1,356 @@
+package com.techshroom.hendrix.mapping.load.compiled;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MappingBundle;
+import com.techshroom.hendrix.mapping.MappingIndex;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+import com.techshroom.hendrix.mapping.load.QueryMappingProvider;
+import com.techshroom.hendrix.mapping.load.StreamingMappingProvider;
+import com.techshroom.hendrix.mapping.rule.MappingRule;
+import com.techshroom.hendrix.mapping.rule.RuleMatcher;
+
+/**
+ * Provides the mappings of a file written by {@link CompiledMappings}. The
+ * file is memory-mapped and only the rules are decoded up front: the mappings
+ * of one class are found by a binary search over the class table, and only
+ * the strings they use are read.
+ * 
+ * @author Kenzie Togami
+ */
+public final class CompiledMappingProvider implements
+                StreamingMappingProvider, QueryMappingProvider {
+    static final int MAGIC = 0x48444D50;
+    static final int VERSION = 2;
+    static final int KIND_CLASS = 0, KIND_FIELD = 1, KIND_METHOD = 2;
+    /**
+     * {@code hash, name, first entry, entry count}.
+     */
+    static final int CLASS_RECORD = 16;
+    /**
+     * {@code kind, name, descriptor, generic}.
+     */
+    static final int ENTRY_RECORD = 16;
+    /**
+     * {@code kind, class pattern, member pattern, generic}.
+     */
+    static final int RULE_RECORD = 16;
+    static final int NO_STRING = -1;
+
+    /**
+     * Checks if {@code file} is a compiled mapping file, rather than a text
+     * one.
+     * 
+     * @param file - The file to check
+     * @return {@code true} if the file is compiled
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isCompiled(Path file) throws IOException {
+        try (FileChannel channel =
+                        FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // keep reading
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads the hash of the source text from the header of a compiled
+     * mapping file, without mapping the rest of it.
+     * 
+     * @param file - The file to read
+     * @return The hash of the source, if it was recorded
+     * @throws IOException if the file can't be read, or isn't a compiled
+     *         mapping file
+     */
+    static Optional<HashCode> readSourceHash(Path file) throws IOException {
+        try (FileChannel channel =
+                        FileChannel.open(file, StandardOpenOption.READ)) {
+            // magic, version and hash length
+            ByteBuffer header = ByteBuffer.allocate(10);
+            readFully(channel, header, file);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a compiled mapping file");
+            }
+            ByteBuffer hash = ByteBuffer.allocate(header.getShort(8) & 0xFFFF);
+            readFully(channel, hash, file);
+            return hash.capacity() == 0 ? Optional.<HashCode> absent()
+                            : Optional.of(HashCode.fromBytes(hash.array()));
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer,
+                    Path file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException(file + " is truncated");
+            }
+        }
+    }
+
+    /**
+     * Opens a compiled mapping file.
+     * 
+     * @param file - The file to open
+     * @return The provider for the file
+     * @throws IOException if the file can't be read, or isn't a compiled
+     *         mapping file
+     */
+    public static CompiledMappingProvider open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel =
+                        FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer =
+                            channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            channel.size()).asReadOnlyBuffer();
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(file + " is not a compiled mapping file");
+            }
+            byte[] hash = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(hash);
+            int strings = buffer.getInt();
+            int classes = buffer.getInt();
+            int entries = buffer.getInt();
+            int rules = buffer.getInt();
+            int stringTable = buffer.position();
+            int classTable = stringTable + 4 * strings;
+            int entryTable = classTable + CLASS_RECORD * classes;
+            int ruleTable = entryTable + ENTRY_RECORD * entries;
+            int pool = ruleTable + RULE_RECORD * rules;
+            if (pool > buffer.limit()) {
+                throw new IOException(file + " is truncated");
+            }
+            return new CompiledMappingProvider(file, buffer,
+                            hash.length == 0 ? Optional.<HashCode> absent()
+                                            : Optional.of(HashCode
+                                                            .fromBytes(hash)),
+                            strings, classes, entries, stringTable,
+                            classTable, entryTable, ruleTable, rules, pool);
+        } catch (RuntimeException corrupt) {
+            // BufferUnderflowException and friends
+            throw new IOException(file + " is corrupt", corrupt);
+        }
+    }
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final Optional<HashCode> sourceHash;
+    private final int strings;
+    private final int classes;
+    private final int entries;
+    private final int stringTable;
+    private final int classTable;
+    private final int entryTable;
+    private final int pool;
+    private final RuleMatcher rules;
+
+    private CompiledMappingProvider(Path file, ByteBuffer buffer,
+                    Optional<HashCode> sourceHash, int strings, int classes,
+                    int entries, int stringTable, int classTable,
+                    int entryTable, int ruleTable, int ruleCount, int pool) {
+        this.file = file;
+        this.buffer = buffer;
+        this.sourceHash = sourceHash;
+        this.strings = strings;
+        this.classes = classes;
+        this.entries = entries;
+        this.stringTable = stringTable;
+        this.classTable = classTable;
+        this.entryTable = entryTable;
+        this.pool = pool;
+        // rules are few, and compiled once
+        this.rules = RuleMatcher.compile(readRules(ruleTable, ruleCount));
+    }
+
+    /**
+     * Gets the hash of the text file these mappings were compiled from.
+     * 
+     * @return The hash of the source, if it was recorded
+     */
+    public Optional<HashCode> getSourceHash() {
+        return this.sourceHash;
+    }
+
+    /**
+     * Gets the number of classes with mappings.
+     * 
+     * @return The number of classes with mappings
+     */
+    public int getClassCount() {
+        return this.classes;
+    }
+
+    /**
+     * Gets the number of mappings, rules included.
+     * 
+     * @return The number of mappings
+     */
+    public int size() {
+        return this.entries + this.rules.getRules().size();
+    }
+
+    /**
+     * Finds the mappings of one class, without reading any other class. Rules
+     * are not included.
+     * 
+     * @param internalName - The internal name of the class
+     * @return The mappings of the class, empty if it has none
+     */
+    public List<GenericMapping> lookup(String internalName) {
+        int hash = internalName.hashCode();
+        // lowest record with the hash
+        int low = 0;
+        int high = this.classes;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (classHash(mid) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < this.classes && classHash(i) == hash; i++) {
+            int record = this.classTable + CLASS_RECORD * i;
+            if (string(this.buffer.getInt(record + 4)).equals(internalName)) {
+                return readClass(internalName, record);
+            }
+        }
+        return ImmutableList.of();
+    }
+
+    @Override
+    public MappingBundle bundleFor(ClassDescriptor clazz) {
+        List<GenericMapping> mappings = lookup(clazz.getInternalName());
+        List<MappingRule> matched = this.rules.match(clazz.getInternalName());
+        if (mappings.isEmpty() && matched.isEmpty()) {
+            return null;
+        }
+        MappingIndex.Builder index = MappingIndex.builder();
+        index.addAll(mappings);
+        index.addAll(matched);
+        return index.build().bundleFor(clazz);
+    }
+
+    @Override
+    public void load(MappingSink sink) {
+        for (int i = 0; i < this.classes; i++) {
+            int record = this.classTable + CLASS_RECORD * i;
+            String name = string(this.buffer.getInt(record + 4));
+            for (GenericMapping mapping : readClass(name, record)) {
+                sink.mapping(mapping);
+            }
+        }
+        for (MappingRule rule : this.rules.getRules()) {
+            sink.mapping(rule);
+        }
+    }
+
+    @Override
+    public Iterator<GenericMapping> iterator() {
+        ImmutableList.Builder<GenericMapping> mappings =
+                        ImmutableList.builder();
+        for (int i = 0; i < this.classes; i++) {
+            int record = this.classTable + CLASS_RECORD * i;
+            mappings.addAll(readClass(string(this.buffer.getInt(record + 4)),
+                            record));
+        }
+        mappings.addAll(this.rules.getRules());
+        return mappings.build().iterator();
+    }
+
+    private int classHash(int index) {
+        return this.buffer.getInt(this.classTable + CLASS_RECORD * index);
+    }
+
+    private List<GenericMapping> readClass(String name, int record) {
+        int first = this.buffer.getInt(record + 8);
+        int count = this.buffer.getInt(record + 12);
+        ClassDescriptor owner = ClassDescriptor.fromInternalName(name);
+        ImmutableList.Builder<GenericMapping> mappings =
+                        ImmutableList.builder();
+        for (int i = first; i < first + count; i++) {
+            int entry = this.entryTable + ENTRY_RECORD * i;
+            int kind = this.buffer.getInt(entry);
+            ClassDescriptor generic =
+                            ClassDescriptor.fromDescriptorString(string(this.buffer
+                                            .getInt(entry + 12)));
+            if (kind == KIND_CLASS) {
+                mappings.add(ClassMapping.Impl.of(generic, owner));
+            } else if (kind == KIND_FIELD) {
+                mappings.add(FieldMapping.Impl.of(generic, owner,
+                                string(this.buffer.getInt(entry + 4))));
+            } else if (kind == KIND_METHOD) {
+                mappings.add(MethodMapping.Impl.of(generic, MethodDescriptor
+                                .fromInternal(name,
+                                                string(this.buffer
+                                                                .getInt(entry + 4)),
+                                                string(this.buffer
+                                                                .getInt(entry + 8)))));
+            } else {
+                throw new IllegalStateException(this.file
+                                + " has an unknown mapping kind " + kind);
+            }
+        }
+        return mappings.build();
+    }
+
+    private List<MappingRule> readRules(int table, int count) {
+        ImmutableList.Builder<MappingRule> rules = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            int rule = table + RULE_RECORD * i;
+            int kind = this.buffer.getInt(rule);
+            if (kind != KIND_FIELD && kind != KIND_METHOD) {
+                throw new IllegalStateException(this.file
+                                + " has an unknown rule kind " + kind);
+            }
+            rules.add(MappingRule.of(kind == KIND_FIELD ? MappingRule.Kind.FIELD
+                            : MappingRule.Kind.METHOD, string(this.buffer
+                            .getInt(rule + 4)), string(this.buffer
+                            .getInt(rule + 8)), ClassDescriptor
+                            .fromDescriptorString(string(this.buffer
+                                            .getInt(rule + 12)))));
+        }
+        return rules.build();
+    }
+
+    private String string(int index) {
+        if (index < 0 || index >= this.strings) {
+            throw new IllegalStateException(this.file
+                            + " has an invalid string index " + index);
+        }
+        int offset =
+                        this.pool
+                                        + this.buffer.getInt(this.stringTable
+                                                        + 4 * index);
+        ByteBuffer string = this.buffer.duplicate();
+        string.position(offset);
+        byte[] bytes = new byte[string.getShort() & 0xFFFF];
+        string.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledMappingProvider[" + this.file + "]";
+    }
+}
@@ -0,0 +1,271 @@
+package com.techshroom.hendrix.mapping.load.compiled;
+
+import static com.techshroom.hendrix.mapping.load.compiled.CompiledMappingProvider.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MappingBundle;
+import com.techshroom.hendrix.mapping.MappingIndex;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.MappingLoader;
+import com.techshroom.hendrix.mapping.load.manual.ManualMappingProvider;
+import com.techshroom.hendrix.mapping.rule.MappingRule;
+
+/**
+ * Writes compiled mapping files for {@link CompiledMappingProvider}, and keeps
+ * compiled copies of text mapping files in a cache directory.
+ * 
+ * <p>
+ * A compiled file holds a string pool, a table of classes sorted by the hash
+ * of their internal name, a table of entries grouped by class and a table of
+ * {@linkplain MappingRule rules}, compiled again when the file is opened. Every
+ * generic is stored as its descriptor string, so nothing has to be parsed
+ * from the text format again.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class CompiledMappings {
+    private static final String SUFFIX = ".hmap";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writes the mappings of {@code index} to {@code file}.
+     * 
+     * @param index - The mappings to write
+     * @param sourceHash - The hash of the text the mappings came from, if any
+     * @param file - The file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void write(MappingIndex index,
+                    Optional<HashCode> sourceHash, Path file)
+                    throws IOException {
+        StringPool strings = new StringPool();
+        List<MappingBundle> bundles = new ArrayList<>(index.getBundles());
+        Collections.sort(bundles, new Comparator<MappingBundle>() {
+            @Override
+            public int compare(MappingBundle a, MappingBundle b) {
+                int hash =
+                                Integer.compare(a.getClassName().hashCode(), b
+                                                .getClassName().hashCode());
+                return hash != 0 ? hash : a.getClassName().compareTo(
+                                b.getClassName());
+            }
+        });
+        // every string is known before anything is written, so each table
+        // can be written straight out in order
+        int entries = 0;
+        for (MappingBundle bundle : bundles) {
+            strings.add(bundle.getClassName());
+            for (GenericMapping mapping : bundle.getMappings()) {
+                entryRecord(mapping, strings);
+                entries++;
+            }
+        }
+        List<MappingRule> rules = index.getRules();
+        for (MappingRule rule : rules) {
+            ruleRecord(rule, strings);
+        }
+        byte[] hash =
+                        sourceHash.isPresent() ? sourceHash.get().asBytes()
+                                        : new byte[0];
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, "hendrix-mappings", SUFFIX);
+        try {
+            try (DataOutputStream out = openOutput(tmp)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeShort(hash.length);
+                out.write(hash);
+                out.writeInt(strings.size());
+                out.writeInt(bundles.size());
+                out.writeInt(entries);
+                out.writeInt(rules.size());
+                for (int i = 0; i < strings.size(); i++) {
+                    out.writeInt(strings.offsets[i]);
+                }
+                int entry = 0;
+                for (MappingBundle bundle : bundles) {
+                    out.writeInt(bundle.getClassName().hashCode());
+                    out.writeInt(strings.add(bundle.getClassName()));
+                    out.writeInt(entry);
+                    out.writeInt(bundle.getMappings().size());
+                    entry += bundle.getMappings().size();
+                }
+                for (MappingBundle bundle : bundles) {
+                    for (GenericMapping mapping : bundle.getMappings()) {
+                        writeRecord(out, entryRecord(mapping, strings));
+                    }
+                }
+                for (MappingRule rule : rules) {
+                    writeRecord(out, ruleRecord(rule, strings));
+                }
+                for (String value : strings.values) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Gets the {@code kind, name, descriptor, generic} record of a mapping.
+     */
+    private static int[] entryRecord(GenericMapping mapping, StringPool strings) {
+        int kind;
+        int name = NO_STRING;
+        int desc = NO_STRING;
+        if (mapping instanceof ClassMapping) {
+            kind = KIND_CLASS;
+        } else if (mapping instanceof FieldMapping) {
+            kind = KIND_FIELD;
+            name = strings.add(((FieldMapping) mapping).getFieldName());
+        } else {
+            MethodMapping method = (MethodMapping) mapping;
+            kind = KIND_METHOD;
+            name = strings.add(method.getMethod().getName());
+            desc = strings.add(method.getMethod().getErasedDescriptor());
+        }
+        return new int[] { kind, name, desc,
+                        strings.add(mapping.getGeneric().toDescriptorString()) };
+    }
+
+    /**
+     * Gets the {@code kind, class pattern, member pattern, generic} record of
+     * a rule.
+     */
+    private static int[] ruleRecord(MappingRule rule, StringPool strings) {
+        return new int[] {
+                        rule.getKind() == MappingRule.Kind.FIELD ? KIND_FIELD
+                                        : KIND_METHOD,
+                        strings.add(rule.getClassPattern()),
+                        strings.add(rule.getMemberPattern()),
+                        strings.add(rule.getGeneric().toDescriptorString()) };
+    }
+
+    private static DataOutputStream openOutput(Path file) throws IOException {
+        FileChannel channel =
+                        FileChannel.open(file, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+        return new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel), BUFFER_SIZE));
+    }
+
+    private static void writeRecord(DataOutputStream out, int[] record)
+                    throws IOException {
+        for (int field : record) {
+            out.writeInt(field);
+        }
+    }
+
+    /**
+     * Gets a provider for the text mapping file {@code textFile}, through a
+     * compiled copy kept in {@code cacheDirectory}. The copy is compiled again
+     * whenever the hash of the text changes.
+     * 
+     * @param textFile - The text mapping file
+     * @param cacheDirectory - The directory to keep compiled copies in
+     * @return A provider for the compiled copy
+     * @throws IOException if the text can't be read, or the copy written
+     */
+    public static CompiledMappingProvider cached(Path textFile,
+                    Path cacheDirectory) throws IOException {
+        HashCode hash =
+                        com.google.common.io.Files.hash(textFile.toFile(),
+                                        Hashing.sha1());
+        Path file = cacheFileFor(cacheDirectory, textFile);
+        if (Files.isRegularFile(file)) {
+            try {
+                // only the header, so a stale file isn't mapped while it's
+                // written again
+                if (CompiledMappingProvider.readSourceHash(file).equals(
+                                Optional.of(hash))) {
+                    return CompiledMappingProvider.open(file);
+                }
+            } catch (IOException corrupt) {
+                // compile it again
+            }
+        }
+        MappingIndex.Builder index = MappingIndex.builder();
+        new ManualMappingProvider(textFile).load(MappingLoader.sinkFor(index));
+        write(index.build(), Optional.of(hash), file);
+        return CompiledMappingProvider.open(file);
+    }
+
+    private static Path cacheFileFor(Path cacheDirectory, Path textFile) {
+        String id =
+                        Hashing.sha1()
+                                        .hashString(textFile.toAbsolutePath()
+                                                        .normalize().toString(),
+                                                        StandardCharsets.UTF_8)
+                                        .toString();
+        return cacheDirectory.resolve(id + SUFFIX);
+    }
+
+    /**
+     * Strings written once each, in the order they were added. Only the pool
+     * offsets are kept, the bytes are encoded again when the pool is written.
+     */
+    private static final class StringPool {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int[] offsets = new int[1024];
+        private int size;
+
+        int add(String value) {
+            Integer id = this.ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            int length = value.getBytes(StandardCharsets.UTF_8).length;
+            if (length > 0xFFFF) {
+                throw new IllegalArgumentException("string too long: "
+                                + value.substring(0, 64) + "...");
+            }
+            id = this.values.size();
+            if (id == this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, id * 2);
+            }
+            this.ids.put(value, id);
+            this.values.add(value);
+            this.offsets[id] = this.size;
+            this.size += 2 + length;
+            return id;
+        }
+
+        int size() {
+            return this.values.size();
+        }
+    }
+
+    private CompiledMappings() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,117 @@
+package com.techshroom.hendrix.mapping.load.manual;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.techshroom.hendrix.Util;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.MappedLineReader;
+import com.techshroom.hendrix.mapping.load.MappedLineReader.Line;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+import com.techshroom.hendrix.mapping.rule.MappingRule;
+
+import fj.data.Array;
+
+/**
+ * Reads a manual mapping file through a {@link MappedLineReader}, so no regex
+ * or {@link java.util.Scanner} is involved. Every line is
+ * {@code <type> <name> <generic>}, split on the first and last space, and is
+ * handed to the sink as soon as it's read. Blank lines are skipped.
+ * 
+ * <p>
+ * The types {@code c}, {@code f} and {@code m} map one class, field or method.
+ * {@code F} and {@code M} are {@linkplain MappingRule rules} for every field
+ * or method matching {@code <class pattern>/<member pattern>}, such as
+ * {@code F com.example.**.*Dao/* java.util.List<java.lang.String>}.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+final class ManualMappingReader implements MappedLineReader.LineHandler {
+    static final char FIELD = 'f', METHOD = 'm', CLASS = 'c';
+    static final char FIELD_RULE = 'F', METHOD_RULE = 'M';
+
+    /**
+     * Reads every mapping in {@code file} into {@code sink}.
+     */
+    static void read(Path file, MappingSink sink) throws IOException {
+        MappedLineReader.read(file, new ManualMappingReader(sink));
+    }
+
+    /**
+     * Creates the mapping for one line.
+     * 
+     * @throws IllegalArgumentException if the name or generic are invalid
+     */
+    static GenericMapping mapping(char type, String name, String generic) {
+        ClassDescriptor genericDesc =
+                        ClassDescriptor.fromSourcecodeReference(generic);
+        if (type == CLASS) {
+            return ClassMapping.Impl.of(genericDesc,
+                            ClassDescriptor.fromSourcecodeReference(name));
+        } else if (type == METHOD) {
+            return MethodMapping.Impl.of(genericDesc,
+                            MethodDescriptor.fromDescriptorString(name));
+        } else if (type == FIELD) {
+            Array<String> classAndField =
+                            Util.splitReplaceAndPopLast(name, '/', '.');
+            return FieldMapping.Impl.of(genericDesc, ClassDescriptor
+                            .fromSourcecodeReference(classAndField.get(0)),
+                            classAndField.get(1));
+        } else if (type == FIELD_RULE || type == METHOD_RULE) {
+            int slash = name.lastIndexOf('/');
+            if (slash < 0) {
+                throw new IllegalArgumentException("No member pattern in '"
+                                + name + "'");
+            }
+            return MappingRule.of(type == FIELD_RULE ? MappingRule.Kind.FIELD
+                            : MappingRule.Kind.METHOD, name.substring(0,
+                            slash), name.substring(slash + 1), genericDesc);
+        }
+        throw new IllegalArgumentException("Unknown type '" + type + "'");
+    }
+
+    private static boolean isType(char type) {
+        return type == FIELD || type == METHOD || type == CLASS
+                        || type == FIELD_RULE || type == METHOD_RULE;
+    }
+
+    private final MappingSink sink;
+
+    private ManualMappingReader(MappingSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void line(Line line) {
+        int length = line.length();
+        if (length == 0) {
+            return;
+        }
+        int lastSpace = line.lastIndexOf(' ');
+        char type = (char) line.byteAt(0);
+        if (length < 5 || line.byteAt(1) != ' ' || lastSpace <= 2
+                        || lastSpace == length - 1
+                        || !isType(type)) {
+            this.sink.error(line.error("Line invalid: " + line.text()));
+            return;
+        }
+        String name = line.substring(2, lastSpace);
+        String generic = line.substring(lastSpace + 1, length);
+        GenericMapping mapping;
+        try {
+            mapping = mapping(type, name, generic);
+        } catch (RuntimeException e) {
+            // descriptor parsing fails with a few different exceptions
+            this.sink.error(line.error("Invalid " + type + " entry '" + name
+                            + "' -> '" + generic + "': " + e));
+            return;
+        }
+        this.sink.mapping(mapping);
+    }
+}
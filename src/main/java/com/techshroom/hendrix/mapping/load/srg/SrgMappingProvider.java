@@ -0,0 +1,67 @@
+package com.techshroom.hendrix.mapping.load.srg;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.load.MappingLoader;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+import com.techshroom.hendrix.mapping.load.StreamingMappingProvider;
+
+/**
+ * Provides mappings straight from an SRG file. SRG only carries names, so the
+ * generic is an extra last column, in the same source form as manual
+ * mappings:
+ * 
+ * <pre>
+ * CL: a com/example/Foo java.util.ArrayList&lt;java.lang.String&gt;
+ * FD: a/a com/example/Foo/names java.util.List&lt;java.lang.String&gt;
+ * MD: a/b ()Ljava/util/List; com/example/Foo/getNames ()Ljava/util/List; java.util.List&lt;java.lang.String&gt;
+ * </pre>
+ * 
+ * <p>
+ * The deobfuscated names are used, so they should match the names in the
+ * classes being processed. Lines without a generic and package lines are
+ * skipped.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class SrgMappingProvider implements StreamingMappingProvider {
+    /**
+     * Checks if {@code file} is named like an SRG file.
+     * 
+     * @param file - The file to check
+     * @return {@code true} if the file ends in {@code .srg}
+     */
+    public static boolean isSrg(Path file) {
+        return file.getFileName().toString().endsWith(".srg");
+    }
+
+    private final Path file;
+
+    /**
+     * Creates a new provider for an SRG file.
+     * 
+     * @param file - The file to read
+     */
+    public SrgMappingProvider(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void load(MappingSink sink) throws IOException {
+        SrgMappingReader.read(this.file, sink);
+    }
+
+    @Override
+    public Iterator<GenericMapping> iterator() {
+        return MappingLoader.collect(this).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "SrgMappingProvider[" + this.file + "]";
+    }
+}
@@ -0,0 +1,101 @@
+package com.techshroom.hendrix.mapping.load.srg;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.MappedLineReader;
+import com.techshroom.hendrix.mapping.load.MappedLineReader.Line;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+
+/**
+ * Reads an SRG file in one pass through a {@link MappedLineReader}. Lines are
+ * split on spaces, and only the deobfuscated columns and the generic are
+ * decoded. Lines without a generic are skipped as soon as their columns are
+ * counted.
+ * 
+ * @author Kenzie Togami
+ */
+final class SrgMappingReader implements MappedLineReader.LineHandler {
+    /**
+     * Reads every mapping in {@code file} into {@code sink}.
+     */
+    static void read(Path file, MappingSink sink) throws IOException {
+        MappedLineReader.read(file, new SrgMappingReader(sink));
+    }
+
+    private final MappingSink sink;
+
+    private SrgMappingReader(MappingSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void line(Line line) {
+        if (line.length() == 0 || line.byteAt(0) == '#') {
+            return;
+        }
+        int columns = line.split(' ');
+        // type, obfuscated, deobfuscated, generic
+        int base;
+        if (line.columnIs(0, "CL:") || line.columnIs(0, "FD:")) {
+            base = 3;
+        } else if (line.columnIs(0, "MD:")) {
+            // both names have a descriptor
+            base = 5;
+        } else if (line.columnIs(0, "PK:")) {
+            return;
+        } else {
+            this.sink.error(line.error("Line invalid: " + line.text()));
+            return;
+        }
+        if (columns == base) {
+            // just a rename
+            return;
+        }
+        if (columns != base + 1) {
+            this.sink.error(line.error("Line invalid: " + line.text()));
+            return;
+        }
+        String generic = line.column(base);
+        GenericMapping mapping;
+        try {
+            mapping = mapping(line, base, generic);
+        } catch (RuntimeException e) {
+            // descriptor parsing fails with a few different exceptions
+            this.sink.error(line.error("Invalid entry '" + line.text()
+                            + "': " + e));
+            return;
+        }
+        this.sink.mapping(mapping);
+    }
+
+    private static GenericMapping mapping(Line line, int base, String generic) {
+        ClassDescriptor genericDesc =
+                        ClassDescriptor.fromSourcecodeReference(generic);
+        if (line.columnIs(0, "CL:")) {
+            return ClassMapping.Impl.of(genericDesc,
+                            ClassDescriptor.fromInternalName(line.column(2)));
+        }
+        String member = line.column(base == 3 ? 2 : 3);
+        int slash = member.lastIndexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("No owner in '" + member
+                            + "'");
+        }
+        String owner = member.substring(0, slash);
+        String name = member.substring(slash + 1);
+        if (base == 3) {
+            return FieldMapping.Impl.of(genericDesc,
+                            ClassDescriptor.fromInternalName(owner), name);
+        }
+        return MethodMapping.Impl.of(genericDesc,
+                        MethodDescriptor.fromInternal(owner, name,
+                                        line.column(4)));
+    }
+}
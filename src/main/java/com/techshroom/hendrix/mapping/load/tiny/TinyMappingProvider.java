@@ -0,0 +1,95 @@
+package com.techshroom.hendrix.mapping.load.tiny;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.load.MappingLoader;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+import com.techshroom.hendrix.mapping.load.StreamingMappingProvider;
+
+/**
+ * Provides mappings straight from a Tiny v2 file. Tiny only carries names, so
+ * the generics are read from an extra namespace, in the same source form as
+ * manual mappings. With the columns separated by tabs:
+ * 
+ * <pre>
+ * tiny    2    0    official    named    generic
+ * c    a    com/example/Foo    java.util.ArrayList&lt;java.lang.String&gt;
+ *     f    Ljava/util/List;    a    names    java.util.List&lt;java.lang.String&gt;
+ *     m    ()Ljava/util/List;    b    getNames    java.util.List&lt;java.lang.String&gt;
+ * </pre>
+ * 
+ * <p>
+ * Class, field and method names come from another namespace, which should
+ * match the names in the classes being processed. Entries without a generic
+ * are skipped, and escaped names are not unescaped.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class TinyMappingProvider implements StreamingMappingProvider {
+    private static final byte[] HEADER = "tiny\t2\t"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Checks if {@code file} is a Tiny v2 file.
+     * 
+     * @param file - The file to check
+     * @return {@code true} if the file has a Tiny v2 header
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isTiny(Path file) throws IOException {
+        try (FileChannel channel =
+                        FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER.length);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            if (header.hasRemaining()) {
+                return false;
+            }
+            header.flip();
+            return header.equals(ByteBuffer.wrap(HEADER));
+        }
+    }
+
+    private final Path file;
+    private final String namespace;
+    private final String genericNamespace;
+
+    /**
+     * Creates a new provider for a Tiny v2 file.
+     * 
+     * @param file - The file to read
+     * @param namespace - The namespace to take names from
+     * @param genericNamespace - The namespace holding the generics
+     */
+    public TinyMappingProvider(Path file, String namespace,
+                    String genericNamespace) {
+        this.file = file;
+        this.namespace = namespace;
+        this.genericNamespace = genericNamespace;
+    }
+
+    @Override
+    public void load(MappingSink sink) throws IOException {
+        TinyMappingReader.read(this.file, this.namespace,
+                        this.genericNamespace, sink);
+    }
+
+    @Override
+    public Iterator<GenericMapping> iterator() {
+        return MappingLoader.collect(this).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "TinyMappingProvider[" + this.file + "]";
+    }
+}
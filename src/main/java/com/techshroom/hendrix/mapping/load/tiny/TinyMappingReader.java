@@ -0,0 +1,257 @@
+package com.techshroom.hendrix.mapping.load.tiny;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.MappedLineReader;
+import com.techshroom.hendrix.mapping.load.MappedLineReader.Line;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+
+/**
+ * Reads a Tiny v2 file through a {@link MappedLineReader}. Lines are split on
+ * tabs, but only the columns of the two namespaces in use are decoded, and
+ * parameter, local and comment lines are skipped without being split at all.
+ * 
+ * <p>
+ * Member descriptors are written in the first namespace, so when names come
+ * from another one the descriptors of methods are remapped to it. The class
+ * names for that come from a quick scan of the top-level class lines first,
+ * so every mapping is handed out as soon as its line is read, and nothing
+ * but the class names is held in memory.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+final class TinyMappingReader implements MappedLineReader.LineHandler {
+    /**
+     * Reads every mapping in {@code file} into {@code sink}.
+     */
+    static void read(Path file, String namespace, String genericNamespace,
+                    MappingSink sink) throws IOException {
+        TinyMappingReader reader =
+                        new TinyMappingReader(namespace, genericNamespace,
+                                        sink);
+        MappedLineReader.read(file, reader.new ClassScan());
+        if (!reader.skipAll) {
+            MappedLineReader.read(file, reader);
+        }
+    }
+
+    /**
+     * Reads the header and, if descriptors need remapping, the names of every
+     * class. Member lines are skipped by their first byte.
+     */
+    private final class ClassScan implements MappedLineReader.LineHandler {
+
+        @Override
+        public void line(Line line) {
+            TinyMappingReader reader = TinyMappingReader.this;
+            if (reader.skipAll || line.length() == 0) {
+                return;
+            }
+            if (reader.headerOffset < 0) {
+                reader.headerOffset = line.getOffset();
+                header(line);
+                return;
+            }
+            if (reader.nameIndex == 0 || line.byteAt(0) == '\t') {
+                return;
+            }
+            // errors are reported by the full read
+            if (line.split('\t') >= 2 && line.columnIs(0, "c")) {
+                String first = line.column(1);
+                reader.classes.put(first,
+                                name(line, 1 + reader.nameIndex, first));
+            }
+        }
+
+    }
+
+    private final String namespace;
+    private final String genericNamespace;
+    private final MappingSink sink;
+    /**
+     * Classes from the first namespace to {@link #namespace}, only filled if
+     * they differ.
+     */
+    private final Map<String, String> classes = new HashMap<>();
+    private long headerOffset = -1;
+    private boolean skipAll;
+    private int nameIndex;
+    private int genericIndex;
+    private String owner;
+
+    private TinyMappingReader(String namespace, String genericNamespace,
+                    MappingSink sink) {
+        this.namespace = namespace;
+        this.genericNamespace = genericNamespace;
+        this.sink = sink;
+    }
+
+    @Override
+    public void line(Line line) {
+        if (this.skipAll || line.length() == 0
+                        || line.getOffset() == this.headerOffset) {
+            return;
+        }
+        if (line.byteAt(0) != '\t') {
+            classLine(line);
+        } else if (line.length() > 1 && line.byteAt(1) != '\t') {
+            memberLine(line);
+        }
+        // deeper lines are parameters, locals and their comments
+    }
+
+    private void header(Line line) {
+        int columns = line.split('\t');
+        if (columns < 4 || !line.columnIs(0, "tiny") || !line.columnIs(1, "2")) {
+            this.sink.error(line.error("Not a Tiny v2 file: " + line.text()));
+            this.skipAll = true;
+            return;
+        }
+        this.nameIndex = -1;
+        this.genericIndex = -1;
+        for (int i = 3; i < columns; i++) {
+            if (line.columnIs(i, this.namespace)) {
+                this.nameIndex = i - 3;
+            }
+            if (line.columnIs(i, this.genericNamespace)) {
+                this.genericIndex = i - 3;
+            }
+        }
+        if (this.nameIndex < 0 || this.genericIndex < 0) {
+            this.sink.error(line.error("Missing namespace '"
+                            + (this.nameIndex < 0 ? this.namespace
+                                            : this.genericNamespace)
+                            + "' in " + line.text()));
+            this.skipAll = true;
+        }
+    }
+
+    private void classLine(Line line) {
+        int columns = line.split('\t');
+        if (columns < 2 || !line.columnIs(0, "c")) {
+            this.owner = null;
+            this.sink.error(line.error("Line invalid: " + line.text()));
+            return;
+        }
+        String name = name(line, 1 + this.nameIndex, line.column(1));
+        this.owner = name;
+        ClassDescriptor generic = generic(line, 1 + this.genericIndex);
+        if (generic != null) {
+            this.sink.mapping(ClassMapping.Impl.of(generic,
+                            ClassDescriptor.fromInternalName(name)));
+        }
+    }
+
+    private void memberLine(Line line) {
+        int columns = line.split('\t');
+        boolean field = line.columnIs(1, "f");
+        if (!field && !line.columnIs(1, "m")) {
+            // comments, and properties before the first class
+            return;
+        }
+        if (this.owner == null) {
+            this.sink.error(line.error("Member outside of a class: "
+                            + line.text()));
+            return;
+        }
+        if (columns < 4) {
+            this.sink.error(line.error("Line invalid: " + line.text()));
+            return;
+        }
+        ClassDescriptor generic = generic(line, 3 + this.genericIndex);
+        if (generic == null) {
+            return;
+        }
+        String name = name(line, 3 + this.nameIndex, null);
+        if (field) {
+            this.sink.mapping(FieldMapping.Impl.of(generic,
+                            ClassDescriptor.fromInternalName(this.owner), name));
+            return;
+        }
+        String desc = line.column(2);
+        if (this.nameIndex != 0) {
+            desc = remap(desc);
+        }
+        GenericMapping mapping;
+        try {
+            mapping =
+                            MethodMapping.Impl.of(generic, MethodDescriptor
+                                            .fromInternal(this.owner, name,
+                                                            desc));
+        } catch (RuntimeException e) {
+            this.sink.error(line.error("Invalid method '" + this.owner + "/"
+                            + name + desc + "': " + e));
+            return;
+        }
+        this.sink.mapping(mapping);
+    }
+
+    /**
+     * Gets the name in {@code column}, which is {@code fallback} or the first
+     * namespace if it's missing.
+     */
+    private static String name(Line line, int column, String fallback) {
+        if (column < line.columnCount() && !line.isColumnEmpty(column)) {
+            return line.column(column);
+        }
+        return fallback != null ? fallback : line.column(3);
+    }
+
+    /**
+     * Parses the generic in {@code column}, {@code null} if it's missing or
+     * invalid.
+     */
+    private ClassDescriptor generic(Line line, int column) {
+        if (column >= line.columnCount() || line.isColumnEmpty(column)) {
+            return null;
+        }
+        String generic = line.column(column);
+        try {
+            return ClassDescriptor.fromSourcecodeReference(generic);
+        } catch (RuntimeException e) {
+            // descriptor parsing fails with a few different exceptions
+            this.sink.error(line.error("Invalid generic '" + generic + "': "
+                            + e));
+            return null;
+        }
+    }
+
+    /**
+     * Remaps the classes of a descriptor into {@link #namespace}. Classes
+     * that aren't in the file, like {@code java/lang/String}, are kept as
+     * they are.
+     */
+    private String remap(String desc) {
+        StringBuilder mapped = new StringBuilder(desc.length());
+        for (int i = 0; i < desc.length(); i++) {
+            char c = desc.charAt(i);
+            mapped.append(c);
+            if (c != 'L') {
+                continue;
+            }
+            int end = desc.indexOf(';', i);
+            if (end < 0) {
+                // let the descriptor parser complain
+                return desc;
+            }
+            String name = desc.substring(i + 1, end);
+            String target = this.classes.get(name);
+            if (target == null) {
+                target = name;
+            }
+            mapped.append(target).append(';');
+            i = end;
+        }
+        return mapped.toString();
+    }
+}
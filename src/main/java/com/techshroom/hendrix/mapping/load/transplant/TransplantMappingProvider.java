@@ -0,0 +1,412 @@
+package com.techshroom.hendrix.mapping.load.transplant;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.techshroom.hendrix.SharedData;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.byteio.BasicBytecodeContainer;
+import com.techshroom.hendrix.byteio.BytecodeSupplier;
+import com.techshroom.hendrix.jar.MappedJar;
+import com.techshroom.hendrix.jar.ZipDirectory;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.MappingLoader;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+import com.techshroom.hendrix.mapping.load.StreamingMappingProvider;
+import com.techshroom.hendrix.signature.ClassSignature;
+import com.techshroom.hendrix.signature.MethodSignature;
+import com.techshroom.hendrix.signature.TypeSignature;
+import com.techshroom.hendrix.signature.TypeSignature.ClassType;
+import com.techshroom.hendrix.symbol.LongMap;
+
+/**
+ * Copies generics from a reference jar that still has its signatures onto the
+ * matching classes, fields and methods of the input.
+ * 
+ * <p>
+ * Every class and member of the reference with a signature is indexed by a
+ * 64-bit hash of its owner, name and erased descriptor. The input is then
+ * joined against the index in one pass, and each hit becomes a mapping. Both
+ * sides are split into slices that are read in parallel, and the classes are
+ * read without their code.
+ * </p>
+ * 
+ * <p>
+ * Mappings can only carry one type, so a class gets the generic supertype of
+ * its signature, a field its type and a method its return type. Signatures
+ * that don't fit a {@link ClassDescriptor}, such as ones using type variables
+ * or wildcards, are skipped.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class TransplantMappingProvider implements
+                StreamingMappingProvider {
+    private static final ThreadFactory THREADS = new ThreadFactoryBuilder()
+                    .setNameFormat("hendrix-transplant-%d").setDaemon(true)
+                    .build();
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final int SKIP = ClassReader.SKIP_CODE
+                    | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    /**
+     * A signature from the reference, with the names it was indexed by to
+     * check hits against.
+     */
+    private static final class Entry {
+        private final String owner;
+        private final String name;
+        private final String desc;
+        private final GenericMapping mapping;
+
+        Entry(String owner, String name, String desc, GenericMapping mapping) {
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+            this.mapping = mapping;
+        }
+
+        boolean is(String owner, String name, String desc) {
+            return this.owner.equals(owner) && this.name.equals(name)
+                            && this.desc.equals(desc);
+        }
+    }
+
+    /**
+     * Hashes a class or member. Classes use an empty name and descriptor,
+     * which no member has.
+     */
+    private static long key(String owner, String name, String desc) {
+        return HASH.newHasher().putUnencodedChars(owner).putChar('.')
+                        .putUnencodedChars(name).putChar(':')
+                        .putUnencodedChars(desc).hash().asLong();
+    }
+
+    private final Path reference;
+    private final List<BytecodeSupplier> input;
+
+    /**
+     * Creates a new provider that copies generics from {@code reference} onto
+     * {@code input}.
+     * 
+     * @param reference - The jar to copy generics from
+     * @param input - The classes being processed, only those that
+     *        {@linkplain BytecodeSupplier#shouldBeProcessed() should be
+     *        processed} are matched
+     */
+    public TransplantMappingProvider(Path reference,
+                    Iterable<? extends BytecodeSupplier> input) {
+        this.reference = reference;
+        ImmutableList.Builder<BytecodeSupplier> processed =
+                        ImmutableList.builder();
+        for (BytecodeSupplier supplier : input) {
+            if (supplier.shouldBeProcessed()) {
+                processed.add(supplier);
+            }
+        }
+        this.input = processed.build();
+    }
+
+    @Override
+    public void load(MappingSink sink) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, THREADS);
+        try (MappedJar jar = MappedJar.open(this.reference)) {
+            List<ZipDirectory.Entry> classes = new ArrayList<>();
+            for (ZipDirectory.Entry entry : jar.getDirectory().getEntries()) {
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    classes.add(entry);
+                }
+            }
+            LongMap<Entry> index = index(pool, threads, jar, classes);
+            for (List<GenericMapping> slice : join(pool, threads, index)) {
+                for (GenericMapping mapping : slice) {
+                    sink.mapping(mapping);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static LongMap<Entry> index(ExecutorService pool, int threads,
+                    final MappedJar jar, List<ZipDirectory.Entry> classes)
+                    throws IOException {
+        List<Future<LongMap<Entry>>> slices = new ArrayList<>();
+        for (final List<ZipDirectory.Entry> slice : slice(classes, threads)) {
+            slices.add(pool.submit(new Callable<LongMap<Entry>>() {
+
+                @Override
+                public LongMap<Entry> call() throws IOException {
+                    LongMap<Entry> index = LongMap.create();
+                    for (ZipDirectory.Entry entry : slice) {
+                        indexClass(jar.read(entry), index);
+                    }
+                    return index;
+                }
+
+            }));
+        }
+        int size = 0;
+        List<LongMap<Entry>> indexes = new ArrayList<>();
+        for (Future<LongMap<Entry>> slice : slices) {
+            LongMap<Entry> index = get(slice);
+            indexes.add(index);
+            size += index.size();
+        }
+        LongMap<Entry> merged = LongMap.withExpectedSize(size);
+        for (LongMap<Entry> index : indexes) {
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                Entry entry = index.valueAt(slot);
+                if (entry != null) {
+                    merged.put(index.keyAt(slot), entry);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private List<List<GenericMapping>> join(ExecutorService pool,
+                    int threads, final LongMap<Entry> index) throws IOException {
+        List<Future<List<GenericMapping>>> slices = new ArrayList<>();
+        for (final List<BytecodeSupplier> slice : slice(this.input, threads)) {
+            slices.add(pool.submit(new Callable<List<GenericMapping>>() {
+
+                @Override
+                public List<GenericMapping> call() {
+                    List<GenericMapping> mappings = new ArrayList<>();
+                    for (BytecodeSupplier supplier : slice) {
+                        probeClass(read(supplier), index, mappings);
+                    }
+                    return mappings;
+                }
+
+            }));
+        }
+        List<List<GenericMapping>> mappings = new ArrayList<>();
+        for (Future<List<GenericMapping>> slice : slices) {
+            mappings.add(get(slice));
+        }
+        return mappings;
+    }
+
+    private static void indexClass(byte[] bytecode, final LongMap<Entry> index) {
+        new ClassReader(bytecode).accept(new ClassVisitor(
+                        SharedData.ASM_VERSION) {
+            private String owner;
+
+            @Override
+            public void visit(int version, int access, String name,
+                            String signature, String superName,
+                            String[] interfaces) {
+                this.owner = name;
+                if (signature == null) {
+                    return;
+                }
+                Optional<ClassDescriptor> generic =
+                                supertype(name, signature);
+                if (generic.isPresent()) {
+                    add(name, "", "", ClassMapping.Impl.of(generic.get(),
+                                    ClassDescriptor.fromInternalName(name)));
+                }
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name,
+                            String desc, String signature, Object value) {
+                if (signature != null) {
+                    Optional<ClassDescriptor> generic =
+                                    type(this.owner, name, signature);
+                    if (generic.isPresent()) {
+                        add(name, desc, FieldMapping.Impl.of(generic.get(),
+                                        ClassDescriptor
+                                                        .fromInternalName(this.owner),
+                                        name));
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name,
+                            String desc, String signature,
+                            String[] exceptions) {
+                if (signature != null) {
+                    Optional<ClassDescriptor> generic =
+                                    returnType(this.owner, name + desc,
+                                                    signature);
+                    if (generic.isPresent()) {
+                        add(name, desc, MethodMapping.Impl.of(generic.get(),
+                                        MethodDescriptor.fromInternal(
+                                                        this.owner, name, desc)));
+                    }
+                }
+                return null;
+            }
+
+            private void add(String name, String desc, GenericMapping mapping) {
+                add(this.owner, name, desc, mapping);
+            }
+
+            private void add(String owner, String name, String desc,
+                            GenericMapping mapping) {
+                Entry old =
+                                index.put(key(owner, name, desc), new Entry(
+                                                owner, name, desc, mapping));
+                if (old != null && !old.is(owner, name, desc)) {
+                    System.err.println("Warning: hash collision between "
+                                    + old.mapping + " and " + mapping);
+                }
+            }
+        }, SKIP);
+    }
+
+    private static void probeClass(byte[] bytecode,
+                    final LongMap<Entry> index,
+                    final List<GenericMapping> mappings) {
+        new ClassReader(bytecode).accept(new ClassVisitor(
+                        SharedData.ASM_VERSION) {
+            private String owner;
+
+            @Override
+            public void visit(int version, int access, String name,
+                            String signature, String superName,
+                            String[] interfaces) {
+                this.owner = name;
+                probe("", "");
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name,
+                            String desc, String signature, Object value) {
+                probe(name, desc);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name,
+                            String desc, String signature,
+                            String[] exceptions) {
+                probe(name, desc);
+                return null;
+            }
+
+            private void probe(String name, String desc) {
+                Entry entry = index.get(key(this.owner, name, desc));
+                if (entry != null && entry.is(this.owner, name, desc)) {
+                    mappings.add(entry.mapping);
+                }
+            }
+        }, SKIP);
+    }
+
+    /**
+     * Picks the generic superclass, or failing that the first generic
+     * interface.
+     */
+    private static Optional<ClassDescriptor> supertype(String owner,
+                    String signature) {
+        ClassSignature parsed;
+        try {
+            parsed = ClassSignature.parse(signature);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Warning: " + e.getMessage() + " on " + owner);
+            return Optional.absent();
+        }
+        if (!parsed.getSuperclass().getTypeArguments().isEmpty()) {
+            return parsed.getSuperclass().toDescriptor();
+        }
+        for (ClassType type : parsed.getInterfaces()) {
+            if (!type.getTypeArguments().isEmpty()) {
+                return type.toDescriptor();
+            }
+        }
+        return Optional.absent();
+    }
+
+    private static Optional<ClassDescriptor> type(String owner, String member,
+                    String signature) {
+        try {
+            return TypeSignature.parse(signature).toDescriptor();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Warning: " + e.getMessage() + " on " + owner
+                            + "." + member);
+            return Optional.absent();
+        }
+    }
+
+    private static Optional<ClassDescriptor> returnType(String owner,
+                    String member, String signature) {
+        try {
+            return MethodSignature.parse(signature).getReturnType()
+                            .toDescriptor();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Warning: " + e.getMessage() + " on " + owner
+                            + "." + member);
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Reads the bytecode of an input class without keeping it cached, so the
+     * input isn't all held in memory before processing starts.
+     */
+    private static byte[] read(BytecodeSupplier supplier) {
+        if (supplier instanceof BasicBytecodeContainer) {
+            return ((BasicBytecodeContainer) supplier).readBytecode();
+        }
+        return supplier.bytecode();
+    }
+
+    private static <T> List<List<T>> slice(List<T> list, int slices) {
+        if (list.isEmpty()) {
+            return ImmutableList.of();
+        }
+        return Lists.partition(list, (list.size() + slices - 1) / slices);
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    @Override
+    public Iterator<GenericMapping> iterator() {
+        return MappingLoader.collect(this).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "TransplantMappingProvider[" + this.reference + "]";
+    }
+}
@@ -0,0 +1,69 @@
+package com.techshroom.hendrix.mapping.rule;
+
+/**
+ * A name pattern where {@code *} matches any run of characters and {@code ?}
+ * matches one character. Matching runs the pattern as a small automaton over
+ * the name, only going back to the last {@code *} on a mismatch, so it never
+ * takes more than a few passes over the name.
+ * 
+ * @author Kenzie Togami
+ */
+final class Glob {
+    static Glob compile(String pattern) {
+        return new Glob(pattern);
+    }
+
+    static boolean isLiteral(String pattern) {
+        return pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0;
+    }
+
+    private final String pattern;
+    private final boolean any;
+    private final boolean literal;
+
+    private Glob(String pattern) {
+        this.pattern = pattern;
+        this.any = pattern.equals("*");
+        this.literal = isLiteral(pattern);
+    }
+
+    boolean matches(String name) {
+        if (this.any) {
+            return true;
+        }
+        if (this.literal) {
+            return this.pattern.equals(name);
+        }
+        String p = this.pattern;
+        int pi = 0;
+        int ni = 0;
+        // where to resume after the last star
+        int star = -1;
+        int starName = 0;
+        while (ni < name.length()) {
+            if (pi < p.length()
+                            && (p.charAt(pi) == '?' || p.charAt(pi) == name
+                                            .charAt(ni))) {
+                pi++;
+                ni++;
+            } else if (pi < p.length() && p.charAt(pi) == '*') {
+                star = pi++;
+                starName = ni;
+            } else if (star >= 0) {
+                pi = star + 1;
+                ni = ++starName;
+            } else {
+                return false;
+            }
+        }
+        while (pi < p.length() && p.charAt(pi) == '*') {
+            pi++;
+        }
+        return pi == p.length();
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+}
@@ -0,0 +1,221 @@
+package com.techshroom.hendrix.mapping.rule;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.mapping.GenericMapping;
+
+/**
+ * Gives a generic to every field or method that matches a pattern. The
+ * pattern picks classes by package and simple name, and members by name. A
+ * member only matches if its erased type (the return type for methods) is the
+ * erasure of the generic.
+ * 
+ * <p>
+ * Class patterns are package segments followed by a simple name pattern,
+ * such as {@code com.example.*Dao}. The last package segment may be
+ * {@code **} to include every subpackage, and {@code com.example.**} on its
+ * own matches every class in or under {@code com.example}. Simple name and
+ * member patterns may use {@code *} and {@code ?}, package segments may not.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class MappingRule implements GenericMapping {
+    private static final Splitter SEGMENTS = Splitter.on('/');
+    private static final String DEEP = "**";
+
+    /**
+     * The kind of member a rule applies to.
+     * 
+     * @author Kenzie Togami
+     */
+    public enum Kind {
+        /**
+         * Fields, matched by type.
+         */
+        FIELD,
+        /**
+         * Methods, matched by return type.
+         */
+        METHOD;
+    }
+
+    /**
+     * Creates a new rule.
+     * 
+     * @param kind - The kind of member the rule applies to
+     * @param classPattern - The class pattern, with dots or slashes
+     * @param memberPattern - The member name pattern
+     * @param generic - The generic to give matching members
+     * @return The rule
+     * @throws IllegalArgumentException if a pattern is invalid
+     */
+    public static MappingRule of(Kind kind, String classPattern,
+                    String memberPattern, ClassDescriptor generic) {
+        return new MappingRule(checkNotNull(kind, "kind"), checkNotNull(
+                        classPattern, "classPattern").replace('.', '/'),
+                        checkNotNull(memberPattern, "memberPattern"),
+                        checkNotNull(generic, "generic"));
+    }
+
+    private final Kind kind;
+    private final String classPattern;
+    private final String memberPattern;
+    private final ClassDescriptor generic;
+    private final List<String> packageSegments;
+    private final boolean deep;
+    private final String simpleNamePattern;
+    private final Glob simpleName;
+    private final Glob member;
+    private final String erasedType;
+
+    private MappingRule(Kind kind, String classPattern, String memberPattern,
+                    ClassDescriptor generic) {
+        this.kind = kind;
+        this.classPattern = classPattern;
+        this.memberPattern = memberPattern;
+        this.generic = generic;
+        List<String> segments = SEGMENTS.splitToList(classPattern);
+        int deepAt = segments.indexOf(DEEP);
+        checkArgument(deepAt < 0 || deepAt >= segments.size() - 2,
+                        "'%s' may only come last in a package: %s", DEEP,
+                        classPattern);
+        this.deep = deepAt >= 0;
+        if (deepAt == segments.size() - 1) {
+            // a.b.** is a.b.**.*
+            this.packageSegments = ImmutableList.copyOf(segments.subList(0,
+                            deepAt));
+            this.simpleNamePattern = "*";
+        } else {
+            this.packageSegments =
+                            ImmutableList.copyOf(segments.subList(0,
+                                            this.deep ? deepAt
+                                                            : segments.size() - 1));
+            this.simpleNamePattern = segments.get(segments.size() - 1);
+        }
+        for (String segment : this.packageSegments) {
+            checkArgument(!segment.isEmpty() && Glob.isLiteral(segment),
+                            "invalid package segment '%s' in %s", segment,
+                            classPattern);
+        }
+        checkArgument(!this.simpleNamePattern.isEmpty()
+                        && !memberPattern.isEmpty(), "empty pattern in %s/%s",
+                        classPattern, memberPattern);
+        this.simpleName = Glob.compile(this.simpleNamePattern);
+        this.member = Glob.compile(memberPattern);
+        this.erasedType = erase(generic);
+    }
+
+    private static String erase(ClassDescriptor type) {
+        StringBuilder erased = new StringBuilder();
+        for (int i = 0; i < type.getArrayDepth(); i++) {
+            erased.append('[');
+        }
+        erased.append(type.getType());
+        if (!type.isPrimitive()) {
+            erased.append(type.getInternalName()).append(';');
+        }
+        return erased.toString();
+    }
+
+    /**
+     * Gets the kind of member this rule applies to.
+     * 
+     * @return The kind of member this rule applies to
+     */
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Gets the class pattern, with slashes.
+     * 
+     * @return The class pattern
+     */
+    public String getClassPattern() {
+        return this.classPattern;
+    }
+
+    /**
+     * Gets the member name pattern.
+     * 
+     * @return The member name pattern
+     */
+    public String getMemberPattern() {
+        return this.memberPattern;
+    }
+
+    @Override
+    public ClassDescriptor getGeneric() {
+        return this.generic;
+    }
+
+    List<String> getPackageSegments() {
+        return this.packageSegments;
+    }
+
+    boolean isDeep() {
+        return this.deep;
+    }
+
+    String getSimpleNamePattern() {
+        return this.simpleNamePattern;
+    }
+
+    boolean matchesSimpleName(String simpleName) {
+        return this.simpleName.matches(simpleName);
+    }
+
+    /**
+     * Checks if this rule applies to a member of a class it matched.
+     * 
+     * @param kind - The kind of member
+     * @param name - The name of the member
+     * @param desc - The erased descriptor of the member
+     * @return {@code true} if the rule applies to the member
+     */
+    public boolean matchesMember(Kind kind, String name, String desc) {
+        if (kind != this.kind || !this.member.matches(name)) {
+            return false;
+        }
+        String type =
+                        kind == Kind.FIELD ? desc : desc.substring(desc
+                                        .lastIndexOf(')') + 1);
+        return type.equals(this.erasedType);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof MappingRule)) {
+            return false;
+        }
+        MappingRule other = (MappingRule) obj;
+        return this.kind == other.kind
+                        && this.classPattern.equals(other.classPattern)
+                        && this.memberPattern.equals(other.memberPattern)
+                        && this.generic.equals(other.generic);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.kind, this.classPattern,
+                        this.memberPattern, this.generic);
+    }
+
+    @Override
+    public String toString() {
+        return "MappingRule[" + this.kind + " " + this.classPattern + "/"
+                        + this.memberPattern + " -> "
+                        + this.generic.toSourcecodeRef() + "]";
+    }
+}
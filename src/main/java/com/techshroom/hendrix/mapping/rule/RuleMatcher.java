@@ -0,0 +1,203 @@
+package com.techshroom.hendrix.mapping.rule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+/**
+ * Finds the {@link MappingRule MappingRules} that match a class. The rules are
+ * compiled into a trie of package segments, so a class is matched by walking
+ * its package once. Along the way the rules for subpackages ({@code **}) are
+ * picked up, and at the end the rules for the package itself are looked up by
+ * simple name, with only the ones using {@code *} or {@code ?} left to run
+ * their pattern.
+ * 
+ * @author Kenzie Togami
+ */
+public final class RuleMatcher {
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return Ints.compare(a.order, b.order);
+        }
+    };
+    private static final RuleMatcher EMPTY = compile(ImmutableList
+                    .<MappingRule> of());
+
+    /**
+     * Gets a matcher without any rules.
+     * 
+     * @return The empty matcher
+     */
+    public static RuleMatcher empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Compiles {@code rules} into a matcher.
+     * 
+     * @param rules - The rules, in order of precedence, lowest first
+     * @return The matcher
+     */
+    public static RuleMatcher compile(List<MappingRule> rules) {
+        Node root = new Node();
+        for (int i = 0; i < rules.size(); i++) {
+            MappingRule rule = rules.get(i);
+            Node node = root;
+            for (String segment : rule.getPackageSegments()) {
+                node = node.child(segment);
+            }
+            node.add(new Entry(i, rule));
+        }
+        return new RuleMatcher(ImmutableList.copyOf(rules), root);
+    }
+
+    /**
+     * A rule and its position in the rule list.
+     */
+    private static final class Entry {
+        private final int order;
+        private final MappingRule rule;
+
+        Entry(int order, MappingRule rule) {
+            this.order = order;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * One package segment.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        /**
+         * Rules for this package and its subpackages.
+         */
+        private final List<Entry> deep = new ArrayList<>();
+        /**
+         * Rules for this package with a literal simple name.
+         */
+        private final Map<String, List<Entry>> exact = new HashMap<>();
+        /**
+         * Rules for this package with a simple name pattern.
+         */
+        private final List<Entry> patterns = new ArrayList<>();
+
+        Node child(String segment) {
+            Node child = this.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                this.children.put(segment, child);
+            }
+            return child;
+        }
+
+        void add(Entry entry) {
+            MappingRule rule = entry.rule;
+            if (rule.isDeep()) {
+                this.deep.add(entry);
+            } else if (Glob.isLiteral(rule.getSimpleNamePattern())) {
+                List<Entry> named =
+                                this.exact.get(rule.getSimpleNamePattern());
+                if (named == null) {
+                    named = new ArrayList<>(1);
+                    this.exact.put(rule.getSimpleNamePattern(), named);
+                }
+                named.add(entry);
+            } else {
+                this.patterns.add(entry);
+            }
+        }
+    }
+
+    private final List<MappingRule> rules;
+    private final Node root;
+
+    private RuleMatcher(List<MappingRule> rules, Node root) {
+        this.rules = rules;
+        this.root = root;
+    }
+
+    /**
+     * Gets every rule, in order of precedence, lowest first.
+     * 
+     * @return Every rule
+     */
+    public List<MappingRule> getRules() {
+        return this.rules;
+    }
+
+    /**
+     * Checks if there are no rules.
+     * 
+     * @return {@code true} if there are no rules
+     */
+    public boolean isEmpty() {
+        return this.rules.isEmpty();
+    }
+
+    /**
+     * Finds the rules that match a class.
+     * 
+     * @param internalName - The internal name of the class
+     * @return The matching rules, in order of precedence, lowest first
+     */
+    public List<MappingRule> match(String internalName) {
+        if (this.rules.isEmpty()) {
+            return ImmutableList.of();
+        }
+        int simpleStart = internalName.lastIndexOf('/') + 1;
+        String simpleName = internalName.substring(simpleStart);
+        List<Entry> found = new ArrayList<>();
+        Node node = this.root;
+        int start = 0;
+        while (true) {
+            collect(node.deep, simpleName, found);
+            if (start >= simpleStart) {
+                break;
+            }
+            int end = internalName.indexOf('/', start);
+            node = node.children.get(internalName.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (node != null) {
+            List<Entry> named = node.exact.get(simpleName);
+            if (named != null) {
+                found.addAll(named);
+            }
+            collect(node.patterns, simpleName, found);
+        }
+        if (found.isEmpty()) {
+            return ImmutableList.of();
+        }
+        Collections.sort(found, ORDER);
+        ImmutableList.Builder<MappingRule> matched = ImmutableList.builder();
+        for (Entry entry : found) {
+            matched.add(entry.rule);
+        }
+        return matched.build();
+    }
+
+    private static void collect(List<Entry> entries, String simpleName,
+                    List<Entry> found) {
+        for (Entry entry : entries) {
+            if (entry.rule.matchesSimpleName(simpleName)) {
+                found.add(entry);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RuleMatcher[" + this.rules.size() + " rules]";
+    }
+}
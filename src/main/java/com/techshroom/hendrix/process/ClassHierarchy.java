@@ -0,0 +1,268 @@
+package com.techshroom.hendrix.process;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.techshroom.hendrix.byteio.BytecodeSupplier;
+import com.techshroom.hendrix.classfile.ClassHeader;
+import com.techshroom.hendrix.classpath.ClasspathIndex;
+
+/**
+ * The class hierarchy of the input and classpath classes. Only class headers
+ * are read, and only when a class is first asked about. Subtype and lowest
+ * common supertype answers are memoized, so repeated queries are a couple of
+ * hash lookups. Safe to use from many threads at once.
+ * 
+ * <p>
+ * Classes that can't be found are treated as direct subclasses of
+ * {@code java/lang/Object}.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class ClassHierarchy {
+    /**
+     * The internal name of {@code java.lang.Object}.
+     */
+    public static final String OBJECT = "java/lang/Object";
+
+    /**
+     * An unordered pair of class names.
+     */
+    private static final class Pair {
+        private final String first;
+        private final String second;
+        private final int hash;
+
+        Pair(String a, String b) {
+            boolean ordered = a.compareTo(b) <= 0;
+            this.first = ordered ? a : b;
+            this.second = ordered ? b : a;
+            this.hash = this.first.hashCode() * 31 + this.second.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Pair)) {
+                return false;
+            }
+            Pair other = (Pair) obj;
+            return this.first.equals(other.first)
+                            && this.second.equals(other.second);
+        }
+    }
+
+    /**
+     * Creates a hierarchy over the given classes. Nothing is read until the
+     * first query.
+     * 
+     * @param input - The input classes
+     * @param classpath - The classpath of the input classes
+     * @return The hierarchy
+     */
+    public static ClassHierarchy create(
+                    Iterable<? extends BytecodeSupplier> input,
+                    ClasspathIndex classpath) {
+        return new ClassHierarchy(ImmutableList.copyOf(input), checkNotNull(
+                        classpath, "classpath"));
+    }
+
+    private final ImmutableList<BytecodeSupplier> input;
+    private final ClasspathIndex classpath;
+    private volatile Map<String, ClassHeader> inputHeaders;
+    private final ConcurrentMap<String, Optional<ClassHeader>> headers =
+                    new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> supertypes =
+                    new ConcurrentHashMap<>();
+    private final ConcurrentMap<Pair, String> commonSupertypes =
+                    new ConcurrentHashMap<>();
+
+    private ClassHierarchy(ImmutableList<BytecodeSupplier> input,
+                    ClasspathIndex classpath) {
+        this.input = input;
+        this.classpath = classpath;
+    }
+
+    /**
+     * Gets the header of a class. Input classes win over classpath classes.
+     * 
+     * @param name - The internal name of the class
+     * @return The header, or absent if the class can't be found
+     */
+    public Optional<ClassHeader> getHeader(String name) {
+        Optional<ClassHeader> header = this.headers.get(name);
+        if (header == null) {
+            header = Optional.fromNullable(inputHeaders().get(name));
+            if (!header.isPresent()) {
+                header = readClasspathHeader(name);
+            }
+            this.headers.putIfAbsent(name, header);
+        }
+        return header;
+    }
+
+    private Optional<ClassHeader> readClasspathHeader(String name) {
+        try {
+            return this.classpath.getHeader(name);
+        } catch (IOException | IllegalArgumentException
+                        | IndexOutOfBoundsException e) {
+            System.err.println("Error reading header of '" + name
+                            + "' from the classpath");
+            e.printStackTrace();
+        }
+        return Optional.absent();
+    }
+
+    private Map<String, ClassHeader> inputHeaders() {
+        Map<String, ClassHeader> result = this.inputHeaders;
+        if (result == null) {
+            synchronized (this) {
+                result = this.inputHeaders;
+                if (result == null) {
+                    result = new HashMap<>();
+                    for (BytecodeSupplier clazz : this.input) {
+                        try {
+                            ClassHeader header =
+                                            ClassHeader.read(clazz.bytecode());
+                            result.put(header.getName(), header);
+                        } catch (IllegalArgumentException
+                                        | IndexOutOfBoundsException e) {
+                            // not a class we can read, so it has no place here
+                        }
+                    }
+                    this.inputHeaders = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private String superNameOf(String name) {
+        Optional<ClassHeader> header = getHeader(name);
+        if (header.isPresent()) {
+            return header.get().getSuperName().orNull();
+        }
+        return name.equals(OBJECT) ? null : OBJECT;
+    }
+
+    private boolean isInterface(String name) {
+        Optional<ClassHeader> header = getHeader(name);
+        return header.isPresent() && header.get().isInterface();
+    }
+
+    /**
+     * Gets every supertype of a class, including itself and
+     * {@code java/lang/Object}.
+     * 
+     * @param name - The internal name of the class
+     * @return The supertypes of the class
+     */
+    public Set<String> getSupertypes(String name) {
+        Set<String> result = this.supertypes.get(name);
+        if (result != null) {
+            return result;
+        }
+        ImmutableSet.Builder<String> all = ImmutableSet.builder();
+        all.add(name).add(OBJECT);
+        Set<String> seen = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        seen.add(name);
+        queue.add(name);
+        for (String next; (next = queue.poll()) != null;) {
+            Set<String> known = this.supertypes.get(next);
+            if (known != null) {
+                // already worked out, no need to walk it again
+                all.addAll(known);
+                continue;
+            }
+            all.add(next);
+            Optional<ClassHeader> header = getHeader(next);
+            if (!header.isPresent()) {
+                continue;
+            }
+            String superName = header.get().getSuperName().orNull();
+            if (superName != null && seen.add(superName)) {
+                queue.add(superName);
+            }
+            for (String iface : header.get().getInterfaces()) {
+                if (seen.add(iface)) {
+                    queue.add(iface);
+                }
+            }
+        }
+        result = all.build();
+        this.supertypes.putIfAbsent(name, result);
+        return result;
+    }
+
+    /**
+     * Checks if {@code type} is {@code supertype}, or a subclass or
+     * implementation of it.
+     * 
+     * @param type - The internal name of the possible subtype
+     * @param supertype - The internal name of the possible supertype
+     * @return {@code true} if {@code type} is a subtype of {@code supertype}
+     */
+    public boolean isSubtype(String type, String supertype) {
+        return getSupertypes(type).contains(supertype);
+    }
+
+    /**
+     * Gets the most specific class that both classes extend. If one is a
+     * subtype of the other, that other type is the answer. Otherwise
+     * interfaces are not considered, the same as
+     * {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}.
+     * 
+     * @param a - The internal name of one class
+     * @param b - The internal name of the other class
+     * @return The internal name of the lowest common supertype
+     */
+    public String getLowestCommonSupertype(String a, String b) {
+        if (a.equals(b)) {
+            return a;
+        }
+        Pair key = new Pair(a, b);
+        String result = this.commonSupertypes.get(key);
+        if (result == null) {
+            result = computeLowestCommonSupertype(a, b);
+            this.commonSupertypes.putIfAbsent(key, result);
+        }
+        return result;
+    }
+
+    private String computeLowestCommonSupertype(String a, String b) {
+        Set<String> bSupertypes = getSupertypes(b);
+        if (bSupertypes.contains(a)) {
+            return a;
+        }
+        if (isSubtype(a, b)) {
+            return b;
+        }
+        if (isInterface(a) || isInterface(b)) {
+            return OBJECT;
+        }
+        for (String c = superNameOf(a); c != null; c = superNameOf(c)) {
+            if (bSupertypes.contains(c)) {
+                return c;
+            }
+        }
+        return OBJECT;
+    }
+}
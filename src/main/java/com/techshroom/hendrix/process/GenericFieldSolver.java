@@ -2,14 +2,18 @@ package com.techshroom.hendrix.process;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.signature.TypeSignature;
+import com.techshroom.hendrix.signature.TypeSignature.ClassType;
+import com.techshroom.hendrix.signature.TypeSignature.TypeArgument;
+import com.techshroom.hendrix.symbol.LongMap;
+import com.techshroom.hendrix.symbol.SymbolTable;
 
 /**
  * Solves generics for a given field.
@@ -17,8 +21,11 @@ import com.techshroom.hendrix.asmsucks.ClassDescriptor;
  * @author Kenzie Togami
  */
 public final class GenericFieldSolver {
-    private static final Map<String, GenericFieldSolver> fieldNameToSolver =
-                    new HashMap<>();
+    /**
+     * Solvers keyed by the symbol IDs of the class and field name.
+     */
+    private static final LongMap<GenericFieldSolver> fieldNameToSolver =
+                    LongMap.create();
     private static final ClassDescriptor OBJECT_DESCRIPTOR = ClassDescriptor
                     .fromSourcecodeReference("java.lang.Object");
 
@@ -30,23 +37,31 @@ public final class GenericFieldSolver {
      * @return The solver for the field
      */
     public static GenericFieldSolver forField(ClassNode holder, FieldNode field) {
-        String key = key(holder, field);
-        GenericFieldSolver solver = fieldNameToSolver.get(key);
-        if (solver == null) {
-            fieldNameToSolver.put(key, solver =
-                            new GenericFieldSolver(holder, field));
+        long key = key(holder, field);
+        synchronized (fieldNameToSolver) {
+            GenericFieldSolver solver = fieldNameToSolver.get(key);
+            if (solver == null) {
+                fieldNameToSolver.put(key, solver =
+                                new GenericFieldSolver(holder, field));
+            }
+            return solver;
         }
-        return solver;
     }
 
-    private static String key(ClassNode c, FieldNode f) {
-        return c.name + "." + f.name;
+    private static long key(ClassNode c, FieldNode f) {
+        SymbolTable symbols = SymbolTable.global();
+        return SymbolTable.pair(symbols.intern(c.name),
+                        symbols.intern(f.name));
     }
 
     private final ClassNode holder;
     private final FieldNode field;
     private final boolean isGenericFieldType;
-    private ClassDescriptor lowestCommonData = OBJECT_DESCRIPTOR;
+    /**
+     * The lowest common type seen so far, {@code null} if nothing has been
+     * seen.
+     */
+    private ClassDescriptor lowestCommonData;
 
     private GenericFieldSolver(ClassNode holder, FieldNode field) {
         checkArgument(holder.fields.contains(field),
@@ -65,17 +80,28 @@ public final class GenericFieldSolver {
         return this.isGenericFieldType && this.field.signature == null;
     }
 
+    /**
+     * Only signatures with a single exact type argument can be solved. Any
+     * other signature, such as {@code Map<K, V>}, is left as it is.
+     */
     private boolean checkForGenericType() {
         String sig = this.field.signature;
-        if (sig != null) {
-            // signature data not missing -> generic
-            ClassDescriptor desc = ClassDescriptor.fromDescriptorString(sig);
-            // should be true for nearly every case, just a pre-caution
-            if (desc.getGeneric().isPresent()) {
-                // update signature
-                this.lowestCommonData = desc.getGeneric().get();
-                return true;
-            }
+        if (sig == null) {
+            return false;
+        }
+        TypeSignature type;
+        try {
+            type = TypeSignature.parse(sig);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!(type instanceof ClassType)) {
+            return false;
+        }
+        Optional<ClassDescriptor> desc = type.toDescriptor();
+        if (desc.isPresent() && desc.get().getGeneric().isPresent()) {
+            this.lowestCommonData = desc.get().getGeneric().get();
+            return true;
         }
         return false;
     }
@@ -86,21 +112,53 @@ public final class GenericFieldSolver {
     private void updateSignature() {
         if (this.isGenericFieldType) {
             // signature = desc<generic>
-            String descBeforeSemiColon =
-                            this.field.desc.substring(0,
-                                            this.field.desc.length() - 1);
+            ClassType erased = (ClassType) TypeSignature.parse(this.field.desc);
+            TypeSignature common =
+                            TypeSignature.fromDescriptor(getLowestCommonType());
+            TypeArgument generic = TypeArgument.exact(common);
             this.field.signature =
-                            descBeforeSemiColon + "<"
-                                            + generateGenericDescriptor()
-                                            + ">;";
-        } else {
-            // signature = null
-            this.field.signature = null;
+                            erased.withTypeArguments(ImmutableList.of(generic))
+                                            .toString();
         }
     }
 
-    private String generateGenericDescriptor() {
-        return this.lowestCommonData.toDescriptorString();
+    /**
+     * Widens the lowest common type so that {@code seen} is assignable to it.
+     * 
+     * @param seen - A type that is stored in the field
+     * @param hierarchy - The hierarchy to look supertypes up in
+     */
+    public void widen(ClassDescriptor seen, ClassHierarchy hierarchy) {
+        if (this.lowestCommonData == null) {
+            this.lowestCommonData = seen;
+        } else if (!this.lowestCommonData.equals(seen)) {
+            this.lowestCommonData = commonType(this.lowestCommonData, seen,
+                            hierarchy);
+        }
+        updateSignature();
+    }
+
+    private static ClassDescriptor commonType(ClassDescriptor a,
+                    ClassDescriptor b, ClassHierarchy hierarchy) {
+        if (a.isPrimitive() || b.isPrimitive() || a.getArrayDepth() > 0
+                        || b.getArrayDepth() > 0) {
+            return OBJECT_DESCRIPTOR;
+        }
+        String common =
+                        hierarchy.getLowestCommonSupertype(a.getInternalName(),
+                                        b.getInternalName());
+        return ClassDescriptor.fromInternalName(common);
+    }
+
+    /**
+     * Get the lowest common type of everything stored in the field, or
+     * {@code java.lang.Object} if nothing is known yet.
+     * 
+     * @return The lowest common type
+     */
+    public ClassDescriptor getLowestCommonType() {
+        return this.lowestCommonData == null ? OBJECT_DESCRIPTOR
+                        : this.lowestCommonData;
     }
 
     /**
@@ -1,10 +1,24 @@
 package com.techshroom.hendrix.process;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -12,23 +26,35 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 
-import autovalue.shaded.com.google.common.common.collect.ImmutableMap;
-
-import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableTable;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Table;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.techshroom.hendrix.SharedData;
 import com.techshroom.hendrix.asmsucks.ClassDescriptor;
-import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.byteio.BasicBytecodeContainer;
 import com.techshroom.hendrix.byteio.BytecodeConsumer;
 import com.techshroom.hendrix.byteio.BytecodeSupplier;
+import com.techshroom.hendrix.byteio.EntryBytecode;
+import com.techshroom.hendrix.byteio.JarEntryConsumer;
+import com.techshroom.hendrix.byteio.MappedEntryBytecode;
+import com.techshroom.hendrix.classfile.ConstantPool;
+import com.techshroom.hendrix.classfile.SignaturePatcher;
+import com.techshroom.hendrix.classfile.SignatureRemapper;
+import com.techshroom.hendrix.classpath.ClasspathIndex;
+import com.techshroom.hendrix.jar.JarRewriteSession;
 import com.techshroom.hendrix.mapping.ClassMapping;
 import com.techshroom.hendrix.mapping.FieldMapping;
-import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MappingBundle;
 import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.LayeredMappingProvider;
 import com.techshroom.hendrix.mapping.load.MappingProvider;
+import com.techshroom.hendrix.mapping.load.QueryMappingProvider;
+import com.techshroom.hendrix.signature.ClassSignature;
+import com.techshroom.hendrix.signature.MethodSignature;
+import com.techshroom.hendrix.signature.TypeSignature;
+import com.techshroom.hendrix.signature.TypeSignature.BaseType;
+import com.techshroom.hendrix.signature.TypeSignature.ClassType;
 
 /**
  * Entry point for the processing of classes. All you need is the classes.
@@ -36,56 +62,90 @@ import com.techshroom.hendrix.mapping.load.MappingProvider;
  * @author Kenzie Togami
  */
 public final class ProcessEntry {
-    static final Joiner SLASH = Joiner.on('/');
+    private static final ThreadFactory TRANSFORM_THREADS =
+                    new ThreadFactoryBuilder()
+                                    .setNameFormat("hendrix-transform-%d")
+                                    .setDaemon(true).build();
     private final List<BytecodeSupplier> classesIn;
+    private final ProcessSettings settings;
+    private final ClasspathIndex classpath;
     /**
-     * Mapping from class -> mapping
+     * Every mapping, queried by class
      */
-    private final Map<ClassDescriptor, ClassMapping> classMappings;
+    private final QueryMappingProvider mappings;
+    private final Map<BytecodeSupplier, byte[]> results =
+                    new ConcurrentHashMap<>();
+
     /**
-     * Mapping from class + field name -> mapping
+     * Create a new entry point for processing, using the
+     * {@linkplain ProcessSettings#defaults() default settings}.
+     * 
+     * @param input - The classes to process
+     * @param mappings - The mappings provided
      */
-    private final Table<ClassDescriptor, String, FieldMapping> fieldMappings;
+    public ProcessEntry(Iterable<? extends BytecodeSupplier> input,
+                    Iterable<? extends MappingProvider> mappings) {
+        this(input, mappings, ProcessSettings.defaults());
+    }
+
     /**
-     * Mapping from class + method
+     * Create a new entry point for processing.
+     * 
+     * @param input - The classes to process
+     * @param mappings - The mappings provided
+     * @param settings - The settings for this run
      */
-    private final Map<MethodDescriptor, MethodMapping> methodMappings;
-    private final Map<BytecodeSupplier, ClassWriter> results = new HashMap<>();
+    public ProcessEntry(Iterable<? extends BytecodeSupplier> input,
+                    Iterable<? extends MappingProvider> mappings,
+                    ProcessSettings settings) {
+        this(input, mappings, settings, ClasspathIndex.empty());
+    }
 
     /**
-     * Create a new entry point for processing.
+     * Create a new entry point for processing. Classes on the classpath are
+     * only looked at when needed, and are never transformed.
      * 
      * @param input - The classes to process
      * @param mappings - The mappings provided
+     * @param settings - The settings for this run
+     * @param classpath - The classpath of the classes to process
      */
     public ProcessEntry(Iterable<? extends BytecodeSupplier> input,
-                    Iterable<? extends MappingProvider> mappings) {
+                    Iterable<? extends MappingProvider> mappings,
+                    ProcessSettings settings, ClasspathIndex classpath) {
         this.classesIn = ImmutableList.copyOf(input);
-        Iterable<GenericMapping> allMappings = Iterables.concat(mappings);
-        ImmutableMap.Builder<ClassDescriptor, ClassMapping> classMap =
-                        ImmutableMap.builder();
-        ImmutableMap.Builder<MethodDescriptor, MethodMapping> methodMap =
-                        ImmutableMap.builder();
-        ImmutableTable.Builder<ClassDescriptor, String, FieldMapping> fieldTable =
-                        ImmutableTable.builder();
-        for (GenericMapping mapping : allMappings) {
-            if (mapping instanceof ClassMapping) {
-                ClassMapping cMap = (ClassMapping) mapping;
-                classMap.put(cMap.getClassName(), cMap);
-            } else if (mapping instanceof ClassMapping) {
-                ClassMapping cMap = (ClassMapping) mapping;
-                classMap.put(cMap.getClassName(), cMap);
-            } else if (mapping instanceof ClassMapping) {
-                ClassMapping cMap = (ClassMapping) mapping;
-                classMap.put(cMap.getClassName(), cMap);
-            } else {
-                System.err.println("Unhandled mapping type '"
-                                + mapping.getClass().getName() + "'");
-            }
-        }
-        this.classMappings = classMap.build();
-        this.methodMappings = methodMap.build();
-        this.fieldMappings = fieldTable.build();
+        this.settings = checkNotNull(settings, "settings");
+        this.classpath = checkNotNull(classpath, "classpath");
+        this.mappings =
+                        LayeredMappingProvider.of(ImmutableList
+                                        .copyOf(mappings));
+    }
+
+    /**
+     * Get the mappings for this run. They are queried one class at a time.
+     * 
+     * @return The mappings for this run
+     */
+    public QueryMappingProvider getMappings() {
+        return this.mappings;
+    }
+
+    /**
+     * Get the settings for this run.
+     * 
+     * @return The settings for this run
+     */
+    public ProcessSettings getSettings() {
+        return this.settings;
+    }
+
+    /**
+     * Get the classpath index.
+     * 
+     * @return The classpath index
+     */
+    public ClasspathIndex getClasspath() {
+        return this.classpath;
     }
 
     /**
@@ -98,141 +158,397 @@ public final class ProcessEntry {
     }
 
     /**
-     * Process all of the classes given to the entry point.
+     * Process all of the classes given to the entry point. The jars the
+     * classes were read from are closed once every class is done, before the
+     * rewritten jars replace them, so the input can't be read again
+     * afterwards.
      */
     public void process() {
-        visitClassesAndApplyMappings();
-        dumpMappings();
+        // one session per jar, so each jar is only written once
+        Map<File, JarRewriteSession> jarSessions = new HashMap<>();
+        try {
+            if (this.settings.isStreaming()) {
+                streamClasses(jarSessions);
+            } else {
+                visitClassesAndApplyMappings();
+                dumpMappings(jarSessions);
+            }
+        } finally {
+            closeInputJars();
+            closeSessions(jarSessions);
+        }
     }
 
-    private void dumpMappings() {
+    /**
+     * Something to do with each input class.
+     */
+    private interface ClassTask {
+        void run(BytecodeSupplier clazz);
+    }
+
+    private void dumpMappings(Map<File, JarRewriteSession> jarSessions) {
         for (BytecodeSupplier clazz : this.classesIn) {
-            BytecodeConsumer classOut = clazz.getConsumer();
-            classOut.bytecode(this.results.get(clazz).toByteArray());
+            byte[] result = this.results.remove(clazz);
+            if (result == null) {
+                // passed through, the original is already in place
+                continue;
+            }
+            writeResult(jarSessions, clazz, result, false);
         }
     }
 
-    private void visitClassesAndApplyMappings() {
-        for (BytecodeSupplier clazz : this.classesIn) {
-            ClassReader reader = new ClassReader(clazz.bytecode());
-            ClassWriter writer = new ClassWriter(reader, SharedData.NO_FLAGS);
-            reader.accept(new ClassVisitor(SharedData.ASM_VERSION, writer) {
-                private ClassDescriptor classRef;
-
-                @Override
-                public void visit(int version, int access, String name,
-                                String signature, String superName,
-                                String[] interfaces) {
-                    checkOutOfClass();
-                    this.classRef =
-                                    ClassDescriptor.fromDescriptorString("L"
-                                                    + name + ";");
-                    ClassMapping mapping =
-                                    ProcessEntry.this.classMappings
-                                                    .get(this.classRef);
-                    if (mapping != null) {
-                        if (signature != null
-
-                                        && !ClassDescriptor
-                                                        .fromDescriptorString(
-                                                                        signature)
-                                                        .equals(mapping.getGeneric())) {
-                            System.err.println("Warning: overriding class signature '"
-                                            + signature
-                                            + "' with '"
-                                            + mapping.getGeneric()
-                                                            .toDescriptorString()
-                                            + "' for " + name);
-                        }
-                        signature = mapping.getGeneric().toDescriptorString();
-                    }
-                    super.visit(version, access, name, signature, superName,
-                                    interfaces);
+    private void streamClasses(
+                    final Map<File, JarRewriteSession> jarSessions) {
+        forEachClass(new ClassTask() {
+            @Override
+            public void run(BytecodeSupplier clazz) {
+                byte[] result = transform(clazz);
+                if (result != null) {
+                    writeResult(jarSessions, clazz, result, true);
+                }
+                // nothing from this class needs to stay in memory
+                if (clazz instanceof BasicBytecodeContainer) {
+                    ((BasicBytecodeContainer) clazz).release();
                 }
+            }
+        });
+    }
 
-                @Override
-                public FieldVisitor visitField(int access, String name,
-                                String desc, String signature, Object value) {
-                    checkInClass();
-                    FieldMapping mapping =
-                                    ProcessEntry.this.fieldMappings.get(
-                                                    this.classRef, name);
-                    if (mapping != null) {
-                        if (signature != null
-
-                                        && !ClassDescriptor
-                                                        .fromDescriptorString(
-                                                                        signature)
-                                                        .equals(mapping.getGeneric())) {
-                            System.err.println("Warning: overriding field signature '"
-                                            + signature
-                                            + "' with '"
-                                            + mapping.getGeneric()
-                                                            .toDescriptorString()
-                                            + "' for " + name);
-                        }
-                        signature = mapping.getGeneric().toDescriptorString();
-                    }
-                    return super.visitField(access, name, desc, signature,
-                                    value);
+    /**
+     * Closes the jars the input classes were read from. A mapped jar holds
+     * its mapping and inflaters until closed, and on some platforms an open
+     * jar can't be replaced.
+     */
+    private void closeInputJars() {
+        Set<Closeable> jars = Collections.newSetFromMap(
+                        new IdentityHashMap<Closeable, Boolean>());
+        for (BytecodeSupplier clazz : this.classesIn) {
+            if (clazz instanceof MappedEntryBytecode) {
+                jars.add(((MappedEntryBytecode) clazz).getSourceJar());
+            } else if (clazz instanceof EntryBytecode) {
+                jars.add(((EntryBytecode) clazz).getSourceJar());
+            }
+        }
+        for (Closeable jar : jars) {
+            try {
+                jar.close();
+            } catch (IOException e) {
+                System.err.println("Error closing input jar " + jar);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void writeResult(Map<File, JarRewriteSession> jarSessions,
+                    BytecodeSupplier clazz, byte[] bytes, boolean streaming) {
+        BytecodeConsumer classOut = clazz.getConsumer();
+        if (classOut instanceof JarEntryConsumer) {
+            JarEntryConsumer entry = (JarEntryConsumer) classOut;
+            JarRewriteSession session =
+                            sessionFor(jarSessions, entry, streaming);
+            try {
+                session.replace(entry.getEntryName(), bytes);
+            } catch (IOException e) {
+                System.err.println("Error writing '" + entry.getEntryName()
+                                + "' to jar '"
+                                + session.getJarFile().getAbsolutePath() + "'");
+                e.printStackTrace();
+            }
+        } else {
+            classOut.bytecode(bytes);
+        }
+    }
+
+    private static JarRewriteSession sessionFor(
+                    Map<File, JarRewriteSession> jarSessions,
+                    JarEntryConsumer entry, boolean streaming) {
+        File jar = entry.getJarFile().getAbsoluteFile();
+        synchronized (jarSessions) {
+            JarRewriteSession session = jarSessions.get(jar);
+            if (session == null) {
+                session =
+                                streaming ? JarRewriteSession
+                                                .openStreaming(jar)
+                                                : JarRewriteSession.open(jar);
+                jarSessions.put(jar, session);
+            }
+            return session;
+        }
+    }
+
+    private static void closeSessions(Map<File, JarRewriteSession> jarSessions) {
+        for (JarRewriteSession session : jarSessions.values()) {
+            try {
+                session.close();
+            } catch (IOException e) {
+                System.err.println("Error writing jar '"
+                                + session.getJarFile().getAbsolutePath() + "'");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void visitClassesAndApplyMappings() {
+        forEachClass(new ClassTask() {
+            @Override
+            public void run(BytecodeSupplier clazz) {
+                byte[] result = transform(clazz);
+                if (result != null) {
+                    ProcessEntry.this.results.put(clazz, result);
                 }
+            }
+        });
+    }
 
-                @Override
-                public MethodVisitor visitMethod(int access, String name,
-                                String desc, String signature,
-                                String[] exceptions) {
-                    MethodMapping mapping =
-                                    ProcessEntry.this.methodMappings
-                                                    .get(makeMethodDescriptor(
-                                                                    name, desc));
-                    if (mapping != null) {
-                        if (signature != null
-
-                                        && !ClassDescriptor
-                                                        .fromDescriptorString(
-                                                                        signature)
-                                                        .equals(mapping.getGeneric())) {
-                            System.err.println("Warning: overriding method signature '"
-                                            + signature
-                                            + "' with '"
-                                            + mapping.getGeneric()
-                                                            .toDescriptorString()
-                                            + "' for " + name + desc);
-                        }
-                        signature = mapping.getGeneric().toDescriptorString();
+    /**
+     * Runs {@code task} for every input class, on the worker pool if there is
+     * more than one thread.
+     */
+    private void forEachClass(final ClassTask task) {
+        int threads = this.settings.getThreads();
+        if (threads == 1) {
+            for (BytecodeSupplier clazz : this.classesIn) {
+                task.run(clazz);
+            }
+            return;
+        }
+        // every class is independent, and the mapping tables are immutable
+        ExecutorService pool =
+                        Executors.newFixedThreadPool(threads,
+                                        TRANSFORM_THREADS);
+        try {
+            List<Future<?>> tasks = new ArrayList<>(this.classesIn.size());
+            for (final BytecodeSupplier clazz : this.classesIn) {
+                tasks.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        task.run(clazz);
                     }
-                    checkInClass();
-                    return super.visitMethod(access, name, desc, signature,
-                                    exceptions);
+                }));
+            }
+            for (Future<?> running : tasks) {
+                try {
+                    Uninterruptibles.getUninterruptibly(running);
+                } catch (ExecutionException e) {
+                    throw Throwables.propagate(e.getCause());
                 }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-                private MethodDescriptor makeMethodDescriptor(String name,
-                                String desc) {
-                    return MethodDescriptor.fromDescriptorString(SLASH
-                                    .join(this.classRef.getPath())
-                                    + '/'
-                                    + name
-                                    + desc);
-                }
+    /**
+     * Transforms the class. Returns {@code null} if no mapping applies to it,
+     * in which case the original bytes are left as they are.
+     */
+    private byte[] transform(BytecodeSupplier clazz) {
+        byte[] bytecode = clazz.bytecode();
+        if (!hasMappings(bytecode)) {
+            return null;
+        }
+        if (this.settings.getEngine() == TransformEngine.PATCH) {
+            byte[] patched =
+                            SignaturePatcher.patch(bytecode,
+                                            new MappingSignatures());
+            if (patched != null) {
+                // the same array back means no signature changed
+                return patched == bytecode ? null : patched;
+            }
+            // something unusual, ASM knows what to do with it
+        }
+        ClassReader reader = new ClassReader(bytecode);
+        ClassWriter writer = new ClassWriter(reader, SharedData.NO_FLAGS);
+        reader.accept(new MappingApplier(writer, new MappingSignatures()),
+                        SharedData.NO_FLAGS);
+        return writer.toByteArray();
+    }
 
-                @Override
-                public void visitEnd() {
-                    checkInClass();
-                    this.classRef = null;
-                    super.visitEnd();
-                }
+    /**
+     * Checks the class name against the mapped classes, without going through
+     * ASM.
+     */
+    private boolean hasMappings(byte[] bytecode) {
+        try {
+            return this.mappings.bundleFor(ClassDescriptor
+                            .fromInternalName(ConstantPool
+                                            .readClassName(bytecode))) != null;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // let ASM complain about it
+            return true;
+        }
+    }
 
-                private void checkInClass() {
-                    checkArgument(this.classRef != null,
-                                    "method called outside class parse");
+    /**
+     * Picks the signatures from the mappings. Shared by both engines, one
+     * instance per class.
+     */
+    private final class MappingSignatures implements SignatureRemapper {
+        /**
+         * The mappings of the current class, {@code null} if it has none.
+         */
+        private MappingBundle bundle;
+
+        @Override
+        public String classSignature(String name, String superName,
+                        String[] interfaces, String signature) {
+            this.bundle =
+                            ProcessEntry.this.mappings.bundleFor(ClassDescriptor
+                                            .fromInternalName(name));
+            ClassMapping mapping =
+                            this.bundle == null ? null : this.bundle
+                                            .getClassMapping().orNull();
+            if (mapping == null || superName == null) {
+                return signature;
+            }
+            TypeSignature generic = toSignature(mapping.getGeneric(), name);
+            if (!(generic instanceof ClassType)) {
+                System.err.println("Warning: ignoring non-class supertype '"
+                                + mapping.getGeneric() + "' for " + name);
+                return signature;
+            }
+            ClassSignature base = null;
+            if (signature != null) {
+                try {
+                    base = ClassSignature.parse(signature);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Warning: " + e.getMessage() + " on "
+                                    + name);
                 }
+            }
+            if (base == null) {
+                base = ClassSignature.erased(superName, interfaces);
+            }
+            return override("class", name, signature,
+                            base.withSupertype((ClassType) generic)
+                                            .toString());
+        }
 
-                private void checkOutOfClass() {
-                    checkArgument(this.classRef == null,
-                                    "method called inside class parse");
+        @Override
+        public String fieldSignature(String name, String desc,
+                        String signature) {
+            FieldMapping mapping =
+                            this.bundle == null ? null : this.bundle
+                                            .getField(name, desc);
+            if (mapping == null) {
+                return signature;
+            }
+            TypeSignature generic = toSignature(mapping.getGeneric(), name);
+            if (generic == null || generic instanceof BaseType) {
+                return signature;
+            }
+            return override("field", name, signature, generic.toString());
+        }
+
+        @Override
+        public String methodSignature(String name, String desc,
+                        String signature) {
+            MethodMapping mapping =
+                            this.bundle == null ? null : this.bundle
+                                            .getMethod(name, desc);
+            if (mapping == null) {
+                return signature;
+            }
+            TypeSignature generic = toSignature(mapping.getGeneric(), name);
+            if (generic == null) {
+                return signature;
+            }
+            MethodSignature base = null;
+            if (signature != null) {
+                try {
+                    base = MethodSignature.parse(signature);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Warning: " + e.getMessage() + " on "
+                                    + name + desc);
                 }
-            }, SharedData.NO_FLAGS);
-            this.results.put(clazz, writer);
+            }
+            if (base == null) {
+                base = MethodSignature.parse(desc);
+            }
+            return override("method", name + desc, signature, base
+                            .withReturnType(generic).toString());
         }
+
+        private TypeSignature toSignature(ClassDescriptor generic,
+                        String member) {
+            try {
+                return TypeSignature.fromDescriptor(generic);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Warning: ignoring invalid generic '"
+                                + generic + "' for " + member + ": "
+                                + e.getMessage());
+                return null;
+            }
+        }
+
+        private String override(String kind, String member, String old,
+                        String result) {
+            if (old != null && !old.equals(result)) {
+                System.err.println("Warning: overriding " + kind
+                                + " signature '" + old + "' with '" + result
+                                + "' for " + member);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Applies the mappings to a single class through ASM. One instance per
+     * class.
+     */
+    private static final class MappingApplier extends ClassVisitor {
+        private final SignatureRemapper signatures;
+        private boolean inClass;
+
+        MappingApplier(ClassVisitor cv, SignatureRemapper signatures) {
+            super(SharedData.ASM_VERSION, cv);
+            this.signatures = signatures;
+        }
+
+        @Override
+        public void visit(int version, int access, String name,
+                        String signature, String superName,
+                        String[] interfaces) {
+            checkOutOfClass();
+            this.inClass = true;
+            super.visit(version, access, name,
+                            this.signatures.classSignature(name, superName,
+                                            interfaces, signature),
+                            superName, interfaces);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name,
+                        String desc, String signature, Object value) {
+            checkInClass();
+            return super.visitField(access, name, desc, this.signatures
+                            .fieldSignature(name, desc, signature), value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name,
+                        String desc, String signature,
+                        String[] exceptions) {
+            checkInClass();
+            return super.visitMethod(access, name, desc, this.signatures
+                            .methodSignature(name, desc, signature),
+                            exceptions);
+        }
+
+        @Override
+        public void visitEnd() {
+            checkInClass();
+            this.inClass = false;
+            super.visitEnd();
+        }
+
+        private void checkInClass() {
+            checkArgument(this.inClass, "method called outside class parse");
+        }
+
+        private void checkOutOfClass() {
+            checkArgument(!this.inClass, "method called inside class parse");
+        }
+
     }
 }
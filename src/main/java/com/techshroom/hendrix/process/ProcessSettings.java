@@ -0,0 +1,100 @@
+package com.techshroom.hendrix.process;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Settings for a {@link ProcessEntry} run.
+ * 
+ * @author Kenzie Togami
+ */
+@AutoValue
+public abstract class ProcessSettings {
+
+    /**
+     * Gets the default settings. These process classes one at a time, on the
+     * calling thread, through ASM, and write them all out at the end.
+     * 
+     * @return The default settings
+     */
+    public static final ProcessSettings defaults() {
+        return create(1, false, TransformEngine.ASM);
+    }
+
+    /**
+     * Creates new settings from the given values.
+     * 
+     * @param threads - The number of threads to transform classes on
+     * @param streaming - {@code true} if each class should be written out as
+     *        soon as it is transformed
+     * @param engine - The engine to rewrite classes with
+     * @return The new settings
+     */
+    public static final ProcessSettings create(int threads, boolean streaming,
+                    TransformEngine engine) {
+        checkArgument(threads > 0, "need at least one thread, got %s",
+                        threads);
+        return new AutoValue_ProcessSettings(threads, streaming,
+                        checkNotNull(engine, "engine"));
+    }
+
+    ProcessSettings() {}
+
+    /**
+     * Gets the number of threads to transform classes on. {@code 1} means
+     * classes are transformed on the calling thread.
+     * 
+     * @return The number of threads to transform classes on
+     */
+    public abstract int getThreads();
+
+    /**
+     * Checks if classes are written out as soon as they are transformed. When
+     * streaming, memory use is bounded by the number of classes in flight
+     * rather than by the size of the input.
+     * 
+     * @return {@code true} if classes are written out as soon as they are
+     *         transformed
+     */
+    public abstract boolean isStreaming();
+
+    /**
+     * Gets the engine that classes are rewritten with.
+     * 
+     * @return The engine that classes are rewritten with
+     */
+    public abstract TransformEngine getEngine();
+
+    /**
+     * Returns a copy of these settings with the given thread count.
+     * 
+     * @param threads - The number of threads to transform classes on
+     * @return The new settings
+     */
+    public final ProcessSettings withThreads(int threads) {
+        return create(threads, isStreaming(), getEngine());
+    }
+
+    /**
+     * Returns a copy of these settings with the given streaming flag.
+     * 
+     * @param streaming - {@code true} if each class should be written out as
+     *        soon as it is transformed
+     * @return The new settings
+     */
+    public final ProcessSettings withStreaming(boolean streaming) {
+        return create(getThreads(), streaming, getEngine());
+    }
+
+    /**
+     * Returns a copy of these settings with the given engine.
+     * 
+     * @param engine - The engine to rewrite classes with
+     * @return The new settings
+     */
+    public final ProcessSettings withEngine(TransformEngine engine) {
+        return create(getThreads(), isStreaming(), engine);
+    }
+}
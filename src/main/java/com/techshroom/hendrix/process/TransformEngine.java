@@ -0,0 +1,20 @@
+package com.techshroom.hendrix.process;
+
+/**
+ * The ways {@link ProcessEntry} can rewrite a class.
+ * 
+ * @author Kenzie Togami
+ */
+public enum TransformEngine {
+    /**
+     * Round-trip every class through a {@link org.objectweb.asm.ClassReader}
+     * and {@link org.objectweb.asm.ClassWriter}.
+     */
+    ASM,
+    /**
+     * Patch the {@code Signature} attributes straight into the class file
+     * bytes with a {@link com.techshroom.hendrix.classfile.SignaturePatcher}.
+     * Classes it can't handle go through {@link #ASM} instead.
+     */
+    PATCH;
+}
@@ -0,0 +1,179 @@
+package com.techshroom.hendrix.signature;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+import org.objectweb.asm.signature.SignatureWriter;
+
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.signature.TypeSignature.ClassType;
+
+/**
+ * The signature of a class: its type parameters, superclass and interfaces.
+ * 
+ * @author Kenzie Togami
+ */
+public final class ClassSignature {
+    /**
+     * Parses a class signature.
+     * 
+     * @param signature - The signature to parse
+     * @return The parsed signature
+     * @throws IllegalArgumentException if the signature is invalid
+     */
+    public static ClassSignature parse(String signature) {
+        SignatureBuilder.Declaration builder =
+                        new SignatureBuilder.Declaration();
+        try {
+            new SignatureReader(checkNotNull(signature, "signature"))
+                            .accept(builder);
+        } catch (RuntimeException e) {
+            throw SignatureBuilder.invalid(signature, e);
+        }
+        return SignatureBuilder.checkComplete(signature,
+                        builder.buildClass());
+    }
+
+    /**
+     * Creates the signature of a non-generic class from its header.
+     * 
+     * @param superName - The internal name of the superclass
+     * @param interfaces - The internal names of the interfaces, may be
+     *        {@code null} for none
+     * @return The class signature
+     */
+    public static ClassSignature erased(String superName, String[] interfaces) {
+        ImmutableList.Builder<ClassType> types = ImmutableList.builder();
+        if (interfaces != null) {
+            for (String name : interfaces) {
+                types.add(TypeSignature.classType(name));
+            }
+        }
+        return of(ImmutableList.<TypeParameter> of(),
+                        TypeSignature.classType(superName), types.build());
+    }
+
+    /**
+     * Creates a class signature.
+     * 
+     * @param typeParameters - The type parameters
+     * @param superclass - The superclass
+     * @param interfaces - The interfaces
+     * @return The class signature
+     */
+    public static ClassSignature of(List<TypeParameter> typeParameters,
+                    ClassType superclass, List<ClassType> interfaces) {
+        return new ClassSignature(ImmutableList.copyOf(typeParameters),
+                        checkNotNull(superclass, "superclass"),
+                        ImmutableList.copyOf(interfaces));
+    }
+
+    private final List<TypeParameter> typeParameters;
+    private final ClassType superclass;
+    private final List<ClassType> interfaces;
+
+    private ClassSignature(List<TypeParameter> typeParameters,
+                    ClassType superclass, List<ClassType> interfaces) {
+        this.typeParameters = typeParameters;
+        this.superclass = superclass;
+        this.interfaces = interfaces;
+    }
+
+    /**
+     * Gets the type parameters.
+     * 
+     * @return The type parameters
+     */
+    public List<TypeParameter> getTypeParameters() {
+        return this.typeParameters;
+    }
+
+    /**
+     * Gets the superclass.
+     * 
+     * @return The superclass
+     */
+    public ClassType getSuperclass() {
+        return this.superclass;
+    }
+
+    /**
+     * Gets the interfaces.
+     * 
+     * @return The interfaces
+     */
+    public List<ClassType> getInterfaces() {
+        return this.interfaces;
+    }
+
+    /**
+     * Returns a copy of this signature with {@code supertype} replacing the
+     * supertype of the same class. If it is neither the superclass nor one of
+     * the interfaces, it replaces the superclass.
+     * 
+     * @param supertype - The new supertype
+     * @return The new signature
+     */
+    public ClassSignature withSupertype(ClassType supertype) {
+        String name = supertype.getInternalName();
+        for (int i = 0; i < this.interfaces.size(); i++) {
+            if (this.interfaces.get(i).getInternalName().equals(name)) {
+                ImmutableList.Builder<ClassType> replaced =
+                                ImmutableList.builder();
+                replaced.addAll(this.interfaces.subList(0, i)).add(supertype)
+                                .addAll(this.interfaces.subList(i + 1,
+                                                this.interfaces.size()));
+                return new ClassSignature(this.typeParameters,
+                                this.superclass, replaced.build());
+            }
+        }
+        return new ClassSignature(this.typeParameters, supertype,
+                        this.interfaces);
+    }
+
+    /**
+     * Sends this signature to {@code visitor}.
+     * 
+     * @param visitor - The visitor to send this signature to
+     */
+    public void accept(SignatureVisitor visitor) {
+        for (TypeParameter param : this.typeParameters) {
+            param.accept(visitor);
+        }
+        this.superclass.accept(visitor.visitSuperclass());
+        for (ClassType type : this.interfaces) {
+            type.accept(visitor.visitInterface());
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ClassSignature)) {
+            return false;
+        }
+        ClassSignature other = (ClassSignature) obj;
+        return this.typeParameters.equals(other.typeParameters)
+                        && this.superclass.equals(other.superclass)
+                        && this.interfaces.equals(other.interfaces);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.typeParameters.hashCode();
+        hash = hash * 31 + this.superclass.hashCode();
+        return hash * 31 + this.interfaces.hashCode();
+    }
+
+    /**
+     * Writes this signature in class file form.
+     */
+    @Override
+    public String toString() {
+        SignatureWriter writer = new SignatureWriter();
+        accept(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,182 @@
+package com.techshroom.hendrix.signature;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+import org.objectweb.asm.signature.SignatureWriter;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The signature of a method: its type parameters, parameter types, return type
+ * and thrown types. Erased method descriptors are valid method signatures too.
+ * 
+ * @author Kenzie Togami
+ */
+public final class MethodSignature {
+    /**
+     * Parses a method signature or descriptor.
+     * 
+     * @param signature - The signature to parse
+     * @return The parsed signature
+     * @throws IllegalArgumentException if the signature is invalid
+     */
+    public static MethodSignature parse(String signature) {
+        SignatureBuilder.Declaration builder =
+                        new SignatureBuilder.Declaration();
+        try {
+            new SignatureReader(checkNotNull(signature, "signature"))
+                            .accept(builder);
+        } catch (RuntimeException e) {
+            throw SignatureBuilder.invalid(signature, e);
+        }
+        return SignatureBuilder.checkComplete(signature,
+                        builder.buildMethod());
+    }
+
+    /**
+     * Creates a method signature.
+     * 
+     * @param typeParameters - The type parameters
+     * @param parameters - The parameter types
+     * @param returnType - The return type
+     * @param exceptions - The thrown types
+     * @return The method signature
+     */
+    public static MethodSignature of(List<TypeParameter> typeParameters,
+                    List<? extends TypeSignature> parameters,
+                    TypeSignature returnType,
+                    List<? extends TypeSignature> exceptions) {
+        return new MethodSignature(ImmutableList.copyOf(typeParameters),
+                        ImmutableList.<TypeSignature> copyOf(parameters),
+                        checkNotNull(returnType, "return type"),
+                        ImmutableList.<TypeSignature> copyOf(exceptions));
+    }
+
+    private final List<TypeParameter> typeParameters;
+    private final List<TypeSignature> parameters;
+    private final TypeSignature returnType;
+    private final List<TypeSignature> exceptions;
+
+    private MethodSignature(List<TypeParameter> typeParameters,
+                    List<TypeSignature> parameters, TypeSignature returnType,
+                    List<TypeSignature> exceptions) {
+        this.typeParameters = typeParameters;
+        this.parameters = parameters;
+        this.returnType = returnType;
+        this.exceptions = exceptions;
+    }
+
+    /**
+     * Gets the type parameters.
+     * 
+     * @return The type parameters
+     */
+    public List<TypeParameter> getTypeParameters() {
+        return this.typeParameters;
+    }
+
+    /**
+     * Gets the parameter types.
+     * 
+     * @return The parameter types
+     */
+    public List<TypeSignature> getParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * Gets the return type, a {@code V} base type for {@code void}.
+     * 
+     * @return The return type
+     */
+    public TypeSignature getReturnType() {
+        return this.returnType;
+    }
+
+    /**
+     * Gets the thrown types.
+     * 
+     * @return The thrown types
+     */
+    public List<TypeSignature> getExceptions() {
+        return this.exceptions;
+    }
+
+    /**
+     * Returns a copy of this signature with the given return type.
+     * 
+     * @param returnType - The new return type
+     * @return The new signature
+     */
+    public MethodSignature withReturnType(TypeSignature returnType) {
+        return new MethodSignature(this.typeParameters, this.parameters,
+                        checkNotNull(returnType, "return type"),
+                        this.exceptions);
+    }
+
+    /**
+     * Gets the erased descriptor of this method.
+     * 
+     * @return The erased descriptor of this method
+     */
+    public String getErasedDescriptor() {
+        StringBuilder desc = new StringBuilder("(");
+        for (TypeSignature param : this.parameters) {
+            desc.append(param.getErasedDescriptor());
+        }
+        return desc.append(')').append(this.returnType.getErasedDescriptor())
+                        .toString();
+    }
+
+    /**
+     * Sends this signature to {@code visitor}.
+     * 
+     * @param visitor - The visitor to send this signature to
+     */
+    public void accept(SignatureVisitor visitor) {
+        for (TypeParameter param : this.typeParameters) {
+            param.accept(visitor);
+        }
+        for (TypeSignature param : this.parameters) {
+            param.accept(visitor.visitParameterType());
+        }
+        this.returnType.accept(visitor.visitReturnType());
+        for (TypeSignature exception : this.exceptions) {
+            exception.accept(visitor.visitExceptionType());
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MethodSignature)) {
+            return false;
+        }
+        MethodSignature other = (MethodSignature) obj;
+        return this.typeParameters.equals(other.typeParameters)
+                        && this.parameters.equals(other.parameters)
+                        && this.returnType.equals(other.returnType)
+                        && this.exceptions.equals(other.exceptions);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.typeParameters.hashCode();
+        hash = hash * 31 + this.parameters.hashCode();
+        hash = hash * 31 + this.returnType.hashCode();
+        return hash * 31 + this.exceptions.hashCode();
+    }
+
+    /**
+     * Writes this signature in class file form.
+     */
+    @Override
+    public String toString() {
+        SignatureWriter writer = new SignatureWriter();
+        accept(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,355 @@
+package com.techshroom.hendrix.signature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.signature.SignatureVisitor;
+
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.SharedData;
+import com.techshroom.hendrix.signature.TypeSignature.ClassType;
+import com.techshroom.hendrix.signature.TypeSignature.SimpleClassType;
+import com.techshroom.hendrix.signature.TypeSignature.TypeArgument;
+
+/**
+ * Visitors that build signature objects as a
+ * {@link org.objectweb.asm.signature.SignatureReader} walks a signature. Each
+ * nested type gets its own builder, which is only turned into an object once
+ * the whole signature has been read. Builders that didn't see a complete
+ * signature build {@code null}.
+ * 
+ * @author Kenzie Togami
+ */
+abstract class SignatureBuilder extends SignatureVisitor {
+    static IllegalArgumentException invalid(String signature, Throwable cause) {
+        return new IllegalArgumentException("Invalid signature '" + signature
+                        + "'", cause);
+    }
+
+    static <T> T checkComplete(String signature, T built) {
+        if (built == null) {
+            throw invalid(signature, null);
+        }
+        return built;
+    }
+
+    SignatureBuilder() {
+        super(SharedData.ASM_VERSION);
+    }
+
+    /**
+     * Builds a single type signature.
+     */
+    static final class Type extends SignatureBuilder {
+        private TypeSignature done;
+        private Type component;
+        private List<SimpleClassType> parts;
+        private String partName;
+        private List<Argument> partArgs;
+        private boolean visited;
+
+        private boolean start() {
+            if (this.visited) {
+                // two types given to one slot
+                this.done = null;
+                this.component = null;
+                this.parts = null;
+                return false;
+            }
+            this.visited = true;
+            return true;
+        }
+
+        @Override
+        public void visitBaseType(char descriptor) {
+            if (start()) {
+                this.done = TypeSignature.baseType(descriptor);
+            }
+        }
+
+        @Override
+        public void visitTypeVariable(String name) {
+            if (start()) {
+                this.done = TypeSignature.typeVariable(name);
+            }
+        }
+
+        @Override
+        public SignatureVisitor visitArrayType() {
+            Type builder = new Type();
+            if (start()) {
+                this.component = builder;
+            }
+            return builder;
+        }
+
+        @Override
+        public void visitClassType(String name) {
+            if (start()) {
+                this.parts = new ArrayList<>(1);
+                this.partName = name;
+                this.partArgs = new ArrayList<>(2);
+            }
+        }
+
+        @Override
+        public void visitInnerClassType(String name) {
+            if (this.partName != null) {
+                finishPart();
+                this.partName = name;
+                this.partArgs = new ArrayList<>(2);
+            }
+        }
+
+        @Override
+        public void visitTypeArgument() {
+            if (this.partArgs != null) {
+                this.partArgs.add(new Argument(TypeArgument.unbounded()));
+            }
+        }
+
+        @Override
+        public SignatureVisitor visitTypeArgument(char wildcard) {
+            Type builder = new Type();
+            if (this.partArgs != null) {
+                this.partArgs.add(new Argument(wildcard, builder));
+            }
+            return builder;
+        }
+
+        @Override
+        public void visitEnd() {
+            if (this.partName != null) {
+                finishPart();
+                this.done = new ClassType(ImmutableList.copyOf(this.parts));
+                this.parts = null;
+            }
+        }
+
+        private void finishPart() {
+            ImmutableList.Builder<TypeArgument> args = ImmutableList.builder();
+            for (Argument arg : this.partArgs) {
+                TypeArgument built = arg.build();
+                if (built == null) {
+                    // leave the type unfinished, so it builds to null
+                    this.partName = null;
+                    this.parts = null;
+                    return;
+                }
+                args.add(built);
+            }
+            this.parts.add(new SimpleClassType(this.partName, args.build()));
+            this.partName = null;
+            this.partArgs = null;
+        }
+
+        TypeSignature build() {
+            if (this.component != null) {
+                TypeSignature built = this.component.build();
+                return built == null ? null : TypeSignature.arrayOf(built);
+            }
+            return this.done;
+        }
+
+        ClassType buildClass() {
+            TypeSignature built = build();
+            return built instanceof ClassType ? (ClassType) built : null;
+        }
+    }
+
+    /**
+     * A type argument that is still being built.
+     */
+    private static final class Argument {
+        private final TypeArgument done;
+        private final char wildcard;
+        private final Type bound;
+
+        Argument(TypeArgument done) {
+            this.done = done;
+            this.wildcard = 0;
+            this.bound = null;
+        }
+
+        Argument(char wildcard, Type bound) {
+            this.done = null;
+            this.wildcard = wildcard;
+            this.bound = bound;
+        }
+
+        TypeArgument build() {
+            if (this.done != null) {
+                return this.done;
+            }
+            TypeSignature built = this.bound.build();
+            if (built == null || built instanceof TypeSignature.BaseType) {
+                return null;
+            }
+            return TypeArgument.of(this.wildcard, built);
+        }
+    }
+
+    /**
+     * A type parameter that is still being built.
+     */
+    private static final class Parameter {
+        private final String name;
+        private Type classBound;
+        private final List<Type> interfaceBounds = new ArrayList<>(1);
+
+        Parameter(String name) {
+            this.name = name;
+        }
+
+        TypeParameter build() {
+            TypeSignature bound = null;
+            if (this.classBound != null) {
+                bound = this.classBound.build();
+                if (bound == null) {
+                    return null;
+                }
+            }
+            List<TypeSignature> interfaces = buildAll(this.interfaceBounds);
+            if (interfaces == null) {
+                return null;
+            }
+            return TypeParameter.of(this.name, bound, interfaces);
+        }
+    }
+
+    private static List<TypeSignature> buildAll(List<Type> builders) {
+        ImmutableList.Builder<TypeSignature> built = ImmutableList.builder();
+        for (Type builder : builders) {
+            TypeSignature type = builder.build();
+            if (type == null) {
+                return null;
+            }
+            built.add(type);
+        }
+        return built.build();
+    }
+
+    /**
+     * Builds a class or method signature.
+     */
+    static final class Declaration extends SignatureBuilder {
+        private final List<Parameter> typeParameters = new ArrayList<>(2);
+        private Type superclass;
+        private final List<Type> interfaces = new ArrayList<>(2);
+        private final List<Type> parameters = new ArrayList<>(4);
+        private Type returnType;
+        private final List<Type> exceptions = new ArrayList<>(1);
+
+        @Override
+        public void visitFormalTypeParameter(String name) {
+            this.typeParameters.add(new Parameter(name));
+        }
+
+        @Override
+        public SignatureVisitor visitClassBound() {
+            Type builder = new Type();
+            Parameter param = lastParameter();
+            if (param != null) {
+                param.classBound = builder;
+            }
+            return builder;
+        }
+
+        @Override
+        public SignatureVisitor visitInterfaceBound() {
+            Type builder = new Type();
+            Parameter param = lastParameter();
+            if (param != null) {
+                param.interfaceBounds.add(builder);
+            }
+            return builder;
+        }
+
+        private Parameter lastParameter() {
+            int size = this.typeParameters.size();
+            return size == 0 ? null : this.typeParameters.get(size - 1);
+        }
+
+        @Override
+        public SignatureVisitor visitSuperclass() {
+            return this.superclass = new Type();
+        }
+
+        @Override
+        public SignatureVisitor visitInterface() {
+            Type builder = new Type();
+            this.interfaces.add(builder);
+            return builder;
+        }
+
+        @Override
+        public SignatureVisitor visitParameterType() {
+            Type builder = new Type();
+            this.parameters.add(builder);
+            return builder;
+        }
+
+        @Override
+        public SignatureVisitor visitReturnType() {
+            return this.returnType = new Type();
+        }
+
+        @Override
+        public SignatureVisitor visitExceptionType() {
+            Type builder = new Type();
+            this.exceptions.add(builder);
+            return builder;
+        }
+
+        private List<TypeParameter> buildTypeParameters() {
+            ImmutableList.Builder<TypeParameter> built =
+                            ImmutableList.builder();
+            for (Parameter param : this.typeParameters) {
+                TypeParameter p = param.build();
+                if (p == null) {
+                    return null;
+                }
+                built.add(p);
+            }
+            return built.build();
+        }
+
+        ClassSignature buildClass() {
+            if (this.superclass == null || this.returnType != null
+                            || !this.parameters.isEmpty()) {
+                return null;
+            }
+            List<TypeParameter> params = buildTypeParameters();
+            ClassType superType = this.superclass.buildClass();
+            ImmutableList.Builder<ClassType> interfaces =
+                            ImmutableList.builder();
+            for (Type builder : this.interfaces) {
+                ClassType type = builder.buildClass();
+                if (type == null) {
+                    return null;
+                }
+                interfaces.add(type);
+            }
+            if (params == null || superType == null) {
+                return null;
+            }
+            return ClassSignature.of(params, superType, interfaces.build());
+        }
+
+        MethodSignature buildMethod() {
+            if (this.returnType == null || this.superclass != null) {
+                return null;
+            }
+            List<TypeParameter> params = buildTypeParameters();
+            List<TypeSignature> parameters = buildAll(this.parameters);
+            TypeSignature returnType = this.returnType.build();
+            List<TypeSignature> exceptions = buildAll(this.exceptions);
+            if (params == null || parameters == null || returnType == null
+                            || exceptions == null) {
+                return null;
+            }
+            return MethodSignature.of(params, parameters, returnType,
+                            exceptions);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.techshroom.hendrix.signature;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import org.objectweb.asm.signature.SignatureVisitor;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A formal type parameter of a class or method, such as
+ * {@code T extends Number & Comparable<T>}.
+ * 
+ * @author Kenzie Togami
+ */
+public final class TypeParameter {
+    /**
+     * Creates a type parameter.
+     * 
+     * @param name - The name of the parameter
+     * @param classBound - The class bound, may be {@code null} when there are
+     *        only interface bounds
+     * @param interfaceBounds - The interface bounds
+     * @return The type parameter
+     */
+    public static TypeParameter of(String name, TypeSignature classBound,
+                    List<? extends TypeSignature> interfaceBounds) {
+        return new TypeParameter(checkNotNull(name, "name"), classBound,
+                        ImmutableList.copyOf(interfaceBounds));
+    }
+
+    private final String name;
+    private final TypeSignature classBound;
+    private final List<TypeSignature> interfaceBounds;
+
+    private TypeParameter(String name, TypeSignature classBound,
+                    List<TypeSignature> interfaceBounds) {
+        this.name = name;
+        this.classBound = classBound;
+        this.interfaceBounds = interfaceBounds;
+    }
+
+    /**
+     * Gets the name of the parameter.
+     * 
+     * @return The name of the parameter
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the class bound, {@code null} if there are only interface bounds.
+     * 
+     * @return The class bound
+     */
+    public TypeSignature getClassBound() {
+        return this.classBound;
+    }
+
+    /**
+     * Gets the interface bounds.
+     * 
+     * @return The interface bounds
+     */
+    public List<TypeSignature> getInterfaceBounds() {
+        return this.interfaceBounds;
+    }
+
+    void accept(SignatureVisitor visitor) {
+        visitor.visitFormalTypeParameter(this.name);
+        if (this.classBound != null) {
+            this.classBound.accept(visitor.visitClassBound());
+        }
+        for (TypeSignature bound : this.interfaceBounds) {
+            bound.accept(visitor.visitInterfaceBound());
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TypeParameter)) {
+            return false;
+        }
+        TypeParameter other = (TypeParameter) obj;
+        return this.name.equals(other.name)
+                        && (this.classBound == null ? other.classBound == null
+                                        : this.classBound
+                                                        .equals(other.classBound))
+                        && this.interfaceBounds.equals(other.interfaceBounds);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.name.hashCode();
+        hash = hash * 31
+                        + (this.classBound == null ? 0 : this.classBound
+                                        .hashCode());
+        return hash * 31 + this.interfaceBounds.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(this.name).append(':');
+        if (this.classBound != null) {
+            out.append(this.classBound);
+        }
+        for (TypeSignature bound : this.interfaceBounds) {
+            out.append(':').append(bound);
+        }
+        return out.toString();
+    }
+}
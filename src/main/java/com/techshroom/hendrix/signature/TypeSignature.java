@@ -0,0 +1,599 @@
+package com.techshroom.hendrix.signature;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+import org.objectweb.asm.signature.SignatureWriter;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+
+/**
+ * A Java type signature, as defined by JVMS 4.7.9.1. This is either a base
+ * type, a class type, a type variable or an array type. Signatures are read
+ * from and written to visitors, so they can be streamed straight through a
+ * {@link SignatureReader} or into a {@link SignatureWriter}.
+ * 
+ * @author Kenzie Togami
+ */
+public abstract class TypeSignature {
+    /**
+     * Parses a field or type signature. Erased field descriptors are valid
+     * type signatures too.
+     * 
+     * @param signature - The signature to parse
+     * @return The parsed signature
+     * @throws IllegalArgumentException if the signature is invalid
+     */
+    public static TypeSignature parse(String signature) {
+        SignatureBuilder.Type builder = new SignatureBuilder.Type();
+        try {
+            new SignatureReader(checkNotNull(signature, "signature"))
+                            .acceptType(builder);
+        } catch (RuntimeException e) {
+            throw SignatureBuilder.invalid(signature, e);
+        }
+        TypeSignature type = builder.build();
+        if (type instanceof BaseType
+                        && ((BaseType) type).getDescriptor() == 'V') {
+            type = null;
+        }
+        return SignatureBuilder.checkComplete(signature, type);
+    }
+
+    /**
+     * Converts a class descriptor to a type signature. The generic of the
+     * descriptor, if any, becomes the only type argument.
+     * 
+     * @param descriptor - The descriptor to convert
+     * @return The type signature
+     * @throws IllegalArgumentException if the generic is a primitive type
+     */
+    public static TypeSignature fromDescriptor(ClassDescriptor descriptor) {
+        TypeSignature type;
+        if (descriptor.isPrimitive()) {
+            type = baseType(descriptor.getType());
+        } else {
+            ImmutableList<TypeArgument> args = ImmutableList.of();
+            if (descriptor.getGeneric().isPresent()) {
+                TypeSignature generic =
+                                fromDescriptor(descriptor.getGeneric().get());
+                args = ImmutableList.of(TypeArgument.exact(generic));
+            }
+            type = new ClassType(ImmutableList.of(new SimpleClassType(
+                            descriptor.getInternalName(), args)));
+        }
+        for (int i = 0; i < descriptor.getArrayDepth(); i++) {
+            type = arrayOf(type);
+        }
+        return type;
+    }
+
+    /**
+     * Creates a base type, or {@code void} for method return types.
+     * 
+     * @param descriptor - The descriptor character of the type
+     * @return The base type
+     */
+    public static BaseType baseType(char descriptor) {
+        checkArgument("BCDFIJSZV".indexOf(descriptor) >= 0,
+                        "not a base type: %s", descriptor);
+        return new BaseType(descriptor);
+    }
+
+    /**
+     * Creates a top level class type.
+     * 
+     * @param internalName - The internal name of the class
+     * @param args - The type arguments
+     * @return The class type
+     */
+    public static ClassType classType(String internalName,
+                    TypeArgument... args) {
+        return new ClassType(ImmutableList.of(new SimpleClassType(
+                        internalName, ImmutableList.copyOf(args))));
+    }
+
+    /**
+     * Creates a type variable.
+     * 
+     * @param name - The name of the type variable
+     * @return The type variable
+     */
+    public static TypeVariable typeVariable(String name) {
+        return new TypeVariable(checkNotNull(name, "name"));
+    }
+
+    /**
+     * Creates an array type.
+     * 
+     * @param component - The component type of the array
+     * @return The array type
+     */
+    public static ArrayType arrayOf(TypeSignature component) {
+        return new ArrayType(checkNotNull(component, "component"));
+    }
+
+    TypeSignature() {}
+
+    /**
+     * Sends this signature to {@code visitor}.
+     * 
+     * @param visitor - The visitor to send this signature to
+     */
+    public abstract void accept(SignatureVisitor visitor);
+
+    /**
+     * Converts this signature back to a class descriptor, if it fits in one.
+     * Only base types, and class types with at most one exact type argument
+     * on the last class, fit.
+     * 
+     * @return The class descriptor, if this signature fits in one
+     */
+    public abstract Optional<ClassDescriptor> toDescriptor();
+
+    /**
+     * Gets the erased descriptor of this type. Type variables are erased to
+     * {@code java.lang.Object}, as their bounds aren't known here.
+     * 
+     * @return The erased descriptor of this type
+     */
+    public abstract String getErasedDescriptor();
+
+    /**
+     * Writes this signature in class file form.
+     */
+    @Override
+    public final String toString() {
+        SignatureWriter writer = new SignatureWriter();
+        accept(writer);
+        return writer.toString();
+    }
+
+    /**
+     * A primitive type, or {@code void}.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class BaseType extends TypeSignature {
+        private final char descriptor;
+
+        BaseType(char descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        /**
+         * Gets the descriptor character of this type.
+         * 
+         * @return The descriptor character of this type
+         */
+        public char getDescriptor() {
+            return this.descriptor;
+        }
+
+        @Override
+        public void accept(SignatureVisitor visitor) {
+            visitor.visitBaseType(this.descriptor);
+        }
+
+        @Override
+        public Optional<ClassDescriptor> toDescriptor() {
+            return Optional.of(ClassDescriptor.create(0, this.descriptor, "",
+                            null));
+        }
+
+        @Override
+        public String getErasedDescriptor() {
+            return String.valueOf(this.descriptor);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof BaseType
+                            && ((BaseType) obj).descriptor == this.descriptor;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.descriptor;
+        }
+    }
+
+    /**
+     * A class type. The first part holds the package qualified name of the
+     * outermost class, every following part holds the simple name of an inner
+     * class, such as {@code Outer<T>.Inner<U>}.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class ClassType extends TypeSignature {
+        private final List<SimpleClassType> parts;
+
+        ClassType(List<SimpleClassType> parts) {
+            checkArgument(!parts.isEmpty(), "no class parts");
+            this.parts = parts;
+        }
+
+        /**
+         * Gets the parts of this type, outermost first.
+         * 
+         * @return The parts of this type
+         */
+        public List<SimpleClassType> getParts() {
+            return this.parts;
+        }
+
+        /**
+         * Gets the type arguments of the innermost class.
+         * 
+         * @return The type arguments of the innermost class
+         */
+        public List<TypeArgument> getTypeArguments() {
+            return this.parts.get(this.parts.size() - 1).getTypeArguments();
+        }
+
+        /**
+         * Gets the internal name of the class, with inner classes joined by
+         * {@code $}.
+         * 
+         * @return The internal name of the class
+         */
+        public String getInternalName() {
+            if (this.parts.size() == 1) {
+                return this.parts.get(0).getName();
+            }
+            StringBuilder name = new StringBuilder();
+            for (SimpleClassType part : this.parts) {
+                if (name.length() > 0) {
+                    name.append('$');
+                }
+                name.append(part.getName());
+            }
+            return name.toString();
+        }
+
+        /**
+         * Returns a copy of this type with {@code args} as the type arguments
+         * of the innermost class.
+         * 
+         * @param args - The new type arguments
+         * @return The new type
+         */
+        public ClassType withTypeArguments(List<TypeArgument> args) {
+            int last = this.parts.size() - 1;
+            ImmutableList.Builder<SimpleClassType> parts =
+                            ImmutableList.builder();
+            parts.addAll(this.parts.subList(0, last));
+            parts.add(new SimpleClassType(this.parts.get(last).getName(),
+                            ImmutableList.copyOf(args)));
+            return new ClassType(parts.build());
+        }
+
+        @Override
+        public void accept(SignatureVisitor visitor) {
+            for (int i = 0; i < this.parts.size(); i++) {
+                SimpleClassType part = this.parts.get(i);
+                if (i == 0) {
+                    visitor.visitClassType(part.getName());
+                } else {
+                    visitor.visitInnerClassType(part.getName());
+                }
+                for (TypeArgument arg : part.getTypeArguments()) {
+                    arg.accept(visitor);
+                }
+            }
+            visitor.visitEnd();
+        }
+
+        @Override
+        public Optional<ClassDescriptor> toDescriptor() {
+            for (int i = 0; i < this.parts.size() - 1; i++) {
+                if (!this.parts.get(i).getTypeArguments().isEmpty()) {
+                    return Optional.absent();
+                }
+            }
+            List<TypeArgument> args = getTypeArguments();
+            ClassDescriptor generic = null;
+            if (args.size() > 1) {
+                return Optional.absent();
+            } else if (args.size() == 1) {
+                TypeArgument arg = args.get(0);
+                if (arg.getWildcard() != SignatureVisitor.INSTANCEOF) {
+                    return Optional.absent();
+                }
+                Optional<ClassDescriptor> converted =
+                                arg.getBound().toDescriptor();
+                if (!converted.isPresent()) {
+                    return Optional.absent();
+                }
+                generic = converted.get();
+            }
+            return Optional.of(ClassDescriptor.create(0, 'L',
+                            getInternalName(), generic));
+        }
+
+        @Override
+        public String getErasedDescriptor() {
+            return "L" + getInternalName() + ";";
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ClassType
+                            && ((ClassType) obj).parts.equals(this.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.parts.hashCode();
+        }
+    }
+
+    /**
+     * One class of a {@link ClassType}, with its type arguments.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class SimpleClassType {
+        private final String name;
+        private final List<TypeArgument> typeArguments;
+
+        SimpleClassType(String name, List<TypeArgument> typeArguments) {
+            this.name = checkNotNull(name, "name");
+            this.typeArguments = typeArguments;
+        }
+
+        /**
+         * Gets the name of the class. This is the internal name for the
+         * outermost class, and the simple name for inner classes.
+         * 
+         * @return The name of the class
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Gets the type arguments of the class.
+         * 
+         * @return The type arguments of the class
+         */
+        public List<TypeArgument> getTypeArguments() {
+            return this.typeArguments;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SimpleClassType)) {
+                return false;
+            }
+            SimpleClassType other = (SimpleClassType) obj;
+            return this.name.equals(other.name)
+                            && this.typeArguments.equals(other.typeArguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.name.hashCode() * 31 + this.typeArguments.hashCode();
+        }
+    }
+
+    /**
+     * A reference to a type variable, such as {@code T}.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class TypeVariable extends TypeSignature {
+        private final String name;
+
+        TypeVariable(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of the type variable.
+         * 
+         * @return The name of the type variable
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public void accept(SignatureVisitor visitor) {
+            visitor.visitTypeVariable(this.name);
+        }
+
+        @Override
+        public Optional<ClassDescriptor> toDescriptor() {
+            return Optional.absent();
+        }
+
+        @Override
+        public String getErasedDescriptor() {
+            return "Ljava/lang/Object;";
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TypeVariable
+                            && ((TypeVariable) obj).name.equals(this.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.name.hashCode();
+        }
+    }
+
+    /**
+     * An array type.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class ArrayType extends TypeSignature {
+        private final TypeSignature component;
+
+        ArrayType(TypeSignature component) {
+            this.component = component;
+        }
+
+        /**
+         * Gets the component type of the array.
+         * 
+         * @return The component type of the array
+         */
+        public TypeSignature getComponent() {
+            return this.component;
+        }
+
+        @Override
+        public void accept(SignatureVisitor visitor) {
+            this.component.accept(visitor.visitArrayType());
+        }
+
+        @Override
+        public Optional<ClassDescriptor> toDescriptor() {
+            Optional<ClassDescriptor> component = this.component.toDescriptor();
+            if (!component.isPresent()) {
+                return Optional.absent();
+            }
+            ClassDescriptor c = component.get();
+            return Optional.of(ClassDescriptor.create(c.getArrayDepth() + 1,
+                            c.getType(), c.getInternalName(), c.getGeneric()
+                                            .orNull()));
+        }
+
+        @Override
+        public String getErasedDescriptor() {
+            return "[" + this.component.getErasedDescriptor();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ArrayType
+                            && ((ArrayType) obj).component
+                                            .equals(this.component);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 + this.component.hashCode();
+        }
+    }
+
+    /**
+     * A type argument of a class type. The wildcard is one of the
+     * {@link SignatureVisitor} constants: {@code =} for an exact type,
+     * {@code +} for {@code ? extends}, {@code -} for {@code ? super}, or
+     * {@code *} for an unbounded {@code ?}, which has no bound.
+     * 
+     * @author Kenzie Togami
+     */
+    public static final class TypeArgument {
+        private static final TypeArgument UNBOUNDED = new TypeArgument('*',
+                        null);
+
+        /**
+         * Gets the unbounded wildcard, {@code ?}.
+         * 
+         * @return The unbounded wildcard
+         */
+        public static TypeArgument unbounded() {
+            return UNBOUNDED;
+        }
+
+        /**
+         * Creates an exact type argument.
+         * 
+         * @param type - The type
+         * @return The type argument
+         */
+        public static TypeArgument exact(TypeSignature type) {
+            return of(SignatureVisitor.INSTANCEOF, type);
+        }
+
+        /**
+         * Creates a type argument.
+         * 
+         * @param wildcard - One of {@code =}, {@code +} or {@code -}
+         * @param bound - The bound of the argument
+         * @return The type argument
+         */
+        public static TypeArgument of(char wildcard, TypeSignature bound) {
+            checkArgument(wildcard == SignatureVisitor.INSTANCEOF
+                            || wildcard == SignatureVisitor.EXTENDS
+                            || wildcard == SignatureVisitor.SUPER,
+                            "not a bounded wildcard: %s", wildcard);
+            checkArgument(!(bound instanceof BaseType),
+                            "type arguments must be reference types");
+            return new TypeArgument(wildcard, checkNotNull(bound, "bound"));
+        }
+
+        private final char wildcard;
+        private final TypeSignature bound;
+
+        private TypeArgument(char wildcard, TypeSignature bound) {
+            this.wildcard = wildcard;
+            this.bound = bound;
+        }
+
+        /**
+         * Gets the wildcard character.
+         * 
+         * @return The wildcard character
+         */
+        public char getWildcard() {
+            return this.wildcard;
+        }
+
+        /**
+         * Gets the bound, {@code null} for the unbounded wildcard.
+         * 
+         * @return The bound
+         */
+        public TypeSignature getBound() {
+            return this.bound;
+        }
+
+        void accept(SignatureVisitor visitor) {
+            if (this.bound == null) {
+                visitor.visitTypeArgument();
+            } else {
+                this.bound.accept(visitor.visitTypeArgument(this.wildcard));
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TypeArgument)) {
+                return false;
+            }
+            TypeArgument other = (TypeArgument) obj;
+            return this.wildcard == other.wildcard
+                            && (this.bound == null ? other.bound == null
+                                            : this.bound.equals(other.bound));
+        }
+
+        @Override
+        public int hashCode() {
+            return this.wildcard * 31
+                            + (this.bound == null ? 0 : this.bound.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            if (this.bound == null) {
+                return "*";
+            } else if (this.wildcard == SignatureVisitor.INSTANCEOF) {
+                return this.bound.toString();
+            }
+            return this.wildcard + this.bound.toString();
+        }
+    }
+}
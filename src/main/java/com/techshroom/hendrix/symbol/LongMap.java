@@ -0,0 +1,161 @@
+package com.techshroom.hendrix.symbol;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A hash map from primitive {@code long} keys to objects, usually keyed by
+ * {@link SymbolTable} IDs or {@linkplain SymbolTable#pair(int, int) pairs} of
+ * them. Keys are never boxed. {@code null} values are not allowed. This map
+ * is not thread-safe.
+ * 
+ * @author Kenzie Togami
+ * @param <V> The value type
+ */
+public final class LongMap<V> {
+    /**
+     * Creates a new, empty map.
+     * 
+     * @param <V> The value type
+     * @return The new map
+     */
+    public static <V> LongMap<V> create() {
+        return new LongMap<>(16);
+    }
+
+    /**
+     * Creates a new, empty map with room for {@code expectedSize} entries.
+     * 
+     * @param <V> The value type
+     * @param expectedSize - The number of entries expected
+     * @return The new map
+     */
+    public static <V> LongMap<V> withExpectedSize(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return new LongMap<>(capacity);
+    }
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    private LongMap(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+    }
+
+    private static int spread(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int find(long key) {
+        int mask = this.keys.length - 1;
+        for (int slot = spread(key) & mask;; slot = (slot + 1) & mask) {
+            if (this.values[slot] == null || this.keys[slot] == key) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Gets the value for {@code key}.
+     * 
+     * @param key - The key
+     * @return The value, or {@code null} if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) this.values[find(key)];
+    }
+
+    /**
+     * Checks if there is a value for {@code key}.
+     * 
+     * @param key - The key
+     * @return {@code true} if there is a value for {@code key}
+     */
+    public boolean containsKey(long key) {
+        return this.values[find(key)] != null;
+    }
+
+    /**
+     * Sets the value for {@code key}.
+     * 
+     * @param key - The key
+     * @param value - The value
+     * @return The previous value, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        checkNotNull(value, "value");
+        int slot = find(key);
+        Object old = this.values[slot];
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (old == null && ++this.size * 2 > this.keys.length) {
+            rehash();
+        }
+        return (V) old;
+    }
+
+    /**
+     * Gets the number of entries.
+     * 
+     * @return The number of entries
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the key stored in {@code slot}. Slots run from {@code 0} up to
+     * {@link #capacity()}, and only hold a key when
+     * {@link #valueAt(int)} isn't {@code null}.
+     * 
+     * @param slot - The slot
+     * @return The key in the slot
+     */
+    public long keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    /**
+     * Gets the value stored in {@code slot}.
+     * 
+     * @param slot - The slot
+     * @return The value in the slot, or {@code null} if the slot is empty
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) this.values[slot];
+    }
+
+    /**
+     * Gets the number of slots, for iterating with {@link #keyAt(int)} and
+     * {@link #valueAt(int)}.
+     * 
+     * @return The number of slots
+     */
+    public int capacity() {
+        return this.keys.length;
+    }
+
+    private void rehash() {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new Object[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = find(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+}
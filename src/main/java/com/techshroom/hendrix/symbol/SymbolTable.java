@@ -0,0 +1,304 @@
+package com.techshroom.hendrix.symbol;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+
+/**
+ * Interns names into dense {@code int} IDs, starting at {@code 0}. The names
+ * are kept as modified UTF-8 in one shared byte array rather than as
+ * {@link String}s, so a symbol costs its bytes plus a few ints. Two names are
+ * equal exactly when their IDs are, and pairs of IDs can be packed into a
+ * {@code long} with {@link #pair(int, int)} to key a {@link LongMap}.
+ * 
+ * <p>
+ * One table is shared by a whole run through {@link #global()}. Tables are
+ * thread-safe. Only {@link #intern(CharSequence)} locks: reads go through an
+ * immutable snapshot that each new symbol publishes, so lookups from many
+ * threads never wait on each other.
+ * </p>
+ * 
+ * @author Kenzie Togami
+ */
+public final class SymbolTable {
+    /**
+     * The ID returned by {@link #lookup(CharSequence)} for unknown names.
+     */
+    public static final int NO_SYMBOL = -1;
+    private static final SymbolTable GLOBAL = create();
+
+    /**
+     * Gets the table shared by the whole run.
+     * 
+     * @return The run-wide table
+     */
+    public static SymbolTable global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Creates a new, empty table.
+     * 
+     * @return The new table
+     */
+    public static SymbolTable create() {
+        return new SymbolTable();
+    }
+
+    /**
+     * Packs two IDs into one {@code long} key.
+     * 
+     * @param first - The first ID, in the high bits
+     * @param second - The second ID, in the low bits
+     * @return The packed key
+     */
+    public static long pair(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The symbols visible to readers. The arrays are only appended to past
+     * {@link #size}, or replaced by copies, so everything a snapshot can see
+     * stays as it was when the snapshot was published.
+     */
+    private static final class Snapshot {
+        private final byte[] data;
+        /**
+         * End offset in {@link #data} of every symbol, by ID.
+         */
+        private final int[] ends;
+        private final int[] hashes;
+        /**
+         * Open addressing table of {@code ID + 1}, {@code 0} marks an empty
+         * slot. Slots for IDs past {@link #size} count as empty.
+         */
+        private final int[] slots;
+        private final int size;
+
+        Snapshot(byte[] data, int[] ends, int[] hashes, int[] slots, int size) {
+            this.data = data;
+            this.ends = ends;
+            this.hashes = hashes;
+            this.slots = slots;
+            this.size = size;
+        }
+
+        int start(int id) {
+            return id == 0 ? 0 : this.ends[id - 1];
+        }
+
+        /**
+         * Finds the slot holding {@code name}, or the empty slot it would go
+         * in.
+         */
+        int find(CharSequence name, int hash) {
+            int mask = this.slots.length - 1;
+            for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+                int id = this.slots[slot] - 1;
+                if (id < 0 || id >= this.size) {
+                    return slot;
+                }
+                if (this.hashes[id] == hash && matches(id, name)) {
+                    return slot;
+                }
+            }
+        }
+
+        /**
+         * Gets the ID in {@code slot}, or {@link #NO_SYMBOL} if it is empty.
+         */
+        int idAt(int slot) {
+            int id = this.slots[slot] - 1;
+            return id < this.size ? id : NO_SYMBOL;
+        }
+
+        private boolean matches(int id, CharSequence name) {
+            int i = start(id);
+            int end = this.ends[id];
+            int c = 0;
+            byte[] b = this.data;
+            for (; i < end && c < name.length(); c++) {
+                int x = b[i++] & 0xFF;
+                char decoded;
+                if (x < 0x80) {
+                    decoded = (char) x;
+                } else if (x < 0xE0) {
+                    decoded = (char) (((x & 0x1F) << 6) | (b[i++] & 0x3F));
+                } else {
+                    int high = (x & 0x0F) << 12;
+                    int middle = (b[i++] & 0x3F) << 6;
+                    decoded = (char) (high | middle | (b[i++] & 0x3F));
+                }
+                if (decoded != name.charAt(c)) {
+                    return false;
+                }
+            }
+            return i == end && c == name.length();
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(new byte[4096],
+                    new int[256], new int[256], new int[512], 0);
+    /**
+     * Bytes used in the snapshot's data, only touched while locked.
+     */
+    private int dataSize;
+
+    private SymbolTable() {}
+
+    /**
+     * Gets the ID of {@code name}, adding it if it isn't in the table.
+     * 
+     * @param name - The name to intern
+     * @return The ID of the name
+     */
+    public int intern(CharSequence name) {
+        int hash = hash(checkNotNull(name, "name"));
+        int id = lookup(this.snapshot, name, hash);
+        if (id != NO_SYMBOL) {
+            return id;
+        }
+        synchronized (this) {
+            Snapshot current = this.snapshot;
+            int slot = current.find(name, hash);
+            id = current.idAt(slot);
+            if (id != NO_SYMBOL) {
+                return id;
+            }
+            this.snapshot = add(current, slot, name, hash);
+            return current.size;
+        }
+    }
+
+    /**
+     * Gets the ID of {@code name} without adding it.
+     * 
+     * @param name - The name to look up
+     * @return The ID of the name, or {@link #NO_SYMBOL} if it isn't in the
+     *         table
+     */
+    public int lookup(CharSequence name) {
+        return lookup(this.snapshot, checkNotNull(name, "name"), hash(name));
+    }
+
+    private static int lookup(Snapshot snapshot, CharSequence name, int hash) {
+        return snapshot.idAt(snapshot.find(name, hash));
+    }
+
+    /**
+     * Gets the name with the given ID.
+     * 
+     * @param id - The ID of the name
+     * @return The name
+     */
+    public String get(int id) {
+        Snapshot snapshot = this.snapshot;
+        checkElementIndex(id, snapshot.size, "symbol id");
+        int start = snapshot.start(id);
+        return decode(snapshot.data, start, snapshot.ends[id] - start);
+    }
+
+    /**
+     * Gets the number of names in the table.
+     * 
+     * @return The number of names in the table
+     */
+    public int size() {
+        return this.snapshot.size;
+    }
+
+    private static int hash(CharSequence name) {
+        if (name instanceof String) {
+            // cached by String
+            return name.hashCode();
+        }
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        return hash ^ (hash >>> 13);
+    }
+
+    /**
+     * Adds {@code name} into the empty {@code slot} of {@code current}, and
+     * returns the snapshot that includes it. Must hold the lock.
+     */
+    private Snapshot add(Snapshot current, int slot, CharSequence name,
+                    int hash) {
+        int id = current.size;
+        int[] ends = current.ends;
+        int[] hashes = current.hashes;
+        if (id == ends.length) {
+            ends = Arrays.copyOf(ends, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        byte[] b = current.data;
+        int needed = this.dataSize + name.length() * 3;
+        if (needed > b.length) {
+            b = Arrays.copyOf(b, Math.max(needed, b.length * 2));
+        }
+        int pos = this.dataSize;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x01 && c < 0x80) {
+                b[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xC0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                b[pos++] = (byte) (0xE0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        this.dataSize = pos;
+        ends[id] = pos;
+        hashes[id] = hash;
+        int size = id + 1;
+        int[] slots = current.slots;
+        // older snapshots see this as empty, since it's past their size
+        slots[slot] = size;
+        if (size * 2 > slots.length) {
+            slots = rehash(hashes, size, slots.length * 2);
+        }
+        return new Snapshot(b, ends, hashes, slots, size);
+    }
+
+    private static int[] rehash(int[] hashes, int size, int length) {
+        int[] slots = new int[length];
+        int mask = length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+        return slots;
+    }
+
+    private static String decode(byte[] b, int start, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        for (int i = start, end = start + length; i < end;) {
+            int c = b[i++] & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if (c < 0xE0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (b[i++] & 0x3F));
+            } else {
+                int high = (c & 0x0F) << 12;
+                int middle = (b[i++] & 0x3F) << 6;
+                chars[count++] = (char) (high | middle | (b[i++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
@@ -0,0 +1,274 @@
+package com.techshroom.hendrix.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.techshroom.hendrix.SharedData;
+import com.techshroom.hendrix.classfile.ClassHeader;
+import com.techshroom.hendrix.classfile.ConstantPool;
+import com.techshroom.hendrix.classfile.SignaturePatcher;
+import com.techshroom.hendrix.classfile.SignatureRemapper;
+
+/**
+ * Tests for the {@code classfile} package.
+ * 
+ * @author Kenzie Togami
+ */
+public class ClassFileTest implements TestConstants {
+    private static final String TEST1 = CLASSES_FOLDER
+                    + "/com/techshroom/hendrix/Test1.class";
+
+    /**
+     * Tests that the class name read from the constant pool matches ASM.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void readsClassName() throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get(TEST1));
+        assertEquals(new ClassReader(bytes).getClassName(),
+                        ConstantPool.readClassName(bytes));
+    }
+
+    /**
+     * Tests that non-class data is refused.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesNonClass() throws Exception {
+        ConstantPool.readClassName(new byte[16]);
+    }
+
+    /**
+     * Tests that the patcher adds, replaces and removes signatures, and leaves
+     * everything else readable.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void patchesSignatures() throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get(TEST1));
+        byte[] patched = SignaturePatcher.patch(bytes, new SignatureRemapper() {
+            @Override
+            public String classSignature(String name, String superName,
+                            String[] interfaces, String signature) {
+                assertEquals("java/lang/Object", superName);
+                return "Ljava/lang/Object;Ljava/lang/Comparable<L" + name
+                                + ";>;";
+            }
+
+            @Override
+            public String fieldSignature(String name, String desc,
+                            String signature) {
+                if (name.equals("object")) {
+                    return "Ljava/util/List<Ljava/lang/String;>;";
+                } else if (name.equals("objectList")) {
+                    return null;
+                }
+                return signature;
+            }
+
+            @Override
+            public String methodSignature(String name, String desc,
+                            String signature) {
+                return signature;
+            }
+        });
+        assertNotNull(patched);
+        Map<String, String> signatures = readSignatures(patched);
+        assertEquals("Ljava/lang/Object;Ljava/lang/Comparable<Lcom/techshroom/hendrix/Test1;>;",
+                        signatures.get("class"));
+        assertEquals("Ljava/util/List<Ljava/lang/String;>;",
+                        signatures.get("object"));
+        assertNull(signatures.get("objectList"));
+        assertEquals("Ljava/util/List<Lcom/techshroom/hendrix/Test1;>;",
+                        signatures.get("test1List"));
+        assertEquals("()Ljava/util/List<Ljava/lang/Object;>;",
+                        signatures.get("getObjectList"));
+        assertEquals(signatures.get("class"), ClassHeader.read(patched)
+                        .getSignature().orNull());
+    }
+
+    /**
+     * Tests that the header matches ASM.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void readsHeader() throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get(TEST1));
+        ClassReader reader = new ClassReader(bytes);
+        ClassHeader header = ClassHeader.read(bytes);
+        assertEquals(reader.getClassName(), header.getName());
+        assertEquals(reader.getSuperName(), header.getSuperName().orNull());
+        assertEquals(Arrays.asList(reader.getInterfaces()),
+                        header.getInterfaces());
+        assertEquals(reader.getAccess(), header.getAccess());
+        assertFalse(header.getSignature().isPresent());
+    }
+
+    /**
+     * Tests that the patcher hands back the same bytes when nothing changes.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void patcherKeepsUnchangedClass() throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get(TEST1));
+        assertSame(bytes, SignaturePatcher.patch(bytes,
+                        new SignatureRemapper() {
+                            @Override
+                            public String classSignature(String name,
+                                            String superName,
+                                            String[] interfaces,
+                                            String signature) {
+                                return signature;
+                            }
+
+                            @Override
+                            public String fieldSignature(String name,
+                                            String desc, String signature) {
+                                return signature;
+                            }
+
+                            @Override
+                            public String methodSignature(String name,
+                                            String desc, String signature) {
+                                return signature;
+                            }
+                        }));
+    }
+
+    /**
+     * Tests that a Signature attribute is found even when its name is a
+     * second "Signature" entry in the pool, and is replaced rather than
+     * added to.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void patcherFindsDuplicateSignatureName() throws Exception {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "test/Dup", null,
+                        "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PUBLIC, "names", "Ljava/util/List;",
+                        "Ljava/util/List<Ljava/lang/Object;>;", null)
+                        .visitEnd();
+        writer.visitEnd();
+        byte[] bytes = writer.toByteArray();
+        ConstantPool pool = ConstantPool.read(bytes);
+        int first = pool.indexOfUtf8("Signature");
+        int second = pool.getCount();
+        // append a second "Signature" and name the attribute with it
+        byte[] name = "Signature".getBytes(StandardCharsets.UTF_8);
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.write(bytes, 0, 8);
+        out.writeShort(second + 1);
+        out.write(bytes, 10, pool.getEnd() - 10);
+        out.writeByte(1);
+        out.writeShort(name.length);
+        out.write(name);
+        out.write(bytes, pool.getEnd(), bytes.length - pool.getEnd());
+        byte[] duplicate = out.toByteArray();
+        int attribute = -1;
+        for (int i = pool.getEnd() + 3 + name.length; i + 6 <= duplicate.length; i++) {
+            if (duplicate[i] == (byte) (first >> 8)
+                            && duplicate[i + 1] == (byte) first
+                            && duplicate[i + 2] == 0 && duplicate[i + 3] == 0
+                            && duplicate[i + 4] == 0 && duplicate[i + 5] == 2) {
+                attribute = i;
+                break;
+            }
+        }
+        assertTrue(attribute > 0);
+        duplicate[attribute] = (byte) (second >> 8);
+        duplicate[attribute + 1] = (byte) second;
+        assertEquals("Ljava/util/List<Ljava/lang/Object;>;",
+                        readSignatures(duplicate).get("names"));
+        final String newSignature = "Ljava/util/List<Ljava/lang/String;>;";
+        final List<String> seen = new ArrayList<>();
+        byte[] patched =
+                        SignaturePatcher.patch(duplicate,
+                                        new SignatureRemapper() {
+                                            @Override
+                                            public String classSignature(
+                                                            String name,
+                                                            String superName,
+                                                            String[] interfaces,
+                                                            String signature) {
+                                                return signature;
+                                            }
+
+                                            @Override
+                                            public String fieldSignature(
+                                                            String name,
+                                                            String desc,
+                                                            String signature) {
+                                                seen.add(signature);
+                                                return newSignature;
+                                            }
+
+                                            @Override
+                                            public String methodSignature(
+                                                            String name,
+                                                            String desc,
+                                                            String signature) {
+                                                return signature;
+                                            }
+                                        });
+        assertEquals(Arrays.asList("Ljava/util/List<Ljava/lang/Object;>;"),
+                        seen);
+        assertEquals(newSignature, readSignatures(patched).get("names"));
+        // one new pool entry, and no second attribute
+        assertEquals(duplicate.length + 3 + newSignature.length(),
+                        patched.length);
+    }
+
+    private static Map<String, String> readSignatures(byte[] bytes) {
+        final Map<String, String> signatures = new HashMap<>();
+        // reads the code too, so broken offsets would show up here
+        new ClassReader(bytes).accept(new ClassVisitor(SharedData.ASM_VERSION) {
+            @Override
+            public void visit(int version, int access, String name,
+                            String signature, String superName,
+                            String[] interfaces) {
+                signatures.put("class", signature);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name,
+                            String desc, String signature, Object value) {
+                signatures.put(name, signature);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name,
+                            String desc, String signature,
+                            String[] exceptions) {
+                signatures.put(name, signature);
+                return new MethodVisitor(SharedData.ASM_VERSION) {};
+            }
+        }, SharedData.NO_FLAGS);
+        return signatures;
+    }
+}
@@ -0,0 +1,239 @@
+package com.techshroom.hendrix.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.techshroom.hendrix.Main;
+import com.techshroom.hendrix.classfile.ConstantPool;
+import com.techshroom.hendrix.classpath.ClasspathIndex;
+import com.techshroom.hendrix.process.ClassHierarchy;
+
+/**
+ * Tests for {@link ClasspathIndex}.
+ * 
+ * @author Kenzie Togami
+ */
+public class ClasspathTest implements TestConstants {
+    private static final String TEST1_NAME = "com/techshroom/hendrix/Test1";
+    private File classpathJar;
+    private byte[] test1;
+
+    /**
+     * Writes a jar holding Test1 to use as a classpath.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Before
+    public void writeClasspathJar() throws Exception {
+        this.test1 = Files.readAllBytes(Paths.get(CLASSES_FOLDER, TEST1_NAME
+                        + ".class"));
+        this.classpathJar = new File(DATA_FOLDER + "/jars/classpath.jar");
+        try (JarOutputStream out =
+                        new JarOutputStream(new FileOutputStream(
+                                        this.classpathJar))) {
+            out.putNextEntry(new JarEntry(TEST1_NAME + ".class"));
+            out.write(this.test1);
+            out.closeEntry();
+        }
+    }
+
+    /**
+     * Deletes the classpath jar.
+     */
+    @After
+    public void deleteClasspathJar() {
+        assertTrue("couldn't delete", this.classpathJar.delete());
+    }
+
+    /**
+     * Tests that directories and jars are indexed.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void indexesDirectoriesAndJars() throws Exception {
+        for (Path root : Arrays.asList(Paths.get(CLASSES_FOLDER),
+                        this.classpathJar.toPath())) {
+            try (ClasspathIndex index =
+                            ClasspathIndex.create(Arrays.asList(root))) {
+                assertTrue(index.contains(TEST1_NAME));
+                assertArrayEquals(this.test1, index.getBytecode(TEST1_NAME));
+                assertNull(index.getBytecode("java/lang/Object"));
+            }
+        }
+    }
+
+    /**
+     * Tests that classpath jars are not rewritten.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void classpathIsNotModified() throws Exception {
+        byte[] before = Files.readAllBytes(this.classpathJar.toPath());
+        long modified = this.classpathJar.lastModified();
+        Main.main(("--input " + CLASSES_FOLDER + " --output " + RESULT_FOLDER
+                        + " --classpath " + this.classpathJar).split(" "));
+        assertArrayEquals(before, Files.readAllBytes(this.classpathJar
+                        .toPath()));
+        assertEquals(modified, this.classpathJar.lastModified());
+    }
+
+    /**
+     * Tests that jar indexes are written to the cache, and used by the next
+     * index.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void cacheIsWrittenAndReused() throws Exception {
+        Path cache = Paths.get(DATA_FOLDER, "cache");
+        try {
+            List<Path> classpath = Arrays.asList(this.classpathJar.toPath());
+            try (ClasspathIndex index =
+                            ClasspathIndex.create(classpath, cache)) {
+                assertEquals(ClassHierarchy.OBJECT,
+                                index.getHeader(TEST1_NAME).get()
+                                                .getSuperName().get());
+            }
+            File[] files = cache.toFile().listFiles();
+            assertEquals(1, files.length);
+            long written = files[0].lastModified();
+            try (ClasspathIndex index =
+                            ClasspathIndex.create(classpath, cache)) {
+                assertTrue(index.contains(TEST1_NAME));
+                assertFalse(index.getHeader("java/lang/Object").isPresent());
+                // the jar is only opened for the bytes
+                assertArrayEquals(this.test1, index.getBytecode(TEST1_NAME));
+            }
+            assertEquals(written, files[0].lastModified());
+        } finally {
+            for (File file : cache.toFile().listFiles()) {
+                assertTrue("couldn't delete", file.delete());
+            }
+            Files.delete(cache);
+        }
+    }
+
+    /**
+     * Tests that the cached and direct scans of a jar see the same classes,
+     * leaving out versioned classes and {@code module-info}.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void cachedAndDirectScansMatch() throws Exception {
+        try (JarOutputStream out =
+                        new JarOutputStream(new FileOutputStream(
+                                        this.classpathJar))) {
+            for (String entry : Arrays.asList(TEST1_NAME + ".class",
+                            "META-INF/versions/9/" + TEST1_NAME + ".class",
+                            "module-info.class")) {
+                out.putNextEntry(new JarEntry(entry));
+                out.write(this.test1);
+                out.closeEntry();
+            }
+        }
+        Path cache = Paths.get(DATA_FOLDER, "cache");
+        List<Path> classpath = Arrays.asList(this.classpathJar.toPath());
+        try (ClasspathIndex direct = ClasspathIndex.create(classpath);
+                        ClasspathIndex cached =
+                                        ClasspathIndex.create(classpath, cache)) {
+            assertEquals(Collections.singleton(TEST1_NAME),
+                            direct.getClassNames());
+            assertEquals(direct.getClassNames(), cached.getClassNames());
+        } finally {
+            for (File file : cache.toFile().listFiles()) {
+                assertTrue("couldn't delete", file.delete());
+            }
+            Files.delete(cache);
+        }
+    }
+
+    /**
+     * Tests that the class signature is found when the constant pool holds a
+     * second {@code "Signature"} entry, both directly and through the cache.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void headerFindsDuplicateSignatureName() throws Exception {
+        String signature = "<T:Ljava/lang/Object;>Ljava/lang/Object;";
+        try (JarOutputStream out =
+                        new JarOutputStream(new FileOutputStream(
+                                        this.classpathJar))) {
+            out.putNextEntry(new JarEntry("test/Dup.class"));
+            out.write(duplicateSignatureName(signature));
+            out.closeEntry();
+        }
+        Path cache = Paths.get(DATA_FOLDER, "cache");
+        List<Path> classpath = Arrays.asList(this.classpathJar.toPath());
+        try {
+            try (ClasspathIndex direct = ClasspathIndex.create(classpath)) {
+                assertEquals(signature, direct.getHeader("test/Dup").get()
+                                .getSignature().orNull());
+            }
+            // once to write the cache, once to read it back
+            for (int i = 0; i < 2; i++) {
+                try (ClasspathIndex cached =
+                                ClasspathIndex.create(classpath, cache)) {
+                    assertEquals(signature, cached.getHeader("test/Dup")
+                                    .get().getSignature().orNull());
+                }
+            }
+        } finally {
+            for (File file : cache.toFile().listFiles()) {
+                assertTrue("couldn't delete", file.delete());
+            }
+            Files.delete(cache);
+        }
+    }
+
+    private static byte[] duplicateSignatureName(String signature) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "test/Dup", signature,
+                        "java/lang/Object", null);
+        writer.visitEnd();
+        byte[] bytes = writer.toByteArray();
+        ConstantPool pool = ConstantPool.read(bytes);
+        int first = pool.indexOfUtf8("Signature");
+        int second = pool.getCount();
+        // append a second "Signature" and name the attribute with it
+        byte[] name = "Signature".getBytes(StandardCharsets.UTF_8);
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.write(bytes, 0, 8);
+        out.writeShort(second + 1);
+        out.write(bytes, 10, pool.getEnd() - 10);
+        out.writeByte(1);
+        out.writeShort(name.length);
+        out.write(name);
+        out.write(bytes, pool.getEnd(), bytes.length - pool.getEnd());
+        byte[] duplicate = out.toByteArray();
+        // the class attribute is the last thing in the file
+        int attribute = duplicate.length - 8;
+        assertEquals(first, ((duplicate[attribute] & 0xFF) << 8)
+                        | (duplicate[attribute + 1] & 0xFF));
+        duplicate[attribute] = (byte) (second >> 8);
+        duplicate[attribute + 1] = (byte) second;
+        return duplicate;
+    }
+}
@@ -11,7 +11,9 @@ import com.google.common.base.Optional;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.SharedData;
 import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
 
 /**
  * Test for {@linkplain ClassDescriptor}.
@@ -272,4 +274,157 @@ public final class DescriptorTest implements TestConstants {
         assertEquals("generic incorrect", generic, genericDesc.get()
                         .toSourcecodeRef());
     }
+
+    /**
+     * Tests that the hand-written parser agrees with the regex parser.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void parsersAgree() throws Exception {
+        List<String> descs =
+                        ImmutableList.of("Ljava/lang/Object;",
+                                        "[Ljava/lang/Object;",
+                                        "Ljava/util/List<Ljava/lang/Object;>;",
+                                        "Ljava/util/List<[Ljava/lang/Object;>;",
+                                        "I", "[I", "[[J");
+        List<String> sources =
+                        ImmutableList.of("java.lang.Object",
+                                        "java.lang.Object[]",
+                                        "java.util.List<java.lang.Object>",
+                                        "java.util.List<java.lang.Object[]>",
+                                        "int", "int[]", "boolean[][]",
+                                        "integer");
+        List<String> methods =
+                        ImmutableList.of("java/lang/Object/<init>()V",
+                                        "java/util/List/get(I)Ljava/lang/Object;");
+        boolean old = SharedData.regexDescriptors;
+        try {
+            for (String desc : descs) {
+                SharedData.regexDescriptors = true;
+                ClassDescriptor regex =
+                                ClassDescriptor.fromDescriptorString(desc);
+                SharedData.regexDescriptors = false;
+                assertEquals(regex, ClassDescriptor.fromDescriptorString(desc));
+            }
+            for (String source : sources) {
+                SharedData.regexDescriptors = true;
+                ClassDescriptor regex =
+                                ClassDescriptor.fromSourcecodeReference(source);
+                SharedData.regexDescriptors = false;
+                assertEquals(regex,
+                                ClassDescriptor.fromSourcecodeReference(source));
+            }
+            for (String method : methods) {
+                SharedData.regexDescriptors = true;
+                MethodDescriptor regex =
+                                MethodDescriptor.fromDescriptorString(method);
+                SharedData.regexDescriptors = false;
+                assertEquals(regex,
+                                MethodDescriptor.fromDescriptorString(method));
+            }
+        } finally {
+            SharedData.regexDescriptors = old;
+        }
+    }
+
+    /**
+     * Tests that method descriptors with several primitive arguments parse.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void methodPrimitiveArguments() throws Exception {
+        MethodDescriptor method =
+                        MethodDescriptor.fromDescriptorString("a/B/c(IJ[ZLjava/lang/String;D)V");
+        assertEquals("c", method.getName());
+        assertEquals(ImmutableList.of("a", "B"), method.getContainingClass()
+                        .getPath());
+        assertEquals(5, method.getArguments().size());
+        assertEquals('J', method.getArguments().get(1).getType());
+        assertEquals(1, method.getArguments().get(2).getArrayDepth());
+        assertEquals('V', method.getReturnClass().getType());
+    }
+
+    /**
+     * Tests that broken descriptors are refused.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void refusesInvalid() throws Exception {
+        for (String desc : ImmutableList.of("", "L;", "Ljava/lang/Object",
+                        "II", "Ljava/util/List<I;")) {
+            try {
+                ClassDescriptor.fromDescriptorString(desc);
+                fail("accepted '" + desc + "'");
+            } catch (IllegalArgumentException expected) {
+                // good
+            }
+        }
+    }
+
+    /**
+     * Tests that parsing the same string twice gives the same instance.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void descriptorsAreCanonical() throws Exception {
+        String desc = "Ljava/util/List<Ljava/lang/String;>;";
+        assertSame(ClassDescriptor.fromDescriptorString(desc),
+                        ClassDescriptor.fromDescriptorString(new String(desc)));
+        String source = "java.util.List<java.lang.String>";
+        assertSame(ClassDescriptor.fromSourcecodeReference(source),
+                        ClassDescriptor.fromSourcecodeReference(new String(
+                                        source)));
+    }
+
+    /**
+     * Tests the internal name, and that the string forms are kept.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void internalNameAndCachedForms() throws Exception {
+        ClassDescriptor desc =
+                        ClassDescriptor.fromDescriptorString("[Ljava/util/List<Ljava/lang/String;>;");
+        ClassDescriptor source =
+                        ClassDescriptor.fromSourcecodeReference("java.util.List<java.lang.String>[]");
+        assertEquals("java/util/List", desc.getInternalName());
+        assertEquals("", ClassDescriptor.fromDescriptorString("[I")
+                        .getInternalName());
+        assertSame(desc.toDescriptorString(), desc.toDescriptorString());
+        assertSame(desc.toSourcecodeRef(), desc.toSourcecodeRef());
+        assertEquals(desc, source);
+        assertEquals(desc.hashCode(), source.hashCode());
+    }
+
+    /**
+     * Tests building descriptors straight from ASM's owner, name and
+     * descriptor.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void fromInternalParts() throws Exception {
+        assertEquals(ClassDescriptor.fromDescriptorString("Ljava/lang/Object;"),
+                        ClassDescriptor.fromInternalName("java/lang/Object"));
+        assertSame(ClassDescriptor.fromInternalName("java/lang/Object"),
+                        ClassDescriptor.fromInternalName("java/lang/Object"));
+        assertEquals(ClassDescriptor.fromDescriptorString("[I"),
+                        ClassDescriptor.fromInternalName("[I"));
+        MethodDescriptor method =
+                        MethodDescriptor.fromInternal("a/B", "get",
+                                        "(ILjava/lang/String;)[La/B;");
+        assertEquals(MethodDescriptor
+                        .fromDescriptorString("a/B/get(ILjava/lang/String;)[La/B;"),
+                        method);
+        assertEquals("(ILjava/lang/String;)[La/B;",
+                        method.getErasedDescriptor());
+        try {
+            MethodDescriptor.fromInternal("a/B", "get", "(I");
+            fail("parsed an unfinished method descriptor");
+        } catch (IllegalArgumentException expected) {}
+    }
 }
@@ -0,0 +1,122 @@
+package com.techshroom.hendrix.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.byteio.BasicBytecodeContainer;
+import com.techshroom.hendrix.byteio.BytecodeSupplier;
+import com.techshroom.hendrix.classpath.ClasspathIndex;
+import com.techshroom.hendrix.process.ClassHierarchy;
+import com.techshroom.hendrix.process.GenericFieldSolver;
+
+/**
+ * Tests for {@link ClassHierarchy}.
+ * 
+ * @author Kenzie Togami
+ */
+public class HierarchyTest {
+    private ClassHierarchy hierarchy;
+
+    /**
+     * Builds a small hierarchy: {@code Dog} and {@code Cat} extend
+     * {@code Animal}, and both implement {@code Pet}.
+     */
+    @Before
+    public void buildHierarchy() {
+        ImmutableList<BytecodeSupplier> input =
+                        ImmutableList.<BytecodeSupplier> of(
+                                        makeClass("test/Animal",
+                                                        ClassHierarchy.OBJECT),
+                                        makeClass("test/Dog", "test/Animal",
+                                                        "test/Pet"),
+                                        makeClass("test/Cat", "test/Animal",
+                                                        "test/Pet"),
+                                        makeInterface("test/Pet"));
+        this.hierarchy = ClassHierarchy.create(input, ClasspathIndex.empty());
+    }
+
+    private static BytecodeSupplier makeClass(String name, String superName,
+                    String... interfaces) {
+        return toSupplier(Opcodes.ACC_PUBLIC, name, superName, interfaces);
+    }
+
+    private static BytecodeSupplier makeInterface(String name) {
+        return toSupplier(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE
+                        | Opcodes.ACC_ABSTRACT, name, ClassHierarchy.OBJECT);
+    }
+
+    private static BytecodeSupplier toSupplier(int access, String name,
+                    String superName, String... interfaces) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_7, access, name, null, superName, interfaces);
+        writer.visitEnd();
+        BasicBytecodeContainer container = new BasicBytecodeContainer();
+        container.bytecode(writer.toByteArray());
+        return container;
+    }
+
+    /**
+     * Tests subtype queries.
+     */
+    @Test
+    public void subtypes() {
+        assertTrue(this.hierarchy.isSubtype("test/Dog", "test/Animal"));
+        assertTrue(this.hierarchy.isSubtype("test/Dog", "test/Pet"));
+        assertTrue(this.hierarchy.isSubtype("test/Dog", ClassHierarchy.OBJECT));
+        assertTrue(this.hierarchy.isSubtype("test/Dog", "test/Dog"));
+        assertFalse(this.hierarchy.isSubtype("test/Animal", "test/Dog"));
+        assertFalse(this.hierarchy.isSubtype("test/Dog", "test/Cat"));
+        assertTrue(this.hierarchy.isSubtype("test/Missing",
+                        ClassHierarchy.OBJECT));
+    }
+
+    /**
+     * Tests lowest common supertype queries, in both orders.
+     */
+    @Test
+    public void lowestCommonSupertypes() {
+        for (int i = 0; i < 2; i++) {
+            // second time around the answers are memoized
+            assertEquals("test/Animal", this.hierarchy
+                            .getLowestCommonSupertype("test/Dog", "test/Cat"));
+            assertEquals("test/Animal", this.hierarchy
+                            .getLowestCommonSupertype("test/Cat", "test/Dog"));
+            assertEquals("test/Animal", this.hierarchy
+                            .getLowestCommonSupertype("test/Animal",
+                                            "test/Dog"));
+            assertEquals("test/Pet", this.hierarchy.getLowestCommonSupertype(
+                            "test/Dog", "test/Pet"));
+            assertEquals(ClassHierarchy.OBJECT, this.hierarchy
+                            .getLowestCommonSupertype("test/Dog",
+                                            "test/Missing"));
+        }
+    }
+
+    /**
+     * Tests that the field solver widens with the hierarchy.
+     */
+    @Test
+    public void solverWidens() {
+        ClassNode holder = new ClassNode(Opcodes.ASM5);
+        holder.name = "test/Holder";
+        FieldNode field =
+                        new FieldNode(Opcodes.ASM5, Opcodes.ACC_PRIVATE,
+                                        "animals", "Ljava/util/List;",
+                                        "Ljava/util/List<Ltest/Dog;>;", null);
+        holder.fields.add(field);
+        GenericFieldSolver solver = GenericFieldSolver.forField(holder, field);
+        solver.widen(ClassDescriptor.fromDescriptorString("Ltest/Cat;"),
+                        this.hierarchy);
+        assertEquals("Ltest/Animal;", solver.getLowestCommonType()
+                        .toDescriptorString());
+        assertEquals("Ljava/util/List<Ltest/Animal;>;", field.signature);
+    }
+}
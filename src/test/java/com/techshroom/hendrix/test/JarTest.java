@@ -9,11 +9,33 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
+import com.techshroom.hendrix.byteio.MappedEntryBytecode;
 import com.techshroom.hendrix.jar.JarData;
+import com.techshroom.hendrix.jar.JarRewriteSession;
+import com.techshroom.hendrix.jar.MappedJar;
+import com.techshroom.hendrix.jar.ZipDirectory;
+import com.techshroom.hendrix.mapping.load.MappingProvider;
+import com.techshroom.hendrix.process.ProcessEntry;
 
 /**
  * Jar testing for {@linkplain JarData}.
@@ -66,4 +88,266 @@ public class JarTest {
         e.printStackTrace();
         fail(e.getLocalizedMessage());
     }
+
+    /**
+     * Tests that a rewrite session replaces every requested entry and leaves
+     * the others alone.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void rewriteSessionReplacesEntries() throws Exception {
+        writeMultiEntryJar();
+        try (JarRewriteSession session =
+                        JarRewriteSession.open(this.testJarTarget)) {
+            session.replace("a.txt", bytes("replaced a"));
+            session.replace("c.txt", bytes("replaced c"));
+        }
+        try (JarFile jar = new JarFile(this.testJarTarget)) {
+            assertEquals("replaced a", read(jar, "a.txt"));
+            assertEquals("original b", read(jar, "b.txt"));
+            assertEquals("replaced c", read(jar, "c.txt"));
+        }
+    }
+
+    /**
+     * Tests that a streaming rewrite session gives the same entries as a
+     * batched one.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void streamingSessionReplacesEntries() throws Exception {
+        writeMultiEntryJar();
+        try (JarRewriteSession session =
+                        JarRewriteSession.openStreaming(this.testJarTarget)) {
+            session.replace("c.txt", bytes("replaced c"));
+            session.replace("a.txt", bytes("replaced a"));
+        }
+        try (JarFile jar = new JarFile(this.testJarTarget)) {
+            assertEquals("replaced a", read(jar, "a.txt"));
+            assertEquals("original b", read(jar, "b.txt"));
+            assertEquals("replaced c", read(jar, "c.txt"));
+        }
+    }
+
+    /**
+     * Tests that a streaming session keeps the manifest first, so
+     * {@link JarInputStream} still finds it.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void streamingSessionKeepsManifestFirst() throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                        "1.0");
+        try (JarOutputStream out =
+                        new JarOutputStream(new FileOutputStream(
+                                        this.testJarTarget), manifest)) {
+            out.putNextEntry(new JarEntry("a/A.class"));
+            out.write(bytes("original A"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("a/B.class"));
+            out.write(bytes("original B"));
+            out.closeEntry();
+        }
+        try (JarRewriteSession session =
+                        JarRewriteSession.openStreaming(this.testJarTarget)) {
+            session.replace("a/B.class", bytes("replaced B"));
+        }
+        try (JarInputStream in =
+                        new JarInputStream(new FileInputStream(
+                                        this.testJarTarget))) {
+            assertNotNull(in.getManifest());
+            assertEquals("1.0", in.getManifest().getMainAttributes()
+                            .getValue(Attributes.Name.MANIFEST_VERSION));
+        }
+        try (JarFile jar = new JarFile(this.testJarTarget)) {
+            assertEquals("original A", read(jar, "a/A.class"));
+            assertEquals("replaced B", read(jar, "a/B.class"));
+        }
+    }
+
+    /**
+     * Tests that a streaming session can replace a versioned class among the
+     * leading {@code META-INF/} entries, and still keeps the manifest first.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void streamingSessionReplacesVersionedClass() throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                        "1.0");
+        String versioned = "META-INF/versions/9/a/A.class";
+        try (JarOutputStream out =
+                        new JarOutputStream(new FileOutputStream(
+                                        this.testJarTarget), manifest)) {
+            out.putNextEntry(new JarEntry(versioned));
+            out.write(bytes("original versioned A"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("a/A.class"));
+            out.write(bytes("original A"));
+            out.closeEntry();
+        }
+        try (JarRewriteSession session =
+                        JarRewriteSession.openStreaming(this.testJarTarget)) {
+            session.replace("a/A.class", bytes("replaced A"));
+            session.replace(versioned, bytes("replaced versioned A"));
+        }
+        try (JarInputStream in =
+                        new JarInputStream(new FileInputStream(
+                                        this.testJarTarget))) {
+            assertNotNull(in.getManifest());
+        }
+        try (JarFile jar = new JarFile(this.testJarTarget)) {
+            assertEquals("replaced A", read(jar, "a/A.class"));
+            assertEquals("replaced versioned A", read(jar, versioned));
+        }
+    }
+
+    /**
+     * Tests that processing closes the mapped jars the input came from.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void processClosesMappedJars() throws Exception {
+        ClassWriter clazz = new ClassWriter(0);
+        clazz.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "a/A", null,
+                        "java/lang/Object", null);
+        clazz.visitEnd();
+        try (JarOutputStream out =
+                        new JarOutputStream(new FileOutputStream(
+                                        this.testJarTarget))) {
+            out.putNextEntry(new JarEntry("a/A.class"));
+            out.write(clazz.toByteArray());
+            out.closeEntry();
+        }
+        MappedJar mapped = MappedJar.open(this.testJarTarget.toPath());
+        ZipDirectory.Entry entry = mapped.getDirectory().getEntries().get(0);
+        new ProcessEntry(ImmutableList.of(new MappedEntryBytecode(mapped,
+                        entry)), ImmutableList.<MappingProvider> of())
+                        .process();
+        try {
+            mapped.read(entry);
+            fail("mapped jar still open");
+        } catch (IOException expected) {}
+    }
+
+    /**
+     * Tests that replacing a single entry works on the checked-in jar.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void replaceEntryWorks() throws Exception {
+        try (JarFile jar = new JarFile(this.testJarTarget)) {
+            JarData.replaceEntry(this.testJarTarget,
+                            jar.getJarEntry("test.java"), bytes("new data"));
+        }
+        try (JarFile jar = new JarFile(this.testJarTarget)) {
+            assertEquals("new data", read(jar, "test.java"));
+        }
+    }
+
+    /**
+     * Tests that the rewritten jar has valid CRCs and sizes, and that untouched
+     * entries keep their compressed data.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void rewrittenJarIsValid() throws Exception {
+        writeMultiEntryJar();
+        long compressedA;
+        try (JarFile jar = new JarFile(this.testJarTarget)) {
+            compressedA = jar.getJarEntry("a.txt").getCompressedSize();
+        }
+        try (JarRewriteSession session =
+                        JarRewriteSession.open(this.testJarTarget)) {
+            session.replace("b.txt", bytes("replaced b, which is longer"));
+            session.remove("c.txt");
+        }
+        int count = 0;
+        try (ZipInputStream in =
+                        new ZipInputStream(new FileInputStream(
+                                        this.testJarTarget))) {
+            // ZipInputStream checks CRCs and sizes as it reads
+            for (ZipEntry e = in.getNextEntry(); e != null; e =
+                            in.getNextEntry()) {
+                ByteStreams.toByteArray(in);
+                count++;
+            }
+        }
+        assertEquals(2, count);
+        try (JarFile jar = new JarFile(this.testJarTarget)) {
+            assertEquals(compressedA, jar.getJarEntry("a.txt")
+                            .getCompressedSize());
+            assertEquals("original a", read(jar, "a.txt"));
+            assertEquals("replaced b, which is longer", read(jar, "b.txt"));
+            assertNull(jar.getJarEntry("c.txt"));
+        }
+    }
+
+    /**
+     * Tests that a mapped jar reads stored and deflated entries the same as
+     * {@link JarFile}.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void mappedJarReadsEntries() throws Exception {
+        writeMultiEntryJar();
+        try (MappedJar mapped = MappedJar.open(this.testJarTarget.toPath());
+                        JarFile jar = new JarFile(this.testJarTarget)) {
+            List<ZipDirectory.Entry> entries =
+                            mapped.getDirectory().getEntries();
+            assertEquals(3, entries.size());
+            for (ZipDirectory.Entry entry : entries) {
+                assertEquals(read(jar, entry.getName()), new String(
+                                mapped.read(entry), StandardCharsets.UTF_8));
+            }
+            ZipDirectory.Entry stored = entries.get(1);
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertEquals(stored.getSize(), mapped.slice(stored).remaining());
+        }
+    }
+
+    private void writeMultiEntryJar() throws IOException {
+        try (JarOutputStream out =
+                        new JarOutputStream(new FileOutputStream(
+                                        this.testJarTarget))) {
+            out.putNextEntry(new JarEntry("a.txt"));
+            out.write(bytes("original a"));
+            out.closeEntry();
+            JarEntry stored = new JarEntry("b.txt");
+            byte[] storedBytes = bytes("original b");
+            CRC32 crc = new CRC32();
+            crc.update(storedBytes);
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(storedBytes.length);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(storedBytes);
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("c.txt"));
+            out.write(bytes("original c"));
+            out.closeEntry();
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(JarFile jar, String name) throws IOException {
+        JarEntry entry = jar.getJarEntry(name);
+        assertNotNull("missing entry " + name, entry);
+        try (InputStream in = jar.getInputStream(entry)) {
+            return new String(ByteStreams.toByteArray(in),
+                            StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -0,0 +1,602 @@
+package com.techshroom.hendrix.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.techshroom.hendrix.SharedData;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.asmsucks.MethodDescriptor;
+import com.techshroom.hendrix.byteio.BasicBytecodeContainer;
+import com.techshroom.hendrix.classfile.ConstantPool;
+import com.techshroom.hendrix.mapping.ClassMapping;
+import com.techshroom.hendrix.mapping.FieldMapping;
+import com.techshroom.hendrix.mapping.GenericMapping;
+import com.techshroom.hendrix.mapping.MappingBundle;
+import com.techshroom.hendrix.mapping.MappingIndex;
+import com.techshroom.hendrix.mapping.MethodMapping;
+import com.techshroom.hendrix.mapping.load.LayeredMappingProvider;
+import com.techshroom.hendrix.mapping.load.MappingConflict;
+import com.techshroom.hendrix.mapping.load.MappingError;
+import com.techshroom.hendrix.mapping.load.MappingLoader;
+import com.techshroom.hendrix.mapping.load.MappingProvider;
+import com.techshroom.hendrix.mapping.load.MappingSink;
+import com.techshroom.hendrix.mapping.load.QueryMappingProvider;
+import com.techshroom.hendrix.mapping.load.annotation.AnnotationMappingProvider;
+import com.techshroom.hendrix.mapping.load.compiled.CompiledMappingProvider;
+import com.techshroom.hendrix.mapping.load.compiled.CompiledMappings;
+import com.techshroom.hendrix.mapping.load.manual.ManualMappingProvider;
+import com.techshroom.hendrix.mapping.load.srg.SrgMappingProvider;
+import com.techshroom.hendrix.mapping.load.tiny.TinyMappingProvider;
+import com.techshroom.hendrix.mapping.load.transplant.TransplantMappingProvider;
+import com.techshroom.hendrix.mapping.rule.MappingRule;
+import com.techshroom.hendrix.process.ProcessEntry;
+
+/**
+ * Tests for {@linkplain MappingIndex} and how mappings get applied.
+ * 
+ * @author Kenzie Togami
+ */
+public final class MappingTest implements TestConstants {
+    static final String TEST1_NAME = "com/techshroom/hendrix/Test1";
+    static final ClassDescriptor TEST1 = ClassDescriptor
+                    .fromInternalName(TEST1_NAME);
+    static final ClassDescriptor STRING_LIST = ClassDescriptor
+                    .fromSourcecodeReference("java.util.List<java.lang.String>");
+
+    static MappingProvider provider(final GenericMapping... mappings) {
+        return namedProvider("test", mappings);
+    }
+
+    static MappingProvider namedProvider(final String name,
+                    final GenericMapping... mappings) {
+        return new MappingProvider() {
+            @Override
+            public Iterator<GenericMapping> iterator() {
+                return Arrays.asList(mappings).iterator();
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * Tests that mappings are grouped by class, and found by name.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void indexGroupsByClass() throws Exception {
+        FieldMapping field = FieldMapping.Impl.of(STRING_LIST, TEST1, "object");
+        MethodMapping method =
+                        MethodMapping.Impl.of(STRING_LIST, MethodDescriptor
+                                        .fromInternal(TEST1_NAME,
+                                                        "getObjectList",
+                                                        "()Ljava/util/List;"));
+        ClassMapping clazz = ClassMapping.Impl.of(STRING_LIST, TEST1);
+        GenericMapping unknown = new GenericMapping() {
+            @Override
+            public ClassDescriptor getGeneric() {
+                return STRING_LIST;
+            }
+        };
+        MappingIndex.Builder builder = MappingIndex.builder();
+        assertEquals(ImmutableList.of(unknown), builder.addAll(Arrays.asList(
+                        field, method, unknown, clazz)));
+        MappingIndex index = builder.build();
+        assertEquals(3, index.size());
+        assertEquals(1, index.getBundles().size());
+        MappingBundle bundle = index.bundleFor(TEST1);
+        assertSame(bundle, index.bundleFor(TEST1_NAME));
+        assertSame(clazz, bundle.getClassMapping().get());
+        assertSame(field, bundle.getField("object"));
+        assertNull(bundle.getField("objectList"));
+        assertSame(method, bundle.getMethod("getObjectList",
+                        "()Ljava/util/List;"));
+        assertNull(bundle.getMethod("getObjectList", "()V"));
+        assertEquals(clazz, bundle.getMappings().get(0));
+        assertEquals(3, bundle.getMappings().size());
+        assertNull(index.bundleFor("java/lang/Object"));
+    }
+
+    /**
+     * Tests that later providers take precedence, and that replaced mappings
+     * are reported with where they came from.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void mergesProvidersInOrder() throws Exception {
+        ClassDescriptor objectList =
+                        ClassDescriptor.fromSourcecodeReference(
+                                        "java.util.List<java.lang.Object>");
+        FieldMapping first = FieldMapping.Impl.of(STRING_LIST, TEST1, "object");
+        FieldMapping second = FieldMapping.Impl.of(objectList, TEST1, "object");
+        FieldMapping same = FieldMapping.Impl.of(objectList, TEST1, "object");
+        ClassMapping clazz = ClassMapping.Impl.of(STRING_LIST, TEST1);
+        MappingLoader.Result result =
+                        MappingLoader.loadAll(ImmutableList.of(namedProvider(
+                                        "a", first, clazz), namedProvider("b",
+                                        second), namedProvider("c", same)));
+        MappingIndex index = result.getIndex();
+        assertEquals(2, index.size());
+        assertSame(same, index.bundleFor(TEST1).getField("object"));
+        assertSame(clazz, index.bundleFor(TEST1).getClassMapping().get());
+        List<MappingConflict> conflicts = result.getConflicts();
+        assertEquals(2, conflicts.size());
+        assertEquals(MappingConflict.of(second, "b", first, "a"),
+                        conflicts.get(0));
+        assertFalse(conflicts.get(0).isDuplicate());
+        assertEquals(MappingConflict.of(same, "c", second, "b"),
+                        conflicts.get(1));
+        assertTrue(conflicts.get(1).isDuplicate());
+    }
+
+    /**
+     * Tests that query providers are only asked about the classes looked up,
+     * and are layered with plain providers in order.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void queriesProvidersPerClass() throws Exception {
+        final FieldMapping queried =
+                        FieldMapping.Impl.of(STRING_LIST, TEST1, "object");
+        final List<ClassDescriptor> asked = new ArrayList<>();
+        QueryMappingProvider query = new QueryMappingProvider() {
+            @Override
+            public MappingBundle bundleFor(ClassDescriptor clazz) {
+                asked.add(clazz);
+                if (!clazz.equals(TEST1)) {
+                    return null;
+                }
+                MappingIndex.Builder index = MappingIndex.builder();
+                index.add(queried);
+                return index.build().bundleFor(clazz);
+            }
+
+            @Override
+            public Iterator<GenericMapping> iterator() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        ClassMapping clazz = ClassMapping.Impl.of(STRING_LIST, TEST1);
+        FieldMapping replaced =
+                        FieldMapping.Impl.of(STRING_LIST, TEST1, "objectList");
+        LayeredMappingProvider layered =
+                        LayeredMappingProvider.of(ImmutableList.of(
+                                        provider(clazz, replaced), query));
+        MappingBundle bundle = layered.bundleFor(TEST1);
+        assertSame(bundle, layered.bundleFor(TEST1));
+        assertSame(clazz, bundle.getClassMapping().get());
+        assertSame(queried, bundle.getField("object"));
+        assertSame(replaced, bundle.getField("objectList"));
+        ClassDescriptor object = ClassDescriptor.fromInternalName(
+                        "java/lang/Object");
+        assertNull(layered.bundleFor(object));
+        assertNull(layered.bundleFor(object));
+        assertEquals(ImmutableList.of(TEST1, object), asked);
+    }
+
+    /**
+     * Tests that field and method mappings are applied, not just class
+     * mappings.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void appliesFieldAndMethodMappings() throws Exception {
+        BasicBytecodeContainer container = new BasicBytecodeContainer();
+        container.bytecode(Files.readAllBytes(Paths.get(CLASSES_FOLDER,
+                        TEST1_NAME + ".class")));
+        MappingProvider mappings =
+                        provider(FieldMapping.Impl.of(STRING_LIST, TEST1,
+                                        "objectList"), MethodMapping.Impl.of(
+                                        STRING_LIST, MethodDescriptor
+                                                        .fromInternal(TEST1_NAME,
+                                                                        "getObjectList",
+                                                                        "()Ljava/util/List;")));
+        new ProcessEntry(ImmutableList.of(container),
+                        ImmutableList.of(mappings)).process();
+        Map<String, String> signatures = readSignatures(container.bytecode());
+        assertEquals("Ljava/util/List<Ljava/lang/String;>;",
+                        signatures.get("objectList"));
+        assertEquals("()Ljava/util/List<Ljava/lang/String;>;",
+                        signatures.get("getObjectList"));
+        assertEquals("Ljava/util/List<Lcom/techshroom/hendrix/Test1;>;",
+                        signatures.get("test1List"));
+    }
+
+    /**
+     * Tests that a manual mapping file is streamed, and that bad lines are
+     * reported with their position without stopping the load.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void streamsManualMappings() throws Exception {
+        Path file = Files.createTempFile("hendrix", ".mappings");
+        try {
+            String good = "f com.techshroom.hendrix.Test1/objectList "
+                            + "java.util.List<java.lang.String>\r\n";
+            String bad = "x not a mapping\n";
+            Files.write(file, (good + "\n" + bad + "c "
+                            + "com.techshroom.hendrix.Test1 "
+                            + "java.util.List<java.lang.String>")
+                            .getBytes(StandardCharsets.UTF_8));
+            final List<GenericMapping> mappings = new ArrayList<>();
+            final List<MappingError> errors = new ArrayList<>();
+            new ManualMappingProvider(file).load(new MappingSink() {
+                @Override
+                public void mapping(GenericMapping mapping) {
+                    mappings.add(mapping);
+                }
+
+                @Override
+                public void error(MappingError error) {
+                    errors.add(error);
+                }
+            });
+            assertEquals(ImmutableList.of(FieldMapping.Impl.of(STRING_LIST,
+                            TEST1, "objectList"), ClassMapping.Impl.of(
+                            STRING_LIST, TEST1)), mappings);
+            assertEquals(1, errors.size());
+            assertEquals(3, errors.get(0).getLine());
+            assertEquals(good.length() + 1, errors.get(0).getOffset());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Tests that Tiny v2 and SRG files are imported with names from the
+     * requested namespace, and generics from the extra column.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void importsTinyAndSrg() throws Exception {
+        String other = "com/techshroom/hendrix/Other";
+        ClassDescriptor stringArrayList =
+                        ClassDescriptor.fromSourcecodeReference("java.util.ArrayList<java.lang.String>");
+        FieldMapping field = FieldMapping.Impl.of(STRING_LIST, TEST1,
+                        "objectList");
+        ClassMapping clazz = ClassMapping.Impl.of(stringArrayList,
+                        ClassDescriptor.fromInternalName(other));
+        MethodMapping method = MethodMapping.Impl.of(STRING_LIST,
+                        MethodDescriptor.fromInternal(TEST1_NAME, "getOther",
+                                        "(L" + other + ";)Ljava/util/List;"));
+        Path tiny = Files.createTempFile("hendrix", ".tiny");
+        Path srg = Files.createTempFile("hendrix", ".srg");
+        try {
+            Files.write(tiny, ImmutableList.of(
+                            "tiny\t2\t0\tofficial\tnamed\tgeneric",
+                            "\tsorted\tyes",
+                            "c\ta\t" + TEST1_NAME,
+                            "\tf\tLjava/util/List;\tb\tobjectList\t"
+                                            + "java.util.List<java.lang.String>",
+                            "\t\tc\tnot a mapping",
+                            "\tm\t(Lc;)Ljava/util/List;\td\tgetOther\t"
+                                            + "java.util.List<java.lang.String>",
+                            "\t\tp\t1\t\tother",
+                            "\tm\t()V\te\trun",
+                            "c\tc\t" + other + "\t"
+                                            + "java.util.ArrayList<java.lang.String>"),
+                            StandardCharsets.UTF_8);
+            assertTrue(TinyMappingProvider.isTiny(tiny));
+            assertFalse(TinyMappingProvider.isTiny(srg));
+            // class c comes after the method using it, the class scan finds it
+            assertEquals(ImmutableList.of(field, method, clazz),
+                            ImmutableList.copyOf(new TinyMappingProvider(tiny,
+                                            "named", "generic")));
+            Files.write(srg, ImmutableList.of(
+                            "PK: . com/techshroom",
+                            "CL: a " + TEST1_NAME,
+                            "FD: a/b " + TEST1_NAME + "/objectList "
+                                            + "java.util.List<java.lang.String>",
+                            "MD: a/d (Lc;)Ljava/util/List; " + TEST1_NAME
+                                            + "/getOther (L" + other
+                                            + ";)Ljava/util/List; "
+                                            + "java.util.List<java.lang.String>",
+                            "CL: c " + other + " "
+                                            + "java.util.ArrayList<java.lang.String>"),
+                            StandardCharsets.UTF_8);
+            assertTrue(SrgMappingProvider.isSrg(srg));
+            assertEquals(ImmutableList.of(field, method, clazz),
+                            ImmutableList.copyOf(new SrgMappingProvider(srg)));
+        } finally {
+            Files.delete(tiny);
+            Files.delete(srg);
+        }
+    }
+
+    /**
+     * Tests that signatures are copied from a reference jar onto the classes
+     * of the input that match it, and nothing else.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void transplantsSignatures() throws Exception {
+        byte[] original = Files.readAllBytes(Paths.get(CLASSES_FOLDER,
+                        TEST1_NAME + ".class"));
+        ClassWriter other = new ClassWriter(0);
+        other.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "test/Other", null,
+                        "java/lang/Object", null);
+        other.visitField(Opcodes.ACC_PUBLIC, "names", "Ljava/util/List;",
+                        "Ljava/util/List<Ljava/lang/String;>;", null)
+                        .visitEnd();
+        other.visitEnd();
+        Path reference = Files.createTempFile("hendrix", ".jar");
+        try {
+            try (JarOutputStream out =
+                            new JarOutputStream(Files.newOutputStream(reference))) {
+                out.putNextEntry(new JarEntry(TEST1_NAME + ".class"));
+                out.write(original);
+                out.closeEntry();
+                out.putNextEntry(new JarEntry("test/Other.class"));
+                out.write(other.toByteArray());
+                out.closeEntry();
+            }
+            ClassWriter stripped = new ClassWriter(0);
+            new ClassReader(original).accept(new ClassVisitor(
+                            SharedData.ASM_VERSION, stripped) {
+                @Override
+                public FieldVisitor visitField(int access, String name,
+                                String desc, String signature, Object value) {
+                    return super.visitField(access, name, desc, null, value);
+                }
+
+                @Override
+                public MethodVisitor visitMethod(int access, String name,
+                                String desc, String signature,
+                                String[] exceptions) {
+                    return super.visitMethod(access, name, desc, null,
+                                    exceptions);
+                }
+            }, 0);
+            final AtomicInteger loads = new AtomicInteger();
+            BasicBytecodeContainer container = new BasicBytecodeContainer() {
+                private byte[] saved;
+
+                @Override
+                protected void save(byte[] bytes) {
+                    this.saved = bytes.clone();
+                }
+
+                @Override
+                protected byte[] load() {
+                    loads.incrementAndGet();
+                    return this.saved.clone();
+                }
+            };
+            container.bytecode(stripped.toByteArray());
+            // as if it were only on disk
+            container.release();
+            Map<String, String> expected = readSignatures(original);
+            int signed = 0;
+            for (String signature : expected.values()) {
+                if (signature != null) {
+                    signed++;
+                }
+            }
+            assertTrue(signed > 0);
+            TransplantMappingProvider provider =
+                            new TransplantMappingProvider(reference,
+                                            ImmutableList.of(container));
+            // test/Other isn't in the input
+            assertEquals(signed, ImmutableList.copyOf(provider).size());
+            // probing must not leave the input cached
+            assertEquals(1, loads.get());
+            container.readBytecode();
+            assertEquals(2, loads.get());
+            new ProcessEntry(ImmutableList.of(container),
+                            ImmutableList.of(provider)).process();
+            assertEquals(expected, readSignatures(container.bytecode()));
+        } finally {
+            Files.delete(reference);
+        }
+    }
+
+    /**
+     * Tests that mappings are read from annotations, and that classes without
+     * the annotation aren't read past their constant pool.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void readsAnnotationMappings() throws Exception {
+        String generic = "java.util.List<java.lang.String>";
+        ClassWriter hinted = new ClassWriter(0);
+        hinted.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "test/Hinted", null,
+                        "java/lang/Object", null);
+        FieldVisitor field =
+                        hinted.visitField(Opcodes.ACC_PUBLIC, "names",
+                                        "Ljava/util/List;", null, null);
+        AnnotationVisitor annotation =
+                        field.visitAnnotation("Ltest/Generic;", false);
+        annotation.visit("value", generic);
+        annotation.visitEnd();
+        field.visitEnd();
+        hinted.visitField(Opcodes.ACC_PUBLIC, "plain", "Ljava/util/List;",
+                        null, null).visitEnd();
+        MethodVisitor method =
+                        hinted.visitMethod(Opcodes.ACC_PUBLIC
+                                        | Opcodes.ACC_ABSTRACT, "getNames",
+                                        "()Ljava/util/List;", null, null);
+        annotation = method.visitAnnotation("Ltest/Generic;", true);
+        annotation.visit("value", generic);
+        annotation.visitEnd();
+        method.visitEnd();
+        hinted.visitEnd();
+        ClassWriter plain = new ClassWriter(0);
+        plain.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "test/Plain", null,
+                        "java/lang/Object", null);
+        plain.visitField(Opcodes.ACC_PUBLIC, "names", "Ljava/util/List;",
+                        null, null).visitEnd();
+        plain.visitEnd();
+        byte[] plainBytes = plain.toByteArray();
+        // only the constant pool and the class name are left, so reading any
+        // further fails
+        plainBytes = Arrays.copyOf(plainBytes,
+                        ConstantPool.read(plainBytes).getEnd() + 4);
+        BasicBytecodeContainer hintedClass = new BasicBytecodeContainer();
+        hintedClass.bytecode(hinted.toByteArray());
+        BasicBytecodeContainer plainClass = new BasicBytecodeContainer();
+        plainClass.bytecode(plainBytes);
+        AnnotationMappingProvider provider =
+                        new AnnotationMappingProvider("test.Generic",
+                                        ImmutableList.of(hintedClass,
+                                                        plainClass));
+        ClassDescriptor hintedName =
+                        ClassDescriptor.fromInternalName("test/Hinted");
+        List<GenericMapping> expected =
+                        ImmutableList.<GenericMapping> of(
+                                        FieldMapping.Impl.of(STRING_LIST,
+                                                        hintedName, "names"),
+                                        MethodMapping.Impl.of(STRING_LIST,
+                                                        MethodDescriptor
+                                                                        .fromInternal("test/Hinted",
+                                                                                        "getNames",
+                                                                                        "()Ljava/util/List;")));
+        assertEquals(expected, ImmutableList.copyOf(provider));
+        // queried one class at a time while processing
+        MappingBundle bundle = provider.bundleFor(hintedName);
+        assertNotNull(bundle);
+        assertEquals(expected, bundle.getMappings());
+        assertNull(provider.bundleFor(ClassDescriptor
+                        .fromInternalName("test/Plain")));
+        assertNull(provider.bundleFor(ClassDescriptor
+                        .fromInternalName("test/Missing")));
+    }
+
+    /**
+     * Tests that compiled mappings are looked up by class, and that the cache
+     * compiles text mappings again when they change.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void compilesMappings() throws Exception {
+        Path dir = Files.createTempDirectory("hendrix");
+        Path text = dir.resolve("test.mappings");
+        Path compiled = dir.resolve("test.hmap");
+        try {
+            FieldMapping field =
+                            FieldMapping.Impl.of(STRING_LIST, TEST1, "objectList");
+            MethodMapping method =
+                            MethodMapping.Impl.of(STRING_LIST, MethodDescriptor
+                                            .fromInternal(TEST1_NAME,
+                                                            "getObjectList",
+                                                            "()Ljava/util/List;"));
+            MappingIndex.Builder builder = MappingIndex.builder();
+            MappingRule rule =
+                            MappingRule.of(MappingRule.Kind.FIELD, "a.*",
+                                            "*", STRING_LIST);
+            builder.addAll(Arrays.asList(field, method, rule,
+                            ClassMapping.Impl.of(STRING_LIST, ClassDescriptor
+                                            .fromInternalName("a/B"))));
+            CompiledMappings.write(builder.build(),
+                            Optional.<HashCode> absent(), compiled);
+            assertTrue(CompiledMappingProvider.isCompiled(compiled));
+            CompiledMappingProvider provider =
+                            CompiledMappingProvider.open(compiled);
+            assertEquals(2, provider.getClassCount());
+            assertEquals(4, provider.size());
+            assertEquals(ImmutableList.of(field, method),
+                            provider.lookup(TEST1_NAME));
+            assertEquals(ImmutableList.of(), provider.lookup("a/C"));
+            assertEquals(ImmutableList.of(rule), provider.bundleFor(
+                            ClassDescriptor.fromInternalName("a/C"))
+                            .getRules());
+            assertNull(provider.bundleFor(ClassDescriptor
+                            .fromInternalName("b/C")));
+
+            Files.write(text, ("f com.techshroom.hendrix.Test1/objectList "
+                            + "java.util.List<java.lang.String>\n")
+                            .getBytes(StandardCharsets.UTF_8));
+            assertFalse(CompiledMappingProvider.isCompiled(text));
+            Path cache = dir.resolve("cache");
+            assertEquals(ImmutableList.of(field), CompiledMappings.cached(
+                            text, cache).lookup(TEST1_NAME));
+            Files.write(text, ("c com.techshroom.hendrix.Test1 "
+                            + "java.util.List<java.lang.String>\n")
+                            .getBytes(StandardCharsets.UTF_8),
+                            StandardOpenOption.APPEND);
+            assertEquals(2, CompiledMappings.cached(text, cache)
+                            .lookup(TEST1_NAME).size());
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                            BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir,
+                            IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    static Map<String, String> readSignatures(byte[] bytes) {
+        final Map<String, String> signatures = new HashMap<>();
+        new ClassReader(bytes).accept(new ClassVisitor(SharedData.ASM_VERSION) {
+            @Override
+            public FieldVisitor visitField(int access, String name,
+                            String desc, String signature, Object value) {
+                signatures.put(name, signature);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name,
+                            String desc, String signature, String[] exceptions) {
+                signatures.put(name, signature);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE);
+        return signatures;
+    }
+}
@@ -3,13 +3,17 @@ package com.techshroom.hendrix.test;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -26,6 +30,15 @@ import com.techshroom.hendrix.SharedData;
  * @author Kenzie Togami
  */
 public final class OverallTest implements TestConstants {
+    private static final String TEST1_FILE =
+                    "com/techshroom/hendrix/Test1.class";
+    /**
+     * Where mapped runs get a fresh copy of the input, since classes are
+     * rewritten in place.
+     */
+    private static final Path WORK_FOLDER = Paths.get(DATA_FOLDER, "work");
+    private static final String STRING_LIST_SIGNATURE =
+                    "Ljava/util/List<Ljava/lang/String;>;";
     private static boolean oldDebugState;
 
     /**
@@ -69,6 +82,39 @@ public final class OverallTest implements TestConstants {
     public void removeGeneratedFiles() {
         Path f = Paths.get(RESULT_FOLDER);
         nuke(f);
+        nuke(WORK_FOLDER);
+    }
+
+    /**
+     * Runs Hendrix over a fresh copy of Test1, with mappings for its
+     * {@code objectList} field and {@code getObjectList} method.
+     * 
+     * @param options - Extra options, separated by spaces
+     * @return The rewritten Test1
+     */
+    private static byte[] runMapped(String options) throws IOException {
+        Path input = WORK_FOLDER.resolve(TEST1_FILE);
+        Files.createDirectories(input.getParent());
+        Files.copy(Paths.get(CLASSES_FOLDER, TEST1_FILE), input,
+                        StandardCopyOption.REPLACE_EXISTING);
+        Path mappings = WORK_FOLDER.resolve("test.mappings");
+        Files.write(mappings, Arrays.asList(
+                        "f com.techshroom.hendrix.Test1/objectList "
+                                        + "java.util.List<java.lang.String>",
+                        "m com/techshroom/hendrix/Test1/getObjectList"
+                                        + "()Ljava/util/List; "
+                                        + "java.util.List<java.lang.String>"),
+                        StandardCharsets.UTF_8);
+        Main.main(("--input " + WORK_FOLDER + " --output " + RESULT_FOLDER
+                        + " -m " + mappings + " " + options).split(" "));
+        return Files.readAllBytes(input);
+    }
+
+    private static void assertMapped(byte[] bytes) {
+        Map<String, String> signatures = MappingTest.readSignatures(bytes);
+        assertEquals(STRING_LIST_SIGNATURE, signatures.get("objectList"));
+        assertEquals("()" + STRING_LIST_SIGNATURE,
+                        signatures.get("getObjectList"));
     }
 
     private void nuke(Path stuff) {
@@ -123,6 +169,46 @@ public final class OverallTest implements TestConstants {
         // TODO: assertions
     }
 
+    /**
+     * Tests that more than one transform thread gives the same output as one.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void overallTestParallel() throws Exception {
+        byte[] single = runMapped("--threads 1");
+        assertMapped(single);
+        assertArrayEquals(single, runMapped("--threads 4"));
+    }
+
+    /**
+     * Tests that streaming mode gives the same output as writing at the end.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void overallTestStreaming() throws Exception {
+        byte[] buffered = runMapped("--threads 1");
+        assertMapped(buffered);
+        assertArrayEquals(buffered, runMapped("--threads 2 --streaming"));
+    }
+
+    /**
+     * Tests that the signature patcher writes the same signatures as ASM.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void overallTestPatch() throws Exception {
+        byte[] asm = runMapped("--engine asm");
+        byte[] patched = runMapped("--engine patch");
+        assertMapped(patched);
+        // the patcher keeps the rest of the class, so it isn't ASM's output
+        assertFalse(Arrays.equals(asm, patched));
+        assertEquals(MappingTest.readSignatures(asm),
+                        MappingTest.readSignatures(patched));
+    }
+
     /**
      * Tests Hendrix's refusal of multiple outputs.
      * 
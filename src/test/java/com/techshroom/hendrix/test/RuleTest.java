@@ -0,0 +1,136 @@
+package com.techshroom.hendrix.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.byteio.BasicBytecodeContainer;
+import com.techshroom.hendrix.mapping.load.manual.ManualMappingProvider;
+import com.techshroom.hendrix.mapping.rule.MappingRule;
+import com.techshroom.hendrix.mapping.rule.RuleMatcher;
+import com.techshroom.hendrix.process.ProcessEntry;
+
+/**
+ * Tests for {@linkplain MappingRule mapping rules}.
+ * 
+ * @author Kenzie Togami
+ */
+public final class RuleTest implements TestConstants {
+    private static final ClassDescriptor STRING_LIST = MappingTest.STRING_LIST;
+
+    private static MappingRule field(String classPattern, String member) {
+        return MappingRule.of(MappingRule.Kind.FIELD, classPattern, member,
+                        STRING_LIST);
+    }
+
+    /**
+     * Tests that classes are matched by package, subpackage and simple name
+     * patterns, in rule order.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void matchesClasses() throws Exception {
+        MappingRule deep = field("com.a.**", "*");
+        MappingRule glob = field("com.a.b.*Dao", "*");
+        MappingRule exact = field("com/a/b/UserDao", "*");
+        MappingRule deepGlob = field("com.a.**.?serDao", "*");
+        MappingRule other = field("com.x.*", "*");
+        MappingRule root = field("Main", "*");
+        RuleMatcher matcher =
+                        RuleMatcher.compile(ImmutableList.of(deep, glob,
+                                        exact, deepGlob, other, root));
+        assertEquals(ImmutableList.of(deep, glob, exact, deepGlob),
+                        matcher.match("com/a/b/UserDao"));
+        assertEquals(ImmutableList.of(deep, glob),
+                        matcher.match("com/a/b/GroupDao"));
+        assertEquals(ImmutableList.of(deep), matcher.match("com/a/Foo"));
+        assertEquals(ImmutableList.of(deep, deepGlob),
+                        matcher.match("com/a/c/d/UserDao"));
+        assertEquals(ImmutableList.of(), matcher.match("com/x/y/Z"));
+        assertEquals(ImmutableList.of(other), matcher.match("com/x/Z"));
+        assertEquals(ImmutableList.of(root), matcher.match("Main"));
+        assertEquals(ImmutableList.of(), matcher.match("com/Main"));
+    }
+
+    /**
+     * Tests that members are matched by name and erased type.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void matchesMembers() throws Exception {
+        MappingRule rule = field("a.*", "get*List");
+        assertTrue(rule.matchesMember(MappingRule.Kind.FIELD,
+                        "getObjectList", "Ljava/util/List;"));
+        assertFalse(rule.matchesMember(MappingRule.Kind.FIELD,
+                        "getObjectList", "Ljava/lang/Object;"));
+        assertFalse(rule.matchesMember(MappingRule.Kind.FIELD, "getObject",
+                        "Ljava/util/List;"));
+        assertFalse(rule.matchesMember(MappingRule.Kind.METHOD,
+                        "getObjectList", "()Ljava/util/List;"));
+        MappingRule method =
+                        MappingRule.of(MappingRule.Kind.METHOD, "a.*", "*",
+                                        STRING_LIST);
+        assertTrue(method.matchesMember(MappingRule.Kind.METHOD, "x",
+                        "(Ljava/lang/Object;)Ljava/util/List;"));
+        assertFalse(method.matchesMember(MappingRule.Kind.METHOD, "x",
+                        "(Ljava/util/List;)V"));
+        try {
+            field("a.**.b.C", "*");
+            fail("** in the middle of a package");
+        } catch (IllegalArgumentException expected) {}
+        try {
+            field("a.b*.C", "*");
+            fail("pattern in a package");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    /**
+     * Tests that rules from a mapping file are applied, and that exact
+     * mappings win over them.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void appliesRules() throws Exception {
+        Path file = Files.createTempFile("hendrix", ".mappings");
+        try {
+            List<String> lines =
+                            ImmutableList.of("F com.techshroom.**/*List "
+                                            + "java.util.List<java.lang.String>",
+                                            "M com.techshroom.hendrix.Test?/get* "
+                                                            + "java.util.List<java.lang.String>",
+                                            "f com.techshroom.hendrix.Test1/test1List "
+                                                            + "java.util.List<com.techshroom.hendrix.Test1>");
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            BasicBytecodeContainer container = new BasicBytecodeContainer();
+            container.bytecode(Files.readAllBytes(Paths.get(CLASSES_FOLDER,
+                            MappingTest.TEST1_NAME + ".class")));
+            new ProcessEntry(ImmutableList.of(container),
+                            ImmutableList.of(new ManualMappingProvider(file)))
+                            .process();
+            Map<String, String> signatures =
+                            MappingTest.readSignatures(container.bytecode());
+            assertEquals("Ljava/util/List<Ljava/lang/String;>;",
+                            signatures.get("objectList"));
+            assertEquals("Ljava/util/List<Lcom/techshroom/hendrix/Test1;>;",
+                            signatures.get("test1List"));
+            assertNull(signatures.get("object"));
+            assertEquals("()Ljava/util/List<Ljava/lang/String;>;",
+                            signatures.get("getObjectList"));
+            assertNull(signatures.get("getLengthOfTest1ListTimes"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.techshroom.hendrix.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.techshroom.hendrix.asmsucks.ClassDescriptor;
+import com.techshroom.hendrix.signature.ClassSignature;
+import com.techshroom.hendrix.signature.MethodSignature;
+import com.techshroom.hendrix.signature.TypeParameter;
+import com.techshroom.hendrix.signature.TypeSignature;
+import com.techshroom.hendrix.signature.TypeSignature.ArrayType;
+import com.techshroom.hendrix.signature.TypeSignature.ClassType;
+import com.techshroom.hendrix.signature.TypeSignature.TypeArgument;
+import com.techshroom.hendrix.signature.TypeSignature.TypeVariable;
+
+/**
+ * Test for the {@linkplain TypeSignature signature} model.
+ * 
+ * @author Kenzie Togami
+ */
+public final class SignatureTest {
+    private static final List<String> TYPES = ImmutableList.of("I",
+                    "[[J", "TT;", "Ljava/lang/Object;",
+                    "Ljava/util/Map<TK;TV;>;",
+                    "Ljava/util/List<+Ljava/lang/Number;>;",
+                    "Ljava/util/List<-TT;>;", "Ljava/lang/Class<*>;",
+                    "La/Outer<TT;>.Inner<[Ljava/lang/String;>.Deeper;",
+                    "[Ljava/util/Map$Entry<Ljava/lang/String;*>;");
+    private static final List<String> CLASSES = ImmutableList.of(
+                    "Ljava/lang/Object;",
+                    "<T:Ljava/lang/Object;>Ljava/lang/Object;",
+                    "<K::Ljava/lang/Comparable<TK;>;V:Ljava/lang/Number;"
+                                    + ":Ljava/io/Serializable;>"
+                                    + "Ljava/util/AbstractMap<TK;TV;>;"
+                                    + "Ljava/util/SortedMap<TK;TV;>;");
+    private static final List<String> METHODS = ImmutableList.of("()V",
+                    "(I[Ljava/lang/String;)J",
+                    "<T:Ljava/lang/Object;>(TT;Ljava/util/List<-TT;>;)TT;",
+                    "<E:Ljava/lang/Exception;>()V^TE;^Ljava/io/IOException;");
+
+    /**
+     * Tests that signatures are written back exactly as they were read.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void roundTrips() throws Exception {
+        for (String type : TYPES) {
+            assertEquals(type, TypeSignature.parse(type).toString());
+        }
+        for (String c : CLASSES) {
+            assertEquals(c, ClassSignature.parse(c).toString());
+        }
+        for (String m : METHODS) {
+            assertEquals(m, MethodSignature.parse(m).toString());
+        }
+    }
+
+    /**
+     * Tests the structure of parsed signatures.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void parsesStructure() throws Exception {
+        ClassType type =
+                        (ClassType) TypeSignature
+                                        .parse("La/Outer<TT;>.Inner<*>;");
+        assertEquals(2, type.getParts().size());
+        assertEquals("a/Outer$Inner", type.getInternalName());
+        assertEquals(TypeSignature.typeVariable("T"), type.getParts().get(0)
+                        .getTypeArguments().get(0).getBound());
+        assertEquals(ImmutableList.of(TypeArgument.unbounded()),
+                        type.getTypeArguments());
+
+        ClassSignature c = ClassSignature.parse(CLASSES.get(2));
+        TypeParameter k = c.getTypeParameters().get(0);
+        assertEquals("K", k.getName());
+        assertNull(k.getClassBound());
+        assertEquals(1, k.getInterfaceBounds().size());
+        assertEquals("java/util/AbstractMap", c.getSuperclass()
+                        .getInternalName());
+        assertEquals(1, c.getInterfaces().size());
+
+        MethodSignature m = MethodSignature.parse(METHODS.get(3));
+        assertEquals(TypeSignature.baseType('V'), m.getReturnType());
+        assertEquals(2, m.getExceptions().size());
+        assertTrue(m.getExceptions().get(0) instanceof TypeVariable);
+        assertEquals("(Ljava/lang/Object;Ljava/util/List;)Ljava/lang/Object;",
+                        MethodSignature.parse(METHODS.get(2))
+                                        .getErasedDescriptor());
+        assertTrue(TypeSignature.parse("[[J") instanceof ArrayType);
+    }
+
+    /**
+     * Tests that invalid signatures are refused.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void refusesInvalid() throws Exception {
+        for (String bad : ImmutableList.of("", "L", "Ljava/util/List<I>;",
+                        "Ljava/lang/Object", "V")) {
+            try {
+                TypeSignature.parse(bad);
+                fail("parsed " + bad);
+            } catch (IllegalArgumentException expected) {}
+        }
+        try {
+            ClassSignature.parse("()V");
+            fail("parsed a method signature as a class signature");
+        } catch (IllegalArgumentException expected) {}
+        try {
+            MethodSignature.parse("Ljava/lang/Object;");
+            fail("parsed a class signature as a method signature");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    /**
+     * Tests conversion to and from {@link ClassDescriptor}.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void convertsDescriptors() throws Exception {
+        String generic = "[Ljava/util/List<Ljava/util/Set<Ljava/lang/String;>;>;";
+        ClassDescriptor desc = ClassDescriptor.fromDescriptorString(generic);
+        TypeSignature type = TypeSignature.fromDescriptor(desc);
+        assertEquals(generic, type.toString());
+        assertEquals(desc, type.toDescriptor().get());
+        assertFalse(TypeSignature.parse("Ljava/util/Map<TK;TV;>;")
+                        .toDescriptor().isPresent());
+        assertFalse(TypeSignature.parse("Ljava/util/List<*>;")
+                        .toDescriptor().isPresent());
+    }
+
+    /**
+     * Tests that a supertype replaces the matching interface, or the
+     * superclass.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void replacesSupertypes() throws Exception {
+        ClassSignature erased =
+                        ClassSignature.erased("java/util/ArrayList",
+                                        new String[] { "java/lang/Comparable" });
+        ClassType comparable =
+                        TypeSignature.classType("java/lang/Comparable",
+                                        TypeArgument.exact(TypeSignature
+                                                        .classType("a/B")));
+        assertEquals("Ljava/util/ArrayList;Ljava/lang/Comparable<La/B;>;",
+                        erased.withSupertype(comparable).toString());
+        ClassType list =
+                        TypeSignature.classType("java/util/ArrayList",
+                                        TypeArgument.exact(TypeSignature
+                                                        .classType("a/B")));
+        assertEquals("Ljava/util/ArrayList<La/B;>;Ljava/lang/Comparable;",
+                        erased.withSupertype(list).toString());
+        assertEquals("(I)Ljava/util/List<La/B;>;",
+                        MethodSignature.parse("(I)Ljava/util/List;")
+                                        .withReturnType(TypeSignature
+                                                        .parse("Ljava/util/List<La/B;>;"))
+                                        .toString());
+    }
+}
@@ -0,0 +1,113 @@
+package com.techshroom.hendrix.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.techshroom.hendrix.symbol.LongMap;
+import com.techshroom.hendrix.symbol.SymbolTable;
+
+/**
+ * Tests for {@linkplain SymbolTable} and {@linkplain LongMap}.
+ * 
+ * @author Kenzie Togami
+ */
+public final class SymbolTableTest {
+    /**
+     * Tests that names get dense, stable IDs and come back out unchanged.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void internsNames() throws Exception {
+        SymbolTable symbols = SymbolTable.create();
+        int object = symbols.intern("java/lang/Object");
+        assertEquals(0, object);
+        assertEquals(1, symbols.intern("caf\u00e9/\u4e2d\u6587"));
+        assertEquals(object, symbols.intern(new StringBuilder(
+                        "java/lang/Object")));
+        assertEquals(SymbolTable.NO_SYMBOL, symbols.lookup("java/lang/Obj"));
+        assertEquals(SymbolTable.NO_SYMBOL, symbols.lookup("java/lang/Object2"));
+        assertEquals("caf\u00e9/\u4e2d\u6587", symbols.get(1));
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i + 2, symbols.intern("a/Class" + i));
+        }
+        assertEquals(10002, symbols.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i + 2, symbols.lookup("a/Class" + i));
+            assertEquals("a/Class" + i, symbols.get(i + 2));
+        }
+        assertEquals(object, symbols.lookup("java/lang/Object"));
+    }
+
+    /**
+     * Tests that lookups running alongside interning only ever see names
+     * with their final IDs.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void readsWhileInterning() throws Exception {
+        final SymbolTable symbols = SymbolTable.create();
+        final int count = 20000;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        while (symbols.size() < count) {
+                            int size = symbols.size();
+                            for (int i = 0; i < size; i++) {
+                                assertEquals(i, symbols.lookup("b/Class" + i));
+                                assertEquals("b/Class" + i, symbols.get(i));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+
+            };
+            readers[r].start();
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, symbols.intern("b/Class" + i));
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    /**
+     * Tests the long keyed map.
+     * 
+     * @throws Exception exceptions propagate
+     */
+    @Test
+    public void longMap() throws Exception {
+        LongMap<String> map = LongMap.create();
+        for (int i = 0; i < 1000; i++) {
+            assertNull(map.put(SymbolTable.pair(i, -i), "v" + i));
+        }
+        assertEquals("v7", map.put(SymbolTable.pair(7, -7), "seven"));
+        assertEquals(1000, map.size());
+        assertEquals("seven", map.get(SymbolTable.pair(7, -7)));
+        assertEquals("v999", map.get(SymbolTable.pair(999, -999)));
+        assertFalse(map.containsKey(SymbolTable.pair(-7, 7)));
+        int seen = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.valueAt(slot) != null) {
+                seen++;
+            }
+        }
+        assertEquals(1000, seen);
+    }
+}